@@ -0,0 +1,88 @@
+package com.example.camerastream;
+
+import android.hardware.Camera;
+
+import com.example.camerastream.frame.FrameBufferPool;
+import com.example.camerastream.frame.FrameSource;
+import com.example.camerastream.frame.StreamConfig;
+
+// Кадры предпросмотра камеры как FrameSource. Кадры приходят в буферы из пула, а не в новый
+// массив на каждый кадр; буфер возвращается камере через пул после обработки.
+// attach() и detach() вызываются в потоке сессии камеры, в нём же приходят кадры.
+public class CameraFrameSource implements FrameSource, Camera.PreviewCallback {
+    private volatile int bufferCount;
+    private volatile Listener listener;
+    private volatile boolean running;
+    private FrameBufferPool bufferPool;
+    private StreamConfig config;
+
+    public CameraFrameSource(int bufferCount) {
+        this.bufferCount = bufferCount;
+    }
+
+    // Число буферов для следующего attach(), например по числу кадров шины.
+    public void setBufferCount(int bufferCount) {
+        this.bufferCount = bufferCount;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    // Кадры продолжают приходить, но сразу возвращаются камере.
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    // Камера настроена на config и сейчас начнёт предпросмотр. Без параметров потока
+    // размер буфера неизвестен, и камера выделяет массив на каждый кадр сама.
+    public void attach(Camera camera, StreamConfig config) {
+        detach();
+        this.config = config;
+        if (config == null) {
+            camera.setPreviewCallback(this);
+            return;
+        }
+        final Camera target = camera;
+        bufferPool = new FrameBufferPool(config.frameSize, bufferCount, new FrameBufferPool.BufferSink() {
+            @Override
+            public void addBuffer(byte[] buffer) {
+                target.addCallbackBuffer(buffer);
+            }
+        });
+        camera.setPreviewCallbackWithBuffer(this);
+        bufferPool.start();
+    }
+
+    // Предпросмотр остановлен: буферы, ещё не вернувшиеся из обработки, камере не отдаются.
+    public void detach() {
+        if (bufferPool != null) {
+            bufferPool.close();
+            bufferPool = null;
+        }
+        config = null;
+    }
+
+    @Override
+    public void onPreviewFrame(byte[] data, Camera camera) {
+        FrameBufferPool pool = bufferPool;
+        if (pool != null)
+            pool.onFrameReceived(data);
+        Listener target = listener;
+        if (running && target != null && config != null && data.length >= config.frameSize)
+            target.onFrame(data, config, pool, System.nanoTime());
+        else if (pool != null)
+            pool.recycle(data);
+    }
+
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+}
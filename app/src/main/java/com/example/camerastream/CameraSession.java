@@ -0,0 +1,267 @@
+package com.example.camerastream;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.view.SurfaceHolder;
+
+import com.example.camerastream.frame.PreviewSize;
+import com.example.camerastream.frame.PreviewSizeSelector;
+import com.example.camerastream.frame.StreamConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Работа с камерой в отдельном потоке: открытие, настройка и остановка предпросмотра
+// не задерживают поток UI. Камера открывается один раз за сессию; при смене поверхности
+// параметры передаются камере, только если выбранная конфигурация изменилась.
+// Камера открыта в потоке сессии, поэтому и кадры предпросмотра приходят в этот поток.
+public class CameraSession {
+    // Вызывается в потоке сессии.
+    public interface Callback {
+        // Камера не открылась, например занята другим приложением.
+        void onOpenFailed(RuntimeException e);
+
+        // Камера настроена и сейчас начнёт предпросмотр: пора назначить буферы и обработчик кадров.
+        void onPreviewStarting(Camera camera, StreamConfig config);
+
+        // Предпросмотр остановлен, кадров с прежними параметрами больше не будет.
+        void onPreviewStopped();
+    }
+
+    private final int cameraId;
+    private final PreviewSizeSelector sizeSelector;
+    private final Callback callback;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    // Поля ниже меняются только в потоке сессии.
+    private Camera camera;
+    private SurfaceHolder surface;
+    private int surfaceWidth;
+    private int surfaceHeight;
+    private int rotation;
+    private boolean mirror;
+    private boolean previewing;
+    // Размер, установленный камерой, если подходящего среди поддерживаемых не нашлось.
+    private PreviewSize defaultSize;
+    // Конфигурация, переданная камере последней.
+    private PreviewSize appliedSize;
+    private int appliedOrientation = -1;
+    private boolean appliedMirror;
+    private StreamConfig appliedConfig;
+
+    private volatile long openRequestedNanos;
+    private volatile long firstFrameNanos;
+    private volatile boolean waitingFirstFrame;
+    private volatile long previewStartedNanos;
+    private volatile long previewStartupNanos;
+    private volatile boolean waitingPreviewFrame;
+    private volatile int skippedReconfigurations;
+
+    // sizeSelector может быть общим для нескольких сессий: выбранные размеры он запоминает.
+    public CameraSession(int cameraId, PreviewSizeSelector sizeSelector, Callback callback) {
+        this.cameraId = cameraId;
+        this.sizeSelector = sizeSelector;
+        this.callback = callback;
+        thread = new HandlerThread("CameraSession");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public void open() {
+        openRequestedNanos = System.nanoTime();
+        waitingFirstFrame = true;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (camera != null)
+                    return;
+                try {
+                    // Может выдать ошибку "Fail to connect to camera service".
+                    camera = Build.VERSION.SDK_INT >= 9 ? Camera.open(cameraId) : Camera.open();
+                } catch (RuntimeException e) {
+                    callback.onOpenFailed(e);
+                    return;
+                }
+                if (camera == null) {
+                    callback.onOpenFailed(new RuntimeException("Камера " + cameraId + " не найдена"));
+                    return;
+                }
+                readSupportedSizes();
+                // Поверхность могла быть готова раньше камеры.
+                if (surface != null) {
+                    configure();
+                    startPreview();
+                }
+            }
+        });
+    }
+
+    // Поверхность готова или изменила размер. rotation — поворот кадров камеры относительно экрана,
+    // mirror — нужно ли отражать кадры (фронтальная камера).
+    public void setSurface(final SurfaceHolder holder, final int width, final int height,
+                           final int rotation, final boolean mirror) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                boolean surfaceChanged = holder != surface;
+                surface = holder;
+                surfaceWidth = width;
+                surfaceHeight = height;
+                CameraSession.this.rotation = rotation;
+                CameraSession.this.mirror = mirror;
+                if (camera == null)
+                    return;
+                if (configure() || surfaceChanged || !previewing)
+                    startPreview();
+            }
+        });
+    }
+
+    // Поверхность уничтожена: предпросмотр останавливается, камера остаётся открытой.
+    public void clearSurface() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                surface = null;
+                stopPreview();
+            }
+        });
+    }
+
+    // Освобождает камеру и завершает поток сессии. Ждёт, пока камера будет освобождена,
+    // чтобы её сразу могли открыть другие приложения.
+    public void close() {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                stopPreview();
+                if (camera != null) {
+                    camera.release();
+                    camera = null;
+                }
+                Looper.myLooper().quit();
+            }
+        });
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Вызывается обработчиком кадров на каждый кадр; запоминает время до первого кадра.
+    public void onFrame() {
+        if (!waitingPreviewFrame)
+            return;
+        waitingPreviewFrame = false;
+        long now = System.nanoTime();
+        previewStartupNanos = now - previewStartedNanos;
+        if (waitingFirstFrame) {
+            waitingFirstFrame = false;
+            firstFrameNanos = now - openRequestedNanos;
+        }
+    }
+
+    // Выбирает размер и поворот под поверхность и передаёт их камере, если они изменились.
+    // Возвращает true, если параметры камеры менялись.
+    private boolean configure() {
+        PreviewSize size = sizeSelector.select(cameraId, surfaceWidth, surfaceHeight, rotation);
+        if (size == null)
+            size = defaultSize;
+        if (size.equals(appliedSize) && rotation == appliedOrientation && mirror == appliedMirror) {
+            skippedReconfigurations++;
+            return false;
+        }
+        stopPreview();
+        Camera.Parameters param = camera.getParameters();
+        param.setPreviewSize(size.width, size.height);
+        camera.setDisplayOrientation(rotation);
+        try {
+            camera.setParameters(param); // Может выдать: "RuntimeException: setParameters failed".
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        // Камера могла не принять размер, поэтому параметры потока читаются заново.
+        appliedConfig = readStreamConfig(rotation, mirror);
+        appliedSize = size;
+        appliedOrientation = rotation;
+        appliedMirror = mirror;
+        return true;
+    }
+
+    // Размеры, которые поддерживает камера, читаются один раз после открытия.
+    private void readSupportedSizes() {
+        Camera.Parameters param = camera.getParameters();
+        List<Camera.Size> sizes = param.getSupportedPreviewSizes();
+        List<PreviewSize> supportedSizes = null;
+        if (sizes != null) {
+            supportedSizes = new ArrayList<PreviewSize>(sizes.size());
+            for (Camera.Size size : sizes)
+                supportedSizes.add(new PreviewSize(size.width, size.height));
+        }
+        sizeSelector.setSupportedSizes(cameraId, supportedSizes);
+        Camera.Size current = param.getPreviewSize();
+        defaultSize = new PreviewSize(current.width, current.height);
+    }
+
+    private StreamConfig readStreamConfig(int rotation, boolean mirror) {
+        Camera.Parameters param = camera.getParameters();
+        int format = param.getPreviewFormat();
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(format);
+        if (bitsPerPixel <= 0)
+            return null;
+        Camera.Size size = param.getPreviewSize();
+        return new StreamConfig(format, size.width, size.height, bitsPerPixel, rotation, mirror);
+    }
+
+    private void startPreview() {
+        if (surface == null || camera == null || appliedSize == null)
+            return;
+        stopPreview();
+        callback.onPreviewStarting(camera, appliedConfig);
+        try {
+            camera.setPreviewDisplay(surface);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        previewStartedNanos = System.nanoTime();
+        waitingPreviewFrame = true;
+        camera.startPreview();
+        previewing = true;
+    }
+
+    private void stopPreview() {
+        if (!previewing)
+            return;
+        previewing = false;
+        camera.setPreviewCallback(null);
+        try {
+            camera.stopPreview();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        callback.onPreviewStopped();
+    }
+
+    // От open() до первого кадра, 0 — кадров ещё не было.
+    public long getTimeToFirstFrameNanos() {
+        return waitingFirstFrame ? 0 : firstFrameNanos;
+    }
+
+    // От последнего запуска предпросмотра до его первого кадра.
+    public long getPreviewStartupNanos() {
+        return previewStartupNanos;
+    }
+
+    // Сколько раз смена поверхности обошлась без перенастройки камеры.
+    public int getSkippedReconfigurations() {
+        return skippedReconfigurations;
+    }
+}
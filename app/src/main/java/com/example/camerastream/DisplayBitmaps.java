@@ -0,0 +1,60 @@
+package com.example.camerastream;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+
+import com.example.camerastream.frame.TripleBuffer;
+
+// Набор из трёх изменяемых Bitmap для показа кадров. Поток конвейера копирует пиксели
+// кадра в задний Bitmap через setPixels, поток UI переключает переданный кадр на экран.
+// Bitmap и BitmapDrawable для него пересоздаются только при смене размера кадра, поэтому
+// в установившемся режиме на кадр ничего не выделяется (ImageView.setImageBitmap создавал бы
+// новый BitmapDrawable на каждый вызов). Старые Bitmap не освобождаются через recycle():
+// один из них ещё может быть на экране, их соберёт сборщик мусора.
+public class DisplayBitmaps {
+    private final Resources resources;
+    private final TripleBuffer buffers = new TripleBuffer();
+    private final Bitmap[] bitmaps = new Bitmap[TripleBuffer.BUFFER_COUNT];
+    private final BitmapDrawable[] drawables = new BitmapDrawable[TripleBuffer.BUFFER_COUNT];
+    private final long[] timestamps = new long[TripleBuffer.BUFFER_COUNT];
+    private final long[] postedNanos = new long[TripleBuffer.BUFFER_COUNT];
+
+    public DisplayBitmaps(Resources resources) {
+        this.resources = resources;
+    }
+
+    // Вызывается в потоке конвейера. Возвращает true, если потоку UI нужно отправить
+    // сообщение о новом кадре: иначе оно уже отправлено и ещё не обработано.
+    public boolean write(int[] pixels, int width, int height, long timestampNanos) {
+        int index = buffers.getBackIndex();
+        Bitmap bitmap = bitmaps[index];
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            bitmaps[index] = bitmap;
+            drawables[index] = new BitmapDrawable(resources, bitmap);
+        }
+        bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+        timestamps[index] = timestampNanos;
+        postedNanos[index] = System.nanoTime();
+        return buffers.publish();
+    }
+
+    // Вызывается в потоке UI: переключает на последний записанный кадр.
+    // Возвращает null, если нового кадра нет.
+    public BitmapDrawable swap() {
+        if (!buffers.swap())
+            return null;
+        return drawables[buffers.getFrontIndex()];
+    }
+
+    // Время получения кадра, показанного последним swap().
+    public long getFrontTimestamp() {
+        return timestamps[buffers.getFrontIndex()];
+    }
+
+    // Когда кадр, показанный последним swap(), был передан потоку UI.
+    public long getFrontPostedNanos() {
+        return postedNanos[buffers.getFrontIndex()];
+    }
+}
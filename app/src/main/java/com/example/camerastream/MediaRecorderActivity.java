@@ -11,28 +11,111 @@ import android.graphics.ImageFormat;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.YuvImage;
+import android.graphics.drawable.BitmapDrawable;
 import android.hardware.Camera;
 import android.os.Build;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
+import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.camerastream.analysis.DuplicateFilter;
+import com.example.camerastream.frame.Frame;
+import com.example.camerastream.frame.BufferRecycler;
+import com.example.camerastream.frame.FrameBudgetScheduler;
+import com.example.camerastream.frame.FrameMetrics;
+import com.example.camerastream.frame.FramePipeline;
+import com.example.camerastream.frame.FrameSource;
+import com.example.camerastream.frame.PreviewSizeSelector;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.processing.AnalysisSubscriber;
+import com.example.camerastream.processing.DisplayConversion;
+import com.example.camerastream.processing.FrameProcessor;
+import com.example.camerastream.processing.RecordSubscriber;
+import com.example.camerastream.processing.StreamSubscriber;
+import com.example.camerastream.processing.TileSubscriber;
+import com.example.camerastream.record.PreEventBuffer;
+import com.example.camerastream.record.RawFrameRecorder;
+import com.example.camerastream.stream.MjpegServer;
+import com.example.camerastream.stream.TileStreamServer;
+
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.List;
 
 public class MediaRecorderActivity extends Activity {
-    private Camera camera;
+    // Ограничения размера предпросмотра: не больше Full HD и не больше точек в секунду,
+    // чем перевод в ARGB успевает обработать при PREVIEW_TARGET_FPS.
+    private static final int PREVIEW_MAX_PIXELS = 1920 * 1080;
+    private static final int PREVIEW_TARGET_FPS = 30;
+    private static final long PREVIEW_MAX_PIXELS_PER_SECOND = 1280L * 720 * 30;
+    // Кадров шины столько, сколько могут удержать все подписчики вместе, а буферов у камеры
+    // на PREVIEW_SPARE_BUFFERS больше: даже когда все кадры шины заняты, камере есть куда писать,
+    // и медленный подписчик теряет только свои кадры.
+    private static final int PREVIEW_SPARE_BUFFERS = 2;
+    private static final long METRICS_REFRESH_NANOS = 1000000000L;
+    // Трансляция кадров в MJPEG: http://localhost:STREAM_PORT/ (с компьютера — через
+    // adb forward tcp:8080 tcp:8080). Проверки доступа у серверов нет, поэтому всей локальной
+    // сети они открываются, только если включить STREAM_LAN.
+    private static final boolean STREAM_LAN = false;
+    private static final int STREAM_PORT = 8080;
+    private static final int STREAM_QUEUE_CAPACITY = 2;
+    private static final int STREAM_MAX_CLIENTS = 4;
+    // Трансляция изменений плитками на TILE_STREAM_PORT (доступ — как у STREAM_PORT), клиент —
+    // TileStreamClient из модуля benchmark.
+    private static final int TILE_STREAM_PORT = 8081;
+    private static final int TILE_QUEUE_CAPACITY = 4;
+    // Записанные кадры лежат в каталоге raw внутри getExternalFilesDir.
+    private static final long RECORD_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final long RECORD_SEGMENT_NANOS = 60000000000L;
+    private static final int RECORD_BUFFER_COUNT = 4;
+    // Прореживать ступени обработки под нагрузкой, чтобы показ успевал за PREVIEW_TARGET_FPS.
+    private static final boolean FRAME_BUDGET = true;
+    private static final String TAG = "MediaRecorderActivity";
+
+    // Параметры обработки кадров; всё, что не задано здесь, — по умолчанию FrameProcessor.Settings.
+    private final FrameProcessor.Settings settings = createSettings();
+    // Камера открывается и настраивается в потоке сессии; там же приходят кадры.
+    private volatile CameraSession cameraSession;
+    // Переживает сессии, поэтому выбранный размер предпросмотра после паузы не пересчитывается.
+    private final PreviewSizeSelector previewSizeSelector = new PreviewSizeSelector(
+            ImageFormat.getBitsPerPixel(ImageFormat.NV21));
+    private boolean surfaceReady;
+    private int surfaceWidth;
+    private int surfaceHeight;
+    // Кадры камеры с параметрами потока, прочитанными один раз при настройке.
+    private final CameraFrameSource cameraSource = new CameraFrameSource(PREVIEW_SPARE_BUFFERS);
     private SurfaceHolder surfaceHolder;
     private ImageView imageView;
     private TextView textView;
     private long elapsedTime;
+    private volatile long frameInterval;
+    // Переводить кадр в ARGB напрямую, без сжатия в JPEG и обратного декодирования.
+    private volatile boolean useDirectConversion = true;
+    // Кадры камеры раздаются показу, трансляции, записи и анализу. Живёт от onResume до onPause.
+    private volatile FrameProcessor frameProcessor;
+    // Кадры показываются через три переиспользуемых Bitmap, а не через новый на каждый кадр.
+    private DisplayBitmaps displayBitmaps;
+    // Показывать вместо времени между кадрами задержки по ступеням обработки.
+    private boolean showFrameMetrics = true;
+    private FrameMetrics frameMetrics;
+    private final StringBuilder metricsText = new StringBuilder();
+    private long metricsShownNanos;
+    private volatile MjpegServer mjpegServer;
+    private volatile TileStreamServer tileServer;
+
+    private static FrameProcessor.Settings createSettings() {
+        FrameProcessor.Settings settings = new FrameProcessor.Settings();
+        settings.budgetFps = FRAME_BUDGET ? PREVIEW_TARGET_FPS : 0;
+        return settings;
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -55,68 +138,196 @@ public class MediaRecorderActivity extends Activity {
         imageView = (ImageView) findViewById(R.id.imageView);
         textView = (TextView) findViewById(R.id.textView);
         textView.setText("");
+        displayBitmaps = new DisplayBitmaps(getResources());
+        previewSizeSelector.setMaxPixels(PREVIEW_MAX_PIXELS);
+        previewSizeSelector.setFrameBudget(PREVIEW_TARGET_FPS, PREVIEW_MAX_PIXELS_PER_SECOND);
+        imageView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                toggleEventRecording();
+            }
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
 
+        frameMetrics = new FrameMetrics();
+        FrameProcessor processor = new FrameProcessor(settings, frameMetrics, showFrame);
+        if (!useDirectConversion)
+            processor.getDisplay().setConverter(jpegConversion);
+        processor.getStream().setEncoder(yuvImageEncoder);
+        FrameBudgetScheduler scheduler = processor.getScheduler();
+        if (scheduler != null)
+            scheduler.setListener(budgetListener);
+        processor.start();
+        frameProcessor = processor;
+        cameraSource.setBufferCount(processor.getBus().getFrameCount() + PREVIEW_SPARE_BUFFERS);
+        cameraSource.setListener(frameListener);
+        cameraSource.start();
+        startStreaming();
         startCamera();
     }
 
-    // Обработка выключения камеры
+    // Обработка выключения камеры. Сначала останавливаются шина и конвейер: их потоки
+    // возвращают буферы камере, поэтому камера освобождается, когда они уже завершились.
+    // Запись останавливается последней: до закрытия сессии камера может её перезапустить.
     @Override
     protected void onPause() {
         super.onPause();
 
+        cameraSource.stop();
+        FrameProcessor processor = frameProcessor;
+        if (processor != null)
+            processor.stop();
         stopCamera();
+        stopStreaming();
+        if (processor != null) {
+            if (processor.getRecording() != null)
+                processor.getRecording().stop();
+            frameProcessor = null;
+        }
     }
 
-    private boolean startCamera() {
-        if (hasCamera(this)) {
-            if (camera != null)
-                camera.release();
+    private void startStreaming() {
+        MjpegServer server = STREAM_LAN
+                ? new MjpegServer(null, STREAM_PORT, STREAM_QUEUE_CAPACITY, STREAM_MAX_CLIENTS)
+                : new MjpegServer(STREAM_PORT, STREAM_QUEUE_CAPACITY, STREAM_MAX_CLIENTS);
+        try {
+            server.start();
+            mjpegServer = server;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        FrameProcessor processor = frameProcessor;
+        processor.getStream().setServer(mjpegServer);
+        TileSubscriber tileSubscriber = processor.getTiles();
+        if (tileSubscriber == null)
+            return;
+        TileStreamServer tiles = STREAM_LAN
+                ? new TileStreamServer(null, TILE_STREAM_PORT, TILE_QUEUE_CAPACITY, STREAM_MAX_CLIENTS)
+                : new TileStreamServer(TILE_STREAM_PORT, TILE_QUEUE_CAPACITY, STREAM_MAX_CLIENTS);
+        try {
+            tiles.start();
+            tileServer = tiles;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        tileSubscriber.setServer(tileServer);
+    }
 
-            try {
-                camera = Camera.open(); // Может выдать ошибку "Fail to connect to camera service".
-            } catch (RuntimeException e) {
-                e.printStackTrace();
-                Toast.makeText(this, "Невозможно получить доступ к видеокамере."
-                        + "\nПопробуйте перезагрузить устройство", Toast.LENGTH_LONG).show();
-                finish();
-                return false;
-            }
+    private void stopStreaming() {
+        if (mjpegServer != null) {
+            mjpegServer.stop();
+            mjpegServer = null;
+        }
+        if (tileServer != null) {
+            tileServer.stop();
+            tileServer = null;
+        }
+    }
+
+    // Буферы записи рассчитаны на размер кадра, поэтому при его росте запись перезапускается.
+    private void startRecording(StreamConfig config) {
+        FrameProcessor processor = frameProcessor;
+        RecordSubscriber recording = processor != null ? processor.getRecording() : null;
+        if (recording == null || config == null)
+            return;
+        RawFrameRecorder recorder = recording.getRecorder();
+        if (recorder != null && recorder.getBufferSize() >= config.frameSize)
+            return;
+        recording.stop();
+        File directory = getExternalFilesDir(null);
+        if (directory == null)
+            return;
+        recorder = new RawFrameRecorder(new File(directory, "raw"), RECORD_SEGMENT_BYTES, RECORD_SEGMENT_NANOS,
+                config.frameSize, RECORD_BUFFER_COUNT);
+        try {
+            recorder.start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        recording.start(recorder);
+    }
+
+    // С буфером событий (FrameProcessor.Settings.recordPreEvent) нажатие на изображение
+    // записывает кадры за последние секунды вместе с живыми, повторное — останавливает запись.
+    private void toggleEventRecording() {
+        FrameProcessor processor = frameProcessor;
+        RecordSubscriber recording = processor != null ? processor.getRecording() : null;
+        PreEventBuffer buffer = recording != null ? recording.getPreEventBuffer() : null;
+        if (buffer == null)
+            return;
+        if (buffer.isLive()) {
+            buffer.stopLive();
+            Toast.makeText(this, "Запись остановлена", Toast.LENGTH_SHORT).show();
         } else {
+            buffer.trigger();
+            Toast.makeText(this, "Запись с " + settings.preEventNanos / 1000000000L + " с до нажатия",
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // Камера открывается в потоке сессии, а предпросмотр начнётся, когда будет готова поверхность.
+    private void startCamera() {
+        if (!hasCamera(this)) {
             Toast.makeText(this, "Извините, на устройстве не обнаружено видеокамеры.",
                     Toast.LENGTH_LONG).show();
             finish();
-            return false;
+            return;
         }
-        return true;
+        CameraSession session = new CameraSession(0, previewSizeSelector, cameraCallback);
+        cameraSession = session;
+        session.open();
+        // Поверхность могла пережить паузу, тогда surfaceChanged больше не придёт.
+        if (surfaceReady)
+            updateSurface();
     }
 
+    // Ждёт освобождения камеры, чтобы её сразу могли открыть другие приложения.
     private void stopCamera() {
-        if (camera != null) {
-            camera.setPreviewCallback(null);
-            // Останавливаем предпросмотр.
-            camera.stopPreview();
-            // Освобождаем камеру для использования другими приложениями.
-            camera.release();
-            camera = null;
+        CameraSession session = cameraSession;
+        if (session != null) {
+            cameraSession = null;
+            session.close();
         }
     }
 
-    private void refreshCamera(int width, int height) {
-        if (camera != null) {
-            try {
-                camera.stopPreview();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    private void updateSurface() {
+        CameraSession session = cameraSession;
+        if (session != null)
+            session.setSurface(surfaceHolder, surfaceWidth, surfaceHeight, getScreenOrientation(this, 0),
+                    isFrontCamera(0));
+    }
 
-            setOptimalPreview(width, height);
+    // Вызывается в потоке сессии камеры.
+    private final CameraSession.Callback cameraCallback = new CameraSession.Callback() {
+        @Override
+        public void onOpenFailed(RuntimeException e) {
+            e.printStackTrace();
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(MediaRecorderActivity.this, "Невозможно получить доступ к видеокамере."
+                            + "\nПопробуйте перезагрузить устройство", Toast.LENGTH_LONG).show();
+                    finish();
+                }
+            });
         }
-    }
+
+        @Override
+        public void onPreviewStarting(Camera camera, StreamConfig config) {
+            startRecording(config);
+            cameraSource.attach(camera, config);
+        }
+
+        @Override
+        public void onPreviewStopped() {
+            cameraSource.detach();
+        }
+    };
 
     // Имеет ли устройство камеру.
     private boolean hasCamera(Context context) {
@@ -132,152 +343,203 @@ public class MediaRecorderActivity extends Activity {
         }
     }
 
-    // Установить оптимальное соотношение сторон изображения.
-    private void setOptimalPreview(int width, int height) {
-        if (surfaceHolder.getSurface() != null && camera != null) {
-            Camera.Parameters param = camera.getParameters();
-            param.setPreviewSize(width, height);
-            // Определим список доступных разрешений экрана.
-            List<Camera.Size> sizes = param.getSupportedPreviewSizes();
-            if (sizes != null) {
-                int displayOrientation = getScreenOrientation(this, 0);
-                Camera.Size optimalSize = getOptimalPreviewSize(sizes, width, height, displayOrientation);
-                if (optimalSize != null) {
-                    param.setPreviewSize(optimalSize.width, optimalSize.height);
-                    setCameraDisplayOrientation(this, 0, camera);
-                    try {
-                        camera.setParameters(param); // Может выдать: "RuntimeException: setParameters failed".
-                    } catch (RuntimeException e) {
-                        e.printStackTrace();
-                    }
-                }
-
-                camera.setPreviewCallback(previewCallback);
-                //camera.setPreviewCallbackWithBuffer(previewCallback);
-                try {
-                    camera.setPreviewDisplay(surfaceHolder);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                camera.startPreview();
-            }
-        }
-    }
-
     // Обработка отрисовки предпросмотра.
     SurfaceHolder.Callback surfaceHolderCallback = new SurfaceHolder.Callback() {
         @Override
         public void surfaceCreated(SurfaceHolder holder) {
-            if (startCamera())
-                setOptimalPreview(200, 200);
         }
 
+        // Размер поверхности известен только здесь; вызывается и сразу после surfaceCreated.
         @Override
         public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-            refreshCamera(width, height);
+            surfaceReady = true;
+            surfaceWidth = width;
+            surfaceHeight = height;
+            updateSurface();
         }
 
         @Override
         public void surfaceDestroyed(SurfaceHolder holder) {
-            stopCamera();
+            surfaceReady = false;
+            CameraSession session = cameraSession;
+            if (session != null)
+                session.clearSurface();
         }
     };
 
-    private Camera.PreviewCallback previewCallback = new Camera.PreviewCallback() {
+    // Вызывается в потоке сессии камеры.
+    private final FrameSource.Listener frameListener = new FrameSource.Listener() {
         @Override
-        public synchronized void onPreviewFrame(byte[] data, Camera camera) {
+        public void onFrame(byte[] data, StreamConfig config, BufferRecycler bufferPool, long timestampNanos) {
+            CameraSession session = cameraSession;
+            if (session != null)
+                session.onFrame();
+
             // Добавим расчёт времени на обработку одного кадра.
             long currentTime = System.currentTimeMillis();
             if (elapsedTime == 0)
                 elapsedTime = currentTime;
-            final long time = currentTime - elapsedTime;
+            frameInterval = currentTime - elapsedTime;
             elapsedTime = currentTime;
 
-            Camera.Parameters parameters = camera.getParameters();
-            int format = parameters.getPreviewFormat();
-            //YUV formats require more conversion
-            if (format == ImageFormat.NV21 || format == ImageFormat.YUY2 || format == ImageFormat.NV16) {
-                int width = parameters.getPreviewSize().width;
-                int height = parameters.getPreviewSize().height;
-
-                Matrix matrix = new Matrix();
-                matrix.postRotate(getScreenOrientation(MediaRecorderActivity.this, 0));
-                YuvImage yuvImage = new YuvImage(data, parameters.getPreviewFormat(), width, height, null);
-
-                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-                yuvImage.compressToJpeg(new Rect(0, 0, width, height), 100, outputStream);
-
-                byte[] bytes = outputStream.toByteArray();
-
-                /*FileOutputStream outStream = null;
-                try {
-                    // Write to SD Card
-                    File file = createFileInSDCard(FOLDER_PATH, "Image_"+System.currentTimeMillis()+".jpg");
-                    //Uri uriSavedImage = Uri.fromFile(file);
-                    outStream = new FileOutputStream(file);
-                    outStream.write(bytes);
-                    outStream.close();
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } finally {
-                }*/
-
-                //final Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                Bitmap bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                final Bitmap bitmap = Bitmap.createBitmap(bmp, 0, 0, width, height, matrix, true);
-
-                runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        imageView.setImageBitmap(bitmap);
-                        textView.setText(elapsedTime == 0 ? "" : String.valueOf(time) + " мс");
-                    }
-                });
-            }
+            FrameProcessor processor = frameProcessor;
+            if (processor != null)
+                processor.onFrame(data, config, bufferPool, timestampNanos);
+            else if (bufferPool != null)
+                bufferPool.recycle(data);
         }
     };
 
-    // Определить лучшее соотношение сторон изображения, чтобы объекты на экране имели пропорции,
-    // близкие к реальным.
-    private Camera.Size getOptimalPreviewSize(List<Camera.Size> sizes, int width, int height, int displayOrientation) {
-        final double ASPECT_TOLERANCE = 0.1;
-
-        if (sizes == null || height == 0)
-            return null;
-        double targetRatio = (double) width / height;
-        Camera.Size optimalSize = null;
-        double minDiff = Double.MAX_VALUE;
-        int targetHeight = height;
-        if (displayOrientation == 90 || displayOrientation == 270)
-            targetRatio = (double) height / width;
-
-        // Попытаемся найти оптимальное соотношение сторон.
-        for (Camera.Size size : sizes) {
-            double ratio = (double) size.width / size.height;
-            if (Math.abs(ratio - targetRatio) <= ASPECT_TOLERANCE)
-                if (Math.abs(size.height - targetHeight) < minDiff) {
-                    optimalSize = size;
-                    minDiff = Math.abs(size.height - targetHeight);
-                }
+    // Перевод в ARGB через сжатие в JPEG и обратное декодирование, когда useDirectConversion
+    // выключен. Выполняется в потоке перевода конвейера.
+    private final DisplayConversion.Converter jpegConversion = new DisplayConversion.Converter() {
+        @Override
+        public void convert(Frame frame, FrameMetrics metrics) {
+            StreamConfig config = frame.config;
+            int width = config.width;
+            int height = config.height;
+            Matrix matrix = new Matrix();
+            if (config.mirror)
+                matrix.setScale(-1, 1);
+            matrix.postRotate(config.rotation);
+            long start = System.nanoTime();
+            YuvImage yuvImage = new YuvImage(frame.data, config.format, width, height, null);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            yuvImage.compressToJpeg(new Rect(0, 0, width, height), 100, outputStream);
+
+            byte[] bytes = outputStream.toByteArray();
+
+            /*FileOutputStream outStream = null;
+            try {
+                // Write to SD Card
+                File file = createFileInSDCard(FOLDER_PATH, "Image_"+System.currentTimeMillis()+".jpg");
+                //Uri uriSavedImage = Uri.fromFile(file);
+                outStream = new FileOutputStream(file);
+                outStream.write(bytes);
+                outStream.close();
+            } catch (FileNotFoundException e) {
+                e.printStackTrace();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+            }*/
+
+            //final Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            Bitmap bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+            long encoded = System.nanoTime();
+            metrics.record(FrameMetrics.ENCODE, encoded - start);
+            Bitmap bitmap = Bitmap.createBitmap(bmp, 0, 0, width, height, matrix, true);
+            int[] pixels = frame.ensurePixels(bitmap.getWidth(), bitmap.getHeight());
+            bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+            metrics.record(FrameMetrics.ROTATE, System.nanoTime() - encoded);
+        }
+    };
+
+    // Трансляция сжимает NV21 сама, а YUY2 — через YuvImage, который умеет только эти два формата.
+    // Вызывается в потоке трансляции.
+    private final StreamSubscriber.Encoder yuvImageEncoder = new StreamSubscriber.Encoder() {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        @Override
+        public boolean isSupported(int format) {
+            return format == ImageFormat.NV21 || format == ImageFormat.YUY2;
+        }
+
+        @Override
+        public byte[] encode(byte[] data, int format, int width, int height, int quality) {
+            YuvImage yuvImage = new YuvImage(data, format, width, height, null);
+            output.reset();
+            yuvImage.compressToJpeg(new Rect(0, 0, width, height), quality, output);
+            return output.toByteArray();
         }
-        // Если невозможно найти близкое соотношение сторон, найдём близкие длины сторон.
-        if (optimalSize == null) {
-            minDiff = Double.MAX_VALUE;
-            for (Camera.Size size : sizes) {
-                if (Math.abs(size.height - targetHeight) < minDiff) {
-                    optimalSize = size;
-                    minDiff = Math.abs(size.height - targetHeight);
+    };
+
+    // Каждое изменение уровня ступени попадает в журнал.
+    private final FrameBudgetScheduler.Listener budgetListener = new FrameBudgetScheduler.Listener() {
+        @Override
+        public void onStageChanged(FrameBudgetScheduler.Stage stage, int previousLevel, int loadPercent) {
+            int decimation = stage.getDecimation();
+            Log.i(TAG, "Ступень " + stage.getName() + ": уровень " + previousLevel + " -> " + stage.getLevel()
+                    + (decimation == 0 ? ", выключена" : ", каждый " + decimation + "-й кадр")
+                    + ", нагрузка " + loadPercent + "%, цена " + stage.getCostNanos() / 1000 + " мкс");
+        }
+    };
+
+    // Вывод кадра, выполняется в потоке конвейера.
+    private final FramePipeline.Stage showFrame = new FramePipeline.Stage() {
+        @Override
+        public void process(Frame frame) {
+            // Пока предыдущий кадр не показан, новых сообщений в очередь UI не добавляем:
+            // показан будет самый свежий кадр.
+            if (displayBitmaps.write(frame.pixels, frame.pixelsWidth, frame.pixelsHeight, frame.timestampNanos))
+                runOnUiThread(updateImageView);
+        }
+    };
+
+    private final Runnable updateImageView = new Runnable() {
+        @Override
+        public void run() {
+            BitmapDrawable drawable = displayBitmaps.swap();
+            if (drawable != null) {
+                long now = System.nanoTime();
+                frameMetrics.record(FrameMetrics.DISPLAY, now - displayBitmaps.getFrontPostedNanos());
+                frameMetrics.record(FrameMetrics.TOTAL, now - displayBitmaps.getFrontTimestamp());
+                imageView.setImageDrawable(drawable);
+                if (!showFrameMetrics) {
+                    textView.setText(elapsedTime == 0 ? "" : String.valueOf(frameInterval) + " мс");
+                } else if (now - metricsShownNanos >= METRICS_REFRESH_NANOS) {
+                    metricsShownNanos = now;
+                    metricsText.setLength(0);
+                    frameMetrics.appendSummary(metricsText);
+                    FrameProcessor processor = frameProcessor;
+                    if (processor != null)
+                        appendProcessorSummary(processor, metricsText);
+                    CameraSession session = cameraSession;
+                    if (session != null && session.getTimeToFirstFrameNanos() > 0)
+                        metricsText.append("\nпервый кадр ").append(session.getTimeToFirstFrameNanos() / 1000000)
+                                .append(" мс");
+                    textView.setText(metricsText.toString());
                 }
             }
         }
-        return optimalSize;
+    };
+
+    private void appendProcessorSummary(FrameProcessor processor, StringBuilder out) {
+        DuplicateFilter displayDuplicates = processor.getDisplay().getDuplicates();
+        DuplicateFilter streamDuplicates = processor.getStream().getDuplicates();
+        if (displayDuplicates != null && streamDuplicates != null) {
+            out.append("\nповторы ");
+            displayDuplicates.appendSummary(out);
+            out.append(", ");
+            streamDuplicates.appendSummary(out);
+        }
+        AnalysisSubscriber analysis = processor.getAnalysis();
+        if (analysis != null && settings.frameStatistics) {
+            out.append('\n');
+            analysis.appendStatistics(out);
+        }
+        FrameBudgetScheduler scheduler = processor.getScheduler();
+        if (scheduler != null) {
+            out.append('\n');
+            scheduler.appendSummary(out);
+        }
+        TileStreamServer tiles = tileServer;
+        TileSubscriber tileSubscriber = processor.getTiles();
+        if (tiles != null && tileSubscriber != null && tiles.hasClients()) {
+            out.append('\n');
+            tileSubscriber.getEncoder().appendSummary(out);
+        }
+        out.append("\nшина: пропущено ").append(processor.getBus().getDroppedFrames());
     }
 
-    // Обработка поворота изображения при повороте камеры.
-    private void setCameraDisplayOrientation(Activity activity, int cameraId, Camera camera) {
-        camera.setDisplayOrientation(getScreenOrientation(activity, cameraId));
+    // Фронтальная камера отдаёт кадры без зеркального отражения, в отличие от предпросмотра.
+    private boolean isFrontCamera(int cameraId) {
+        if (Build.VERSION.SDK_INT < 9)
+            return false;
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        Camera.getCameraInfo(cameraId, info);
+        return info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT;
     }
 
     // Определим, насколько повёрнута камера от нормального положения.
@@ -23,16 +23,30 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.camerastream.frame.FrameBufferPool;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 
 public class YuvImageActivity extends Activity {
+    // Сколько буферов кадров держать у камеры одновременно.
+    private static final int PREVIEW_BUFFER_COUNT = 3;
+
     private Camera camera;
+    private FrameBufferPool bufferPool;
     private SurfaceHolder surfaceHolder;
     private ImageView imageView;
     private TextView textView;
     private long elapsedTime;
+    // Переводить кадр в ARGB напрямую, без сжатия в JPEG и обратного декодирования.
+    private boolean useDirectConversion = true;
+    private int[] pixels;
+    // Формат, размер, поворот и отражение кадров текущего предпросмотра; снимаются при его настройке,
+    // а не на каждый кадр. null — формат кадров неизвестен, они не обрабатываются.
+    private StreamConfig streamConfig;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -97,6 +111,10 @@ public class YuvImageActivity extends Activity {
 
     private void stopCamera() {
         if (camera != null) {
+            if (bufferPool != null) {
+                bufferPool.close();
+                bufferPool = null;
+            }
             camera.setPreviewCallback(null);
             // Останавливаем предпросмотр.
             camera.stopPreview();
@@ -152,8 +170,8 @@ public class YuvImageActivity extends Activity {
                     }
                 }
 
-                camera.setPreviewCallback(previewCallback);
-                //camera.setPreviewCallbackWithBuffer(previewCallback);
+                streamConfig = readStreamConfig(displayOrientation, isFrontCamera(0));
+                setPreviewCallback(streamConfig);
                 try {
                     camera.setPreviewDisplay(surfaceHolder);
                 } catch (IOException e) {
@@ -186,23 +204,54 @@ public class YuvImageActivity extends Activity {
     private Camera.PreviewCallback previewCallback = new Camera.PreviewCallback() {
         @Override
         public synchronized void onPreviewFrame(byte[] data, Camera camera) {
-            // Добавим расчёт времени на обработку одного кадра.
-            long currentTime = System.currentTimeMillis();
-            if (elapsedTime == 0)
-                elapsedTime = currentTime;
-            final long time = currentTime - elapsedTime;
-            elapsedTime = currentTime;
-
-            Camera.Parameters parameters = camera.getParameters();
-            int format = parameters.getPreviewFormat();
-            //YUV formats require more conversion
-            if (format == ImageFormat.NV21 || format == ImageFormat.YUY2 || format == ImageFormat.NV16) {
-                int width = parameters.getPreviewSize().width;
-                int height = parameters.getPreviewSize().height;
+            FrameBufferPool pool = bufferPool;
+            if (pool != null)
+                pool.onFrameReceived(data);
+            try {
+                processFrame(data);
+            } finally {
+                // Буфер снова доступен камере для следующего кадра.
+                if (pool != null)
+                    pool.recycle(data);
+            }
+        }
+    };
 
+    private void processFrame(byte[] data) {
+        // Добавим расчёт времени на обработку одного кадра.
+        long currentTime = System.currentTimeMillis();
+        if (elapsedTime == 0)
+            elapsedTime = currentTime;
+        final long time = currentTime - elapsedTime;
+        elapsedTime = currentTime;
+
+        StreamConfig config = streamConfig;
+        if (config == null)
+            return;
+        int format = config.format;
+        //YUV formats require more conversion
+        if (format == ImageFormat.NV21 || format == ImageFormat.YUY2 || format == ImageFormat.NV16) {
+            int width = config.width;
+            int height = config.height;
+
+            int rotation = config.rotation;
+            boolean mirror = config.mirror;
+            final Bitmap bitmap;
+            if (useDirectConversion) {
+                if (pixels == null || pixels.length < width * height)
+                    pixels = new int[width * height];
+                // Поворот и отражение делаются в том же проходе, что и перевод цвета.
+                YuvConverter.convert(data, format, width, height, rotation, mirror, pixels);
+                bitmap = Bitmap.createBitmap(pixels,
+                        YuvConverter.outputWidth(width, height, rotation),
+                        YuvConverter.outputHeight(width, height, rotation),
+                        Bitmap.Config.ARGB_8888);
+            } else {
                 Matrix matrix = new Matrix();
-                matrix.postRotate(getScreenOrientation(YuvImageActivity.this, 0));
-                YuvImage yuvImage = new YuvImage(data, parameters.getPreviewFormat(), width, height, null);
+                if (mirror)
+                    matrix.setScale(-1, 1);
+                matrix.postRotate(rotation);
+                YuvImage yuvImage = new YuvImage(data, format, width, height, null);
 
                 ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
                 yuvImage.compressToJpeg(new Rect(0, 0, width, height), 100, outputStream);
@@ -226,18 +275,50 @@ public class YuvImageActivity extends Activity {
 
                 //final Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
                 Bitmap bmp = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                final Bitmap bitmap = Bitmap.createBitmap(bmp, 0, 0, width, height, matrix, true);
-
-                runOnUiThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        imageView.setImageBitmap(bitmap);
-                        textView.setText(elapsedTime == 0 ? "" : String.valueOf(time) + " мс");
-                    }
-                });
+                bitmap = Bitmap.createBitmap(bmp, 0, 0, width, height, matrix, true);
             }
+
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    imageView.setImageBitmap(bitmap);
+                    textView.setText(elapsedTime == 0 ? "" : String.valueOf(time) + " мс");
+                }
+            });
         }
-    };
+    }
+
+    // Параметры, которые камера на самом деле применила: setParameters() мог не пройти.
+    private StreamConfig readStreamConfig(int rotation, boolean mirror) {
+        Camera.Parameters param = camera.getParameters();
+        int format = param.getPreviewFormat();
+        int bitsPerPixel = ImageFormat.getBitsPerPixel(format);
+        if (bitsPerPixel <= 0)
+            return null;
+        Camera.Size size = param.getPreviewSize();
+        return new StreamConfig(format, size.width, size.height, bitsPerPixel, rotation, mirror);
+    }
+
+    // Кадры приходят в буферы из пула, а не в новый массив на каждый кадр.
+    private void setPreviewCallback(StreamConfig config) {
+        if (bufferPool != null)
+            bufferPool.close();
+        bufferPool = null;
+
+        if (config == null) {
+            camera.setPreviewCallback(previewCallback);
+            return;
+        }
+        final Camera target = camera;
+        bufferPool = new FrameBufferPool(config.frameSize, PREVIEW_BUFFER_COUNT, new FrameBufferPool.BufferSink() {
+            @Override
+            public void addBuffer(byte[] buffer) {
+                target.addCallbackBuffer(buffer);
+            }
+        });
+        camera.setPreviewCallbackWithBuffer(previewCallback);
+        bufferPool.start();
+    }
 
     // Определить лучшее соотношение сторон изображения, чтобы объекты на экране имели пропорции,
     // близкие к реальным.
@@ -280,6 +361,15 @@ public class YuvImageActivity extends Activity {
         camera.setDisplayOrientation(getScreenOrientation(activity, cameraId));
     }
 
+    // Фронтальная камера отдаёт кадры без зеркального отражения, в отличие от предпросмотра.
+    private boolean isFrontCamera(int cameraId) {
+        if (Build.VERSION.SDK_INT < 9)
+            return false;
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        Camera.getCameraInfo(cameraId, info);
+        return info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT;
+    }
+
     // Определим, насколько повёрнута камера от нормального положения.
     private int getScreenOrientation(Activity activity, int cameraId) {
         if (Build.VERSION.SDK_INT < 9)
@@ -303,8 +393,8 @@ public class YuvImageActivity extends Activity {
                     break;
             }
 
-            android.hardware.Camera.CameraInfo info = new android.hardware.Camera.CameraInfo();
-            android.hardware.Camera.getCameraInfo(cameraId, info);
+            Camera.CameraInfo info = new Camera.CameraInfo();
+            Camera.getCameraInfo(cameraId, info);
             int result = 0;
             // Для передней и задней камеры по-разному считаются повороты.
             if (info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT)
@@ -0,0 +1,62 @@
+package com.example.camerastream.analysis;
+
+// Решает для одного потребителя кадров, можно ли вместо обработки кадра повторно
+// использовать результат предыдущего: кадр считается повтором, если его отпечаток
+// отличается от отпечатка последнего обработанного не больше порога. Сравнение идёт
+// с последним обработанным, а не с предыдущим кадром, поэтому медленные изменения
+// накапливаются и не теряются. У каждого потребителя свой фильтр и свои счётчики.
+public class DuplicateFilter {
+    private final String name;
+    private final FrameFingerprint last;
+    private int threshold;
+    private boolean hasLast;
+    // Пишутся в потоке потребителя, читаются для вывода статистики.
+    private volatile long processedFrames;
+    private volatile long skippedFrames;
+
+    // threshold — допустимая разница средней яркости ячейки, 0 — только точные повторы.
+    public DuplicateFilter(String name, int columns, int rows, int threshold) {
+        this.name = name;
+        this.last = new FrameFingerprint(columns, rows);
+        this.threshold = threshold;
+    }
+
+    // true — кадр повторяет последний обработанный и его можно пропустить;
+    // иначе он запоминается как последний обработанный.
+    public boolean isDuplicate(FrameFingerprint fingerprint) {
+        if (hasLast && fingerprint.distance(last) <= threshold) {
+            skippedFrames++;
+            return true;
+        }
+        last.copyFrom(fingerprint);
+        hasLast = true;
+        processedFrames++;
+        return false;
+    }
+
+    // Следующий кадр будет обработан в любом случае, например после смены параметров.
+    public void reset() {
+        hasLast = false;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getProcessedFrames() {
+        return processedFrames;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    // «имя пропущено/всего».
+    public void appendSummary(StringBuilder out) {
+        out.append(name).append(' ').append(skippedFrames).append('/').append(processedFrames + skippedFrames);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.camerastream.analysis;
+
+import com.example.camerastream.frame.YuvConverter;
+
+// Отпечаток кадра — крошечная миниатюра яркости: средние по сетке ячеек, каждая по
+// нескольким прореженным точкам. Считается за несколько тысяч чтений при любом размере
+// кадра и позволяет быстро понять, что кадр почти не отличается от уже обработанного.
+public class FrameFingerprint {
+    // Сколько точек ячейки брать по каждой оси, не больше.
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private final int columns;
+    private final int rows;
+    private final int[] values;
+    private int width;
+    private int height;
+
+    public FrameFingerprint(int columns, int rows) {
+        if (columns <= 0 || rows <= 0)
+            throw new IllegalArgumentException("Неверный размер отпечатка: " + columns + "x" + rows);
+        this.columns = columns;
+        this.rows = rows;
+        values = new int[columns * rows];
+    }
+
+    // Считает отпечаток кадра NV21, NV16 или YUY2.
+    public void compute(byte[] data, int format, int width, int height) {
+        if (!YuvConverter.isSupported(format))
+            throw new IllegalArgumentException("Неподдерживаемый формат кадра: " + format);
+        if (width < columns || height < rows)
+            throw new IllegalArgumentException("Кадр " + width + "x" + height + " меньше отпечатка");
+        this.width = width;
+        this.height = height;
+        int step = format == YuvConverter.YUY2 ? 2 : 1;
+        int stride = width * step;
+        for (int row = 0; row < rows; row++) {
+            int top = row * height / rows;
+            int yStep = Math.max(1, ((row + 1) * height / rows - top) / SAMPLES_PER_CELL);
+            for (int column = 0; column < columns; column++) {
+                int left = column * width / columns;
+                int xStep = Math.max(1, ((column + 1) * width / columns - left) / SAMPLES_PER_CELL);
+                int sum = 0;
+                for (int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int index = (top + sy * yStep) * stride + left * step;
+                    for (int sx = 0; sx < SAMPLES_PER_CELL; sx++, index += xStep * step)
+                        sum += data[index] & 0xff;
+                }
+                values[row * columns + column] = sum;
+            }
+        }
+    }
+
+    // Наибольшая по ячейкам разница средней яркости, в уровнях 0..255: небольшой движущийся
+    // предмет меняет одну-две ячейки, и в средней по всему кадру он бы потерялся.
+    // Отпечатки кадров разного размера считаются бесконечно далёкими.
+    public int distance(FrameFingerprint other) {
+        if (other.columns != columns || other.rows != rows || other.width != width || other.height != height)
+            return Integer.MAX_VALUE;
+        int max = 0;
+        for (int i = 0; i < values.length; i++)
+            max = Math.max(max, Math.abs(values[i] - other.values[i]));
+        return max / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+    }
+
+    public void copyFrom(FrameFingerprint other) {
+        if (other.columns != columns || other.rows != rows)
+            throw new IllegalArgumentException("Отпечатки разного размера");
+        System.arraycopy(other.values, 0, values, 0, values.length);
+        width = other.width;
+        height = other.height;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.camerastream.analysis;
+
+import com.example.camerastream.frame.YuvConverter;
+
+// Обнаружение движения по яркости кадра. Плоскость Y делится на сетку ячеек, для каждой
+// считается средняя яркость по прореженным точкам и сравнивается с фоном — медленно
+// следующей за кадрами средней той же ячейки. Ячейка считается изменившейся, если разница
+// больше порога, который задаётся чувствительностью. Соседние изменившиеся ячейки
+// объединяются в области. Движение начинается, когда изменилось не меньше minChangedCells
+// ячеек, и заканчивается, когда его нет дольше holdNanos; об этом сообщает Listener.
+// Все массивы выделяются заранее, на кадр ничего не выделяется. Методы вызываются из одного потока.
+public class MotionDetector {
+    public interface Listener {
+        void onMotionStarted(long timestampNanos);
+
+        void onMotionStopped(long timestampNanos);
+    }
+
+    // Порог разницы яркости при наименьшей и наибольшей чувствительности.
+    private static final int MAX_THRESHOLD = 64;
+    private static final int MIN_THRESHOLD = 3;
+    // Яркость ячеек и фона хранится с 8 дробными битами.
+    private static final int FRACTION_BITS = 8;
+    // Сколько точек ячейки брать по каждой оси, не больше.
+    private static final int SAMPLES_PER_CELL = 8;
+
+    private final int columns;
+    private final int rows;
+    private final int backgroundShift;
+    private final long holdNanos;
+    private Listener listener;
+
+    private int threshold;
+    private int minChangedCells = 1;
+
+    private final int[] cells;
+    private final int[] background;
+    private final boolean[] changed;
+    // Номер области для каждой ячейки и стек обхода при их разметке.
+    private final int[] labels;
+    private final int[] stack;
+    // Границы областей в ячейках: левая, верхняя, правая и нижняя включительно.
+    private final int[] regionBounds;
+    private final int[] regionCells;
+    private int regionCount;
+
+    private int frameWidth;
+    private int frameHeight;
+    private boolean initialized;
+    private int changedCells;
+    private boolean motion;
+    private long lastMotionNanos;
+    private long processedFrames;
+    private long motionFrames;
+
+    // backgroundShift — скорость обновления фона: на каждый кадр фон сдвигается к кадру
+    // на 1/2^backgroundShift разницы. holdNanos — сколько ждать после последнего движения.
+    public MotionDetector(int columns, int rows, int backgroundShift, long holdNanos) {
+        if (columns <= 0 || rows <= 0 || backgroundShift < 0 || backgroundShift > 15)
+            throw new IllegalArgumentException("Неверные параметры детектора движения");
+        this.columns = columns;
+        this.rows = rows;
+        this.backgroundShift = backgroundShift;
+        this.holdNanos = holdNanos;
+        int count = columns * rows;
+        cells = new int[count];
+        background = new int[count];
+        changed = new boolean[count];
+        labels = new int[count];
+        stack = new int[count];
+        regionBounds = new int[4 * count];
+        regionCells = new int[count];
+        setSensitivity(50);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // 0 — заметить только резкие изменения, 100 — самые слабые.
+    public void setSensitivity(int percent) {
+        percent = Math.max(0, Math.min(100, percent));
+        threshold = (MAX_THRESHOLD - (MAX_THRESHOLD - MIN_THRESHOLD) * percent / 100) << FRACTION_BITS;
+    }
+
+    public void setMinChangedCells(int minChangedCells) {
+        this.minChangedCells = Math.max(1, minChangedCells);
+    }
+
+    // Забыть фон: следующий кадр станет новым фоном.
+    public void reset() {
+        initialized = false;
+        changedCells = 0;
+        regionCount = 0;
+    }
+
+    // Обрабатывает кадр NV21, NV16 или YUY2 и возвращает true, если в нём есть движение.
+    public boolean process(byte[] data, int format, int width, int height, long timestampNanos) {
+        if (!YuvConverter.isSupported(format))
+            throw new IllegalArgumentException("Неподдерживаемый формат кадра: " + format);
+        if (width < columns || height < rows)
+            throw new IllegalArgumentException("Кадр " + width + "x" + height + " меньше сетки");
+        if (width != frameWidth || height != frameHeight) {
+            frameWidth = width;
+            frameHeight = height;
+            reset();
+        }
+        // У YUY2 яркость — каждый второй байт строки.
+        int step = format == YuvConverter.YUY2 ? 2 : 1;
+        sampleCells(data, width, height, step);
+        processedFrames++;
+
+        if (!initialized) {
+            for (int i = 0; i < cells.length; i++) {
+                background[i] = cells[i];
+                changed[i] = false;
+            }
+            initialized = true;
+            changedCells = 0;
+            regionCount = 0;
+        } else {
+            changedCells = 0;
+            for (int i = 0; i < cells.length; i++) {
+                int difference = cells[i] - background[i];
+                boolean cellChanged = Math.abs(difference) > threshold;
+                changed[i] = cellChanged;
+                if (cellChanged)
+                    changedCells++;
+                background[i] += difference >> backgroundShift;
+            }
+            findRegions();
+        }
+
+        boolean frameMotion = changedCells >= minChangedCells;
+        if (frameMotion) {
+            lastMotionNanos = timestampNanos;
+            motionFrames++;
+            if (!motion) {
+                motion = true;
+                if (listener != null)
+                    listener.onMotionStarted(timestampNanos);
+            }
+        } else if (motion && timestampNanos - lastMotionNanos >= holdNanos) {
+            motion = false;
+            if (listener != null)
+                listener.onMotionStopped(timestampNanos);
+        }
+        return frameMotion;
+    }
+
+    // Средняя яркость ячеек по не более чем SAMPLES_PER_CELL x SAMPLES_PER_CELL точкам.
+    private void sampleCells(byte[] data, int width, int height, int step) {
+        int stride = width * step;
+        for (int row = 0; row < rows; row++) {
+            int top = row * height / rows;
+            int bottom = (row + 1) * height / rows;
+            int yStep = Math.max(1, (bottom - top) / SAMPLES_PER_CELL);
+            for (int column = 0; column < columns; column++) {
+                int left = column * width / columns;
+                int right = (column + 1) * width / columns;
+                int xStep = Math.max(1, (right - left) / SAMPLES_PER_CELL);
+                int sum = 0;
+                int count = 0;
+                for (int y = top; y < bottom; y += yStep) {
+                    int index = y * stride + left * step;
+                    int indexStep = xStep * step;
+                    for (int x = left; x < right; x += xStep, index += indexStep) {
+                        sum += data[index] & 0xff;
+                        count++;
+                    }
+                }
+                cells[row * columns + column] = (sum << FRACTION_BITS) / count;
+            }
+        }
+    }
+
+    // Разметка связных (по сторонам) групп изменившихся ячеек обходом в глубину.
+    private void findRegions() {
+        regionCount = 0;
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = -1;
+        for (int start = 0; start < changed.length; start++) {
+            if (!changed[start] || labels[start] >= 0)
+                continue;
+            int region = regionCount++;
+            int bounds = region * 4;
+            regionBounds[bounds] = columns;
+            regionBounds[bounds + 1] = rows;
+            regionBounds[bounds + 2] = -1;
+            regionBounds[bounds + 3] = -1;
+            regionCells[region] = 0;
+            int size = 0;
+            stack[size++] = start;
+            labels[start] = region;
+            while (size > 0) {
+                int cell = stack[--size];
+                int x = cell % columns;
+                int y = cell / columns;
+                regionCells[region]++;
+                regionBounds[bounds] = Math.min(regionBounds[bounds], x);
+                regionBounds[bounds + 1] = Math.min(regionBounds[bounds + 1], y);
+                regionBounds[bounds + 2] = Math.max(regionBounds[bounds + 2], x);
+                regionBounds[bounds + 3] = Math.max(regionBounds[bounds + 3], y);
+                if (x > 0 && changed[cell - 1] && labels[cell - 1] < 0) {
+                    labels[cell - 1] = region;
+                    stack[size++] = cell - 1;
+                }
+                if (x < columns - 1 && changed[cell + 1] && labels[cell + 1] < 0) {
+                    labels[cell + 1] = region;
+                    stack[size++] = cell + 1;
+                }
+                if (y > 0 && changed[cell - columns] && labels[cell - columns] < 0) {
+                    labels[cell - columns] = region;
+                    stack[size++] = cell - columns;
+                }
+                if (y < rows - 1 && changed[cell + columns] && labels[cell + columns] < 0) {
+                    labels[cell + columns] = region;
+                    stack[size++] = cell + columns;
+                }
+            }
+        }
+    }
+
+    // Есть ли движение с учётом holdNanos.
+    public boolean isMotion() {
+        return motion;
+    }
+
+    public int getChangedCells() {
+        return changedCells;
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    // Границы области в пикселях кадра: left, top включительно, right, bottom — нет.
+    public int getRegionLeft(int region) {
+        return regionBounds[region * 4] * frameWidth / columns;
+    }
+
+    public int getRegionTop(int region) {
+        return regionBounds[region * 4 + 1] * frameHeight / rows;
+    }
+
+    public int getRegionRight(int region) {
+        return (regionBounds[region * 4 + 2] + 1) * frameWidth / columns;
+    }
+
+    public int getRegionBottom(int region) {
+        return (regionBounds[region * 4 + 3] + 1) * frameHeight / rows;
+    }
+
+    public int getRegionCells(int region) {
+        return regionCells[region];
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public boolean isCellChanged(int column, int row) {
+        return changed[row * columns + column];
+    }
+
+    public long getProcessedFrames() {
+        return processedFrames;
+    }
+
+    // Сколько кадров было с движением.
+    public long getMotionFrames() {
+        return motionFrames;
+    }
+}
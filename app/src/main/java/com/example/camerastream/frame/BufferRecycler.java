@@ -0,0 +1,11 @@
+package com.example.camerastream.frame;
+
+// Владелец буфера кадра: пул камеры или общий кадр шины, который вернёт буфер пулу,
+// когда его отпустят все подписчики.
+public interface BufferRecycler {
+    // Кадр обработан, буфер больше не нужен.
+    void recycle(byte[] buffer);
+
+    // Кадр пропущен без обработки.
+    void drop(byte[] buffer);
+}
@@ -0,0 +1,43 @@
+package com.example.camerastream.frame;
+
+// Кадр, проходящий через конвейер обработки. Объекты кадров выделяются заранее и используются
+// повторно, поэтому после release() ссылки на их поля хранить нельзя.
+public class Frame {
+    // Исходные данные кадра и пул (или общий кадр SharedFrame), которому их нужно вернуть.
+    public byte[] data;
+    public BufferRecycler bufferPool;
+    // Параметры потока, с которыми кадр был получен.
+    public StreamConfig config;
+    public long timestampNanos;
+    public long sequence;
+    // Кадр почти повторяет последний показанный: пиксели не переводились, и FramePipeline
+    // не отдаёт его выводу. Выставляется ступенью перевода.
+    public boolean duplicate;
+
+    // Результат перевода в ARGB, размер массива может быть больше pixelsWidth * pixelsHeight.
+    public int[] pixels;
+    public int pixelsWidth;
+    public int pixelsHeight;
+
+    // Массив пикселей под кадр заданного размера; выделяется только при росте кадра.
+    public int[] ensurePixels(int width, int height) {
+        if (pixels == null || pixels.length < width * height)
+            pixels = new int[width * height];
+        pixelsWidth = width;
+        pixelsHeight = height;
+        return pixels;
+    }
+
+    // Возвращает буфер с исходными данными источнику кадров.
+    void recycleData(boolean dropped) {
+        byte[] buffer = data;
+        data = null;
+        if (buffer != null && bufferPool != null) {
+            if (dropped)
+                bufferPool.drop(buffer);
+            else
+                bufferPool.recycle(buffer);
+        }
+        bufferPool = null;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.camerastream.frame;
+
+// Распределение времени кадра между ступенями обработки (показ, трансляция, запись, анализ).
+// Бюджет кадра — промежуток между кадрами при заданной частоте, умноженный на число ядер,
+// которые обработка может занять. Цена каждой ступени — скользящее среднее времени её работы
+// над кадром. Если ожидаемая нагрузка превышает DEGRADE_LOAD процентов бюджета, ступень
+// с самым низким приоритетом начинает брать каждый второй, четвёртый, восьмой кадр, а затем
+// отключается; когда нагрузка с учётом возвращаемой ступени не превысит RESTORE_LOAD процентов,
+// ступени возвращаются в обратном порядке. Разрыв между порогами и выдержка RESTORE_HOLD_NANOS
+// не дают ступени переключаться туда-обратно. Каждое изменение сообщается слушателю.
+public class FrameBudgetScheduler {
+    public interface Listener {
+        // Ступень stage перешла с уровня previousLevel на stage.getLevel(); loadPercent —
+        // нагрузка в процентах бюджета, из-за которой это произошло.
+        void onStageChanged(Stage stage, int previousLevel, int loadPercent);
+    }
+
+    // Уровень 0 — каждый кадр, уровень n — каждый 2^n-й, SKIP_LEVEL — ступень отключена.
+    public static final int SKIP_LEVEL = 4;
+    public static final int DEGRADE_LOAD = 90;
+    public static final int RESTORE_LOAD = 70;
+    // Как часто пересматривать уровни, по времени кадров.
+    static final long EVALUATE_INTERVAL_NANOS = 500000000L;
+    // Сколько ждать после любого изменения, прежде чем возвращать ступень.
+    static final long RESTORE_HOLD_NANOS = 2000000000L;
+    // Вес нового замера в скользящем среднем.
+    private static final float COST_WEIGHT = 0.1f;
+
+    public final class Stage {
+        private final String name;
+        private final boolean degradable;
+        // Меняется под блокировкой планировщика, читается в потоке раздачи кадров.
+        private volatile int level;
+        private float costNanos;
+        private boolean measured;
+        private long skippedFrames;
+
+        private Stage(String name, boolean degradable) {
+            this.name = name;
+            this.degradable = degradable;
+        }
+
+        // Обрабатывать ли кадр с номером sequence на текущем уровне.
+        public boolean shouldRun(long sequence) {
+            int current = level;
+            boolean run = current == 0 || (current < SKIP_LEVEL && (sequence & ((1 << current) - 1)) == 0);
+            if (!run) {
+                synchronized (FrameBudgetScheduler.this) {
+                    skippedFrames++;
+                }
+            }
+            return run;
+        }
+
+        // Время обработки одного кадра ступенью.
+        public void record(long nanos) {
+            synchronized (FrameBudgetScheduler.this) {
+                if (!measured) {
+                    costNanos = nanos;
+                    measured = true;
+                } else {
+                    costNanos += (nanos - costNanos) * COST_WEIGHT;
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        // Каждый какой кадр обрабатывается; 0 — ступень отключена.
+        public int getDecimation() {
+            int current = level;
+            return current >= SKIP_LEVEL ? 0 : 1 << current;
+        }
+
+        public long getCostNanos() {
+            synchronized (FrameBudgetScheduler.this) {
+                return (long) costNanos;
+            }
+        }
+
+        public long getSkippedFrames() {
+            synchronized (FrameBudgetScheduler.this) {
+                return skippedFrames;
+            }
+        }
+
+        // Средняя цена на кадр с учётом прореживания на уровне level.
+        private float costAt(int level) {
+            return level >= SKIP_LEVEL ? 0 : costNanos / (1 << level);
+        }
+    }
+
+    private final long budgetNanos;
+    private final Stage[] stages = new Stage[8];
+    private int stageCount;
+    private volatile Listener listener;
+
+    private boolean evaluated;
+    private long evaluatedNanos;
+    private long changedNanos;
+    private int loadPercent;
+
+    // fps — частота кадров камеры; parallelism — сколько ядер может занять обработка.
+    public FrameBudgetScheduler(int fps, int parallelism) {
+        if (fps <= 0 || parallelism <= 0)
+            throw new IllegalArgumentException("Неверный бюджет кадра: " + fps + " к/с, " + parallelism + " ядер");
+        budgetNanos = 1000000000L / fps * parallelism;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Ступени добавляются в порядке убывания приоритета. Ступень, которую нельзя
+    // прореживать (показ), всё равно учитывается в нагрузке.
+    public synchronized Stage addStage(String name, boolean degradable) {
+        if (stageCount == stages.length)
+            throw new IllegalStateException("Слишком много ступеней");
+        Stage stage = new Stage(name, degradable);
+        stages[stageCount++] = stage;
+        return stage;
+    }
+
+    // Вызывается на каждый кадр источника; уровни пересматриваются раз в EVALUATE_INTERVAL_NANOS.
+    public void onFrame(long timestampNanos) {
+        Stage changed = null;
+        int previousLevel = 0;
+        int load;
+        synchronized (this) {
+            if (evaluated && timestampNanos - evaluatedNanos < EVALUATE_INTERVAL_NANOS)
+                return;
+            if (!evaluated)
+                changedNanos = timestampNanos;
+            evaluated = true;
+            evaluatedNanos = timestampNanos;
+            float cost = 0;
+            for (int i = 0; i < stageCount; i++)
+                cost += stages[i].costAt(stages[i].level);
+            load = (int) (cost * 100 / budgetNanos);
+            loadPercent = load;
+            if (load > DEGRADE_LOAD) {
+                // С конца: сначала самые неважные ступени.
+                for (int i = stageCount - 1; i >= 0; i--) {
+                    Stage stage = stages[i];
+                    if (stage.degradable && stage.level < SKIP_LEVEL) {
+                        changed = stage;
+                        break;
+                    }
+                }
+                if (changed != null) {
+                    previousLevel = changed.level;
+                    changed.level = previousLevel + 1;
+                    changedNanos = timestampNanos;
+                }
+            } else if (timestampNanos - changedNanos >= RESTORE_HOLD_NANOS) {
+                for (int i = 0; i < stageCount; i++) {
+                    Stage stage = stages[i];
+                    if (stage.level == 0)
+                        continue;
+                    float projected = cost - stage.costAt(stage.level) + stage.costAt(stage.level - 1);
+                    if (projected * 100 / budgetNanos <= RESTORE_LOAD) {
+                        changed = stage;
+                        previousLevel = stage.level;
+                        stage.level = previousLevel - 1;
+                        changedNanos = timestampNanos;
+                    }
+                    // Ступени возвращаются по очереди приоритета: более важная ждёт первой.
+                    break;
+                }
+            }
+        }
+        Listener target = listener;
+        if (changed != null && target != null)
+            target.onStageChanged(changed, previousLevel, load);
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    // Нагрузка при последнем пересмотре, в процентах бюджета.
+    public synchronized int getLoadPercent() {
+        return loadPercent;
+    }
+
+    public synchronized void appendSummary(StringBuilder out) {
+        out.append("нагрузка ").append(loadPercent).append('%');
+        for (int i = 0; i < stageCount; i++) {
+            Stage stage = stages[i];
+            if (stage.level == 0)
+                continue;
+            out.append(", ").append(stage.name);
+            if (stage.level >= SKIP_LEVEL)
+                out.append(" выкл.");
+            else
+                out.append(" 1/").append(1 << stage.level);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.camerastream.frame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ограниченный набор буферов кадров для Camera.setPreviewCallbackWithBuffer.
+// Источник кадров пишет только в выданные ему буферы, поэтому на каждый кадр не выделяется
+// новый массив. После обработки буфер возвращается источнику через recycle().
+public class FrameBufferPool implements BufferRecycler {
+    // Источник, которому отдаются свободные буферы. Для камеры — Camera.addCallbackBuffer.
+    public interface BufferSink {
+        void addBuffer(byte[] buffer);
+    }
+
+    private final int bufferSize;
+    private final int capacity;
+    private final BufferSink sink;
+    // Проверка и возврат буфера идут под одной блокировкой с close(): после close()
+    // источник не получит ни одного буфера, даже от потока, начавшего recycle() раньше.
+    private final Object lock = new Object();
+    private boolean closed;
+
+    // Сколько буферов сейчас ждут кадра у источника.
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+
+    public FrameBufferPool(int bufferSize, int capacity, BufferSink sink) {
+        if (bufferSize <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("Неверный размер пула: " + capacity + " x " + bufferSize);
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.sink = sink;
+    }
+
+    // Размер буфера под кадр выбранного размера и формата (ImageFormat.getBitsPerPixel).
+    public static int frameSize(int width, int height, int bitsPerPixel) {
+        if (bitsPerPixel <= 0)
+            throw new IllegalArgumentException("Неизвестная глубина цвета: " + bitsPerPixel);
+        return width * height * bitsPerPixel / 8;
+    }
+
+    // Выделяет все буферы сразу и отдаёт их источнику.
+    public void start() {
+        for (int i = 0; i < capacity; i++) {
+            queued.incrementAndGet();
+            sink.addBuffer(new byte[bufferSize]);
+        }
+    }
+
+    // Вызывается, когда источник вернул заполненный буфер. Если у источника не осталось
+    // свободных буферов, следующие кадры он будет пропускать — считаем это исчерпанием пула.
+    public void onFrameReceived(byte[] buffer) {
+        receivedFrames.incrementAndGet();
+        if (queued.decrementAndGet() <= 0)
+            exhaustedCount.incrementAndGet();
+    }
+
+    // Возвращает буфер источнику после обработки кадра.
+    public void recycle(byte[] buffer) {
+        // Буферы прежнего размера после смены разрешения источнику уже не подходят.
+        if (buffer == null || buffer.length != bufferSize)
+            return;
+        synchronized (lock) {
+            if (closed)
+                return;
+            queued.incrementAndGet();
+            sink.addBuffer(buffer);
+        }
+    }
+
+    // Кадр не обработан (например, обработчик занят), но буфер всё равно возвращается.
+    public void drop(byte[] buffer) {
+        droppedFrames.incrementAndGet();
+        recycle(buffer);
+    }
+
+    // После закрытия буферы больше не возвращаются источнику: камера могла быть освобождена.
+    // Ждёт, пока закончится возврат буфера в другом потоке.
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+        }
+    }
+
+    public boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.camerastream.frame;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Шина кадров: один источник, несколько независимых подписчиков (показ, трансляция, запись,
+// анализ). Кадр не копируется — все подписчики получают один SharedFrame со счётчиком ссылок,
+// и буфер возвращается камере, когда его отпустит последний. У каждого подписчика свой поток
+// и своя очередь с вытеснением старых кадров, а также ограничение частоты, поэтому медленный
+// подписчик теряет свои кадры, но не задерживает остальных и источник.
+// Каждый кадр шины держит буфер источника, поэтому у источника буферов должно быть больше,
+// чем кадров шины: тогда подписчики не могут забрать у него все буферы. Число кадров шины
+// можно получить из подписок (AUTO_FRAME_COUNT) — столько, сколько они могут удержать вместе.
+// publish() вызывается из одного потока; подписчики DIRECT не должны вызывать stop().
+public class FrameBus {
+    public interface Subscriber {
+        // Кадр действителен до возврата из метода; чтобы оставить его себе, нужно вызвать
+        // frame.retain() и позже frame.release().
+        void onFrame(SharedFrame frame);
+    }
+
+    // Подписчик вызывается прямо в потоке publish() и не должен блокироваться.
+    public static final int DIRECT = -1;
+    // Кадров шины столько, сколько могут удержать все подписчики, плюс раздаваемый кадр.
+    public static final int AUTO_FRAME_COUNT = 0;
+
+    public final class Subscription {
+        private final String name;
+        private final Subscriber subscriber;
+        private final FrameStage<SharedFrame> stage;
+        private final long minIntervalNanos;
+        // Очередь и кадр в обработке; для DIRECT — ничего.
+        private final int queuedFrames;
+        private volatile int heldFrames;
+        // Ступень FrameBudgetScheduler: решает, брать ли кадр, и получает время обработки.
+        private volatile FrameBudgetScheduler.Stage budgetStage;
+        // Меняются только в потоке publish().
+        private boolean accepted;
+        private long acceptedNanos;
+
+        private final AtomicLong deliveredFrames = new AtomicLong();
+        private final AtomicLong skippedFrames = new AtomicLong();
+
+        private Subscription(String name, final Subscriber subscriber, int queueCapacity, long minIntervalNanos) {
+            this.name = name;
+            this.subscriber = subscriber;
+            this.minIntervalNanos = minIntervalNanos;
+            queuedFrames = queueCapacity == DIRECT ? 0 : Math.max(queueCapacity, 1) + 1;
+            if (queueCapacity == DIRECT) {
+                stage = null;
+                return;
+            }
+            stage = new FrameStage<SharedFrame>("FrameBus-" + name, queueCapacity,
+                    new FrameStage.Handler<SharedFrame>() {
+                        @Override
+                        public void handle(SharedFrame frame) {
+                            try {
+                                process(frame);
+                            } finally {
+                                frame.release();
+                            }
+                        }
+                    }, new FrameStage.Handler<SharedFrame>() {
+                        @Override
+                        public void handle(SharedFrame frame) {
+                            frame.releaseDropped();
+                        }
+                    });
+        }
+
+        // Сколько кадров подписчик может оставить себе через retain() после возврата из onFrame,
+        // например передав их в FramePipeline. Учитывается в AUTO_FRAME_COUNT.
+        public void setHeldFrames(int count) {
+            if (count < 0)
+                throw new IllegalArgumentException("Неверное число кадров: " + count);
+            heldFrames = count;
+        }
+
+        // Сколько кадров подписчик может удержать одновременно.
+        public int getMaxRetainedFrames() {
+            return queuedFrames + heldFrames;
+        }
+
+        // Ступень с бюджетом; null — подписчик получает все кадры.
+        public void setBudgetStage(FrameBudgetScheduler.Stage stage) {
+            budgetStage = stage;
+        }
+
+        // Не чаще одного кадра в minIntervalNanos по времени кадров и только кадры,
+        // которые оставляет планировщик.
+        private boolean accept(SharedFrame frame) {
+            long timestampNanos = frame.timestampNanos;
+            if (accepted && timestampNanos - acceptedNanos < minIntervalNanos) {
+                skippedFrames.incrementAndGet();
+                return false;
+            }
+            FrameBudgetScheduler.Stage budget = budgetStage;
+            if (budget != null && !budget.shouldRun(frame.sequence)) {
+                skippedFrames.incrementAndGet();
+                return false;
+            }
+            accepted = true;
+            acceptedNanos = timestampNanos;
+            return true;
+        }
+
+        private void process(SharedFrame frame) {
+            FrameBudgetScheduler.Stage budget = budgetStage;
+            if (budget == null) {
+                subscriber.onFrame(frame);
+                return;
+            }
+            long start = System.nanoTime();
+            subscriber.onFrame(frame);
+            budget.record(System.nanoTime() - start);
+        }
+
+        private void deliver(SharedFrame frame) {
+            deliveredFrames.incrementAndGet();
+            if (stage == null) {
+                try {
+                    process(frame);
+                    frame.markProcessed();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+                return;
+            }
+            frame.retain();
+            stage.offer(frame);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Сколько кадров ждут обработки у подписчика.
+        public int getLag() {
+            return stage == null ? 0 : stage.getQueueDepth();
+        }
+
+        public int getMaxLag() {
+            return stage == null ? 0 : stage.getMaxQueueDepth();
+        }
+
+        public long getDeliveredFrames() {
+            return deliveredFrames.get();
+        }
+
+        // Вытеснены из очереди подписчика, не дождавшись обработки.
+        public long getDroppedFrames() {
+            return stage == null ? 0 : stage.getDroppedFrames();
+        }
+
+        // Пропущены из-за ограничения частоты или планировщиком.
+        public long getSkippedFrames() {
+            return skippedFrames.get();
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+    // Для AUTO_FRAME_COUNT кадры выделяются в start().
+    private volatile ArrayBlockingQueue<SharedFrame> freeFrames;
+    private int frameCount;
+    private volatile boolean running;
+    private long sequence;
+
+    private final AtomicLong publishedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    // frameCount — сколько кадров может быть в обработке одновременно, меньше числа буферов
+    // источника, или AUTO_FRAME_COUNT.
+    public FrameBus(int frameCount) {
+        if (frameCount < 0)
+            throw new IllegalArgumentException("Неверное число кадров шины: " + frameCount);
+        if (frameCount != AUTO_FRAME_COUNT)
+            allocateFrames(frameCount);
+    }
+
+    private void allocateFrames(int count) {
+        ArrayBlockingQueue<SharedFrame> frames = new ArrayBlockingQueue<SharedFrame>(count);
+        for (int i = 0; i < count; i++)
+            frames.offer(new SharedFrame(this));
+        frameCount = count;
+        freeFrames = frames;
+    }
+
+    // Сколько кадров могут удержать все подписчики вместе с раздаваемым кадром. Столько кадров
+    // выделяет AUTO_FRAME_COUNT; подписчики, добавленные после start(), в этом числе не учтены.
+    public synchronized int getRetainedFrames() {
+        int count = 1;
+        for (Subscription subscription : subscriptions)
+            count += subscription.getMaxRetainedFrames();
+        return count;
+    }
+
+    // Число кадров шины; для AUTO_FRAME_COUNT — 0 до start().
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    // queueCapacity — DIRECT, FrameStage.LATEST_FRAME или длина очереди подписчика;
+    // minIntervalNanos — наименьший промежуток между кадрами подписчика, 0 — без ограничения.
+    public Subscription subscribe(String name, Subscriber subscriber, int queueCapacity, long minIntervalNanos) {
+        if (queueCapacity < DIRECT)
+            throw new IllegalArgumentException("Неверная длина очереди: " + queueCapacity);
+        Subscription subscription = new Subscription(name, subscriber, queueCapacity, minIntervalNanos);
+        synchronized (this) {
+            subscriptions.add(subscription);
+            if (running && subscription.stage != null)
+                subscription.stage.start();
+        }
+        return subscription;
+    }
+
+    // Кадры, оставшиеся в очереди подписчика, освобождаются.
+    public void unsubscribe(Subscription subscription) {
+        synchronized (this) {
+            if (!subscriptions.remove(subscription))
+                return;
+        }
+        if (subscription.stage != null)
+            subscription.stage.stop();
+    }
+
+    public synchronized void start() {
+        if (running)
+            return;
+        if (freeFrames == null)
+            allocateFrames(getRetainedFrames());
+        running = true;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.stage != null)
+                subscription.stage.start();
+        }
+    }
+
+    // Кадры, оставшиеся в очередях подписчиков, освобождаются. Раздача кадра идёт под той же
+    // блокировкой, поэтому stop() дожидается её, а после него publish() кадров не раздаёт
+    // и в остановленные очереди ничего не попадает.
+    public synchronized void stop() {
+        if (!running)
+            return;
+        running = false;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.stage != null)
+                subscription.stage.stop();
+        }
+    }
+
+    // Раздаёт кадр подписчикам. Возвращает false, если кадр пропущен: шина остановлена
+    // или все кадры шины ещё в обработке. Буфер в любом случае вернётся bufferPool.
+    public boolean publish(byte[] data, StreamConfig config, BufferRecycler bufferPool, long timestampNanos) {
+        synchronized (this) {
+            ArrayBlockingQueue<SharedFrame> frames = freeFrames;
+            SharedFrame frame = running && frames != null ? frames.poll() : null;
+            if (frame != null) {
+                deliver(frame, data, config, bufferPool, timestampNanos);
+                return true;
+            }
+        }
+        droppedFrames.incrementAndGet();
+        if (bufferPool != null)
+            bufferPool.drop(data);
+        return false;
+    }
+
+    private void deliver(SharedFrame frame, byte[] data, StreamConfig config, BufferRecycler bufferPool,
+                         long timestampNanos) {
+        publishedFrames.incrementAndGet();
+        // Ссылка шины держит кадр, пока он раздаётся.
+        frame.reset(data, config, bufferPool, timestampNanos, sequence++);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accept(frame))
+                subscription.deliver(frame);
+        }
+        frame.releaseDropped();
+    }
+
+    void recycleFrame(SharedFrame frame) {
+        freeFrames.offer(frame);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getFreeFrames() {
+        ArrayBlockingQueue<SharedFrame> frames = freeFrames;
+        return frames == null ? 0 : frames.size();
+    }
+
+    public long getPublishedFrames() {
+        return publishedFrames.get();
+    }
+
+    // Пропущены шиной целиком, не дойдя до подписчиков.
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+}
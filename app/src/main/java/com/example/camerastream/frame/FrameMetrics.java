@@ -0,0 +1,99 @@
+package com.example.camerastream.frame;
+
+// Время прохождения кадра по ступеням обработки и частота кадров.
+// Каждую ступень должен записывать один поток; запись не выделяет память.
+public class FrameMetrics {
+    // Ожидание между приходом кадра от камеры и началом его перевода.
+    public static final int RECEIVE = 0;
+    public static final int CONVERT = 1;
+    public static final int ROTATE = 2;
+    // Сжатие в JPEG и обратное декодирование при показе без прямого перевода.
+    public static final int ENCODE = 3;
+    // Сжатие кадра для трансляции; пишется потоком трансляции, поэтому отдельно от ENCODE.
+    public static final int STREAM_ENCODE = 4;
+    // Ожидание между отправкой кадра в поток UI и его показом.
+    public static final int DISPLAY = 5;
+    // От прихода кадра от камеры до показа.
+    public static final int TOTAL = 6;
+    public static final int STAGE_COUNT = 7;
+
+    private static final String[] STAGE_NAMES = {"приём", "перевод", "поворот", "JPEG", "трансляция", "показ",
+            "всего"};
+    private static final long FPS_WINDOW_NANOS = 1000000000L;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_COUNT];
+
+    private long windowStartNanos;
+    private int windowFrames;
+    private volatile float fps;
+
+    public FrameMetrics() {
+        for (int i = 0; i < STAGE_COUNT; i++)
+            histograms[i] = new LatencyHistogram();
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public void record(int stage, long nanos) {
+        histograms[stage].recordNanos(nanos);
+    }
+
+    public LatencyHistogram getHistogram(int stage) {
+        return histograms[stage];
+    }
+
+    // Вызывается на каждый кадр от камеры; частота пересчитывается раз в секунду.
+    public void onFrame(long timestampNanos) {
+        if (windowFrames == 0)
+            windowStartNanos = timestampNanos;
+        windowFrames++;
+        long elapsed = timestampNanos - windowStartNanos;
+        if (elapsed >= FPS_WINDOW_NANOS) {
+            fps = (windowFrames - 1) * 1e9f / elapsed;
+            windowFrames = 1;
+            windowStartNanos = timestampNanos;
+        }
+    }
+
+    public float getFps() {
+        return fps;
+    }
+
+    // Сбрасывает гистограммы, чтобы процентили отражали только последние кадры.
+    // Из другого потока допустимо: в худшем случае потеряется несколько отсчётов.
+    public void reset() {
+        for (LatencyHistogram histogram : histograms)
+            histogram.reset();
+    }
+
+    // Сводка в миллисекундах: «30.0 к/с» и по строке «ступень p50/p95/p99/max» на каждую
+    // ступень, через которую прошёл хотя бы один кадр.
+    public void appendSummary(StringBuilder out) {
+        appendTenths(out, Math.round(fps * 10));
+        out.append(" к/с");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            LatencyHistogram histogram = histograms[stage];
+            if (histogram.getCount() == 0)
+                continue;
+            out.append('\n').append(STAGE_NAMES[stage]).append(' ');
+            appendMillis(out, histogram.getPercentileMicros(50));
+            out.append('/');
+            appendMillis(out, histogram.getPercentileMicros(95));
+            out.append('/');
+            appendMillis(out, histogram.getPercentileMicros(99));
+            out.append('/');
+            appendMillis(out, histogram.getMaxMicros());
+            out.append(" мс");
+        }
+    }
+
+    private static void appendMillis(StringBuilder out, int micros) {
+        appendTenths(out, (micros + 50) / 100);
+    }
+
+    private static void appendTenths(StringBuilder out, int tenths) {
+        out.append(tenths / 10).append('.').append(tenths % 10);
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.camerastream.frame;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Конвейер обработки кадров: приём от камеры -> перевод в ARGB -> вывод.
+// Поток камеры только записывает кадр в кольцо FrameRing, без блокировок и выделения памяти;
+// перевод и вывод идут в собственных потоках. Если какая-то ступень не успевает,
+// устаревшие кадры вытесняются, а их буферы сразу возвращаются камере. Кадр, который перевод
+// пометил повтором (Frame.duplicate), до вывода не доходит и не вытесняет ожидающий вывода кадр.
+public class FramePipeline {
+    public interface Stage {
+        void process(Frame frame);
+    }
+
+    private final Stage converter;
+    private final Stage consumer;
+    private final FrameMetrics metrics;
+    private final FrameRing input;
+    private final FrameStage<Frame> consumeStage;
+    private final ArrayBlockingQueue<Frame> freeFrames;
+
+    private final AtomicLong submittedFrames = new AtomicLong();
+    private final AtomicLong convertedFrames = new AtomicLong();
+    private final AtomicLong duplicateFrames = new AtomicLong();
+    private volatile Thread convertThread;
+
+    // queueCapacity — FrameStage.LATEST_FRAME или размер очереди перед каждой ступенью.
+    // metrics может быть null, если время ступеней не нужно.
+    public FramePipeline(Stage converter, Stage consumer, int queueCapacity, FrameMetrics metrics) {
+        this.converter = converter;
+        this.consumer = consumer;
+        this.metrics = metrics;
+
+        FrameStage.Handler<Frame> dropHandler = new FrameStage.Handler<Frame>() {
+            @Override
+            public void handle(Frame frame) {
+                frame.recycleData(true);
+                freeFrames.offer(frame);
+            }
+        };
+        // Вытесняется самый старый кадр: поток камеры никогда не ждёт перевода.
+        input = new FrameRing(Math.max(queueCapacity, 1), FrameRing.OVERWRITE_OLDEST);
+        consumeStage = new FrameStage<Frame>("FramePipeline-consume", queueCapacity, new FrameStage.Handler<Frame>() {
+            @Override
+            public void handle(Frame frame) {
+                consume(frame);
+            }
+        }, dropHandler);
+
+        // По кадру на каждое место в очереди вывода, по одному в обработке у каждой ступени
+        // и запас: в установившемся режиме новые кадры не выделяются.
+        int frameCount = Math.max(queueCapacity, 1) + 3;
+        freeFrames = new ArrayBlockingQueue<Frame>(frameCount);
+        for (int i = 0; i < frameCount; i++)
+            freeFrames.offer(new Frame());
+    }
+
+    public synchronized void start() {
+        if (convertThread != null)
+            return;
+        consumeStage.start();
+        convertThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                convertLoop();
+            }
+        }, "FramePipeline-convert");
+        convertThread.start();
+    }
+
+    public synchronized void stop() {
+        Thread thread = convertThread;
+        if (thread == null)
+            return;
+        input.close();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        convertThread = null;
+        input.clear();
+        consumeStage.stop();
+    }
+
+    // Вызывается только в потоке камеры. Возвращает false, если кадр не принят или ради него
+    // вытеснен более старый: их буферы тогда уже возвращены пулу как пропущенные.
+    public boolean submit(byte[] data, StreamConfig config, BufferRecycler bufferPool) {
+        long now = System.nanoTime();
+        submittedFrames.incrementAndGet();
+        if (metrics != null)
+            metrics.onFrame(now);
+        return input.offer(data, bufferPool, config, now);
+    }
+
+    private void convertLoop() {
+        Frame frame = null;
+        while (true) {
+            if (frame == null) {
+                frame = freeFrames.poll();
+                if (frame == null) {
+                    // Все кадры у ступени вывода: ждём, кольцо тем временем само вытесняет старые.
+                    if (input.isClosed())
+                        return;
+                    LockSupport.parkNanos(this, 1000000L);
+                    continue;
+                }
+            }
+            if (!input.take(frame)) {
+                freeFrames.offer(frame);
+                return;
+            }
+            frame.duplicate = false;
+            convert(frame);
+            frame = null;
+        }
+    }
+
+    private void convert(Frame frame) {
+        if (metrics != null)
+            metrics.record(FrameMetrics.RECEIVE, System.nanoTime() - frame.timestampNanos);
+        boolean converted = false;
+        try {
+            converter.process(frame);
+            converted = true;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            // Исходные данные больше не нужны: буфер можно отдавать камере до вывода кадра.
+            frame.recycleData(false);
+            if (converted && frame.duplicate) {
+                duplicateFrames.incrementAndGet();
+                freeFrames.offer(frame);
+            } else if (converted) {
+                convertedFrames.incrementAndGet();
+                consumeStage.offer(frame);
+            } else {
+                freeFrames.offer(frame);
+            }
+        }
+    }
+
+    private void consume(Frame frame) {
+        try {
+            consumer.process(frame);
+        } finally {
+            freeFrames.offer(frame);
+        }
+    }
+
+    public FrameMetrics getMetrics() {
+        return metrics;
+    }
+
+    public FrameRing getInput() {
+        return input;
+    }
+
+    public long getConvertedFrames() {
+        return convertedFrames.get();
+    }
+
+    // Повторы, не отданные выводу.
+    public long getDuplicateFrames() {
+        return duplicateFrames.get();
+    }
+
+    public FrameStage<Frame> getConsumeStage() {
+        return consumeStage;
+    }
+
+    public long getSubmittedFrames() {
+        return submittedFrames.get();
+    }
+
+    // Все кадры, не дошедшие до вывода.
+    public long getDroppedFrames() {
+        return input.getDroppedFrames() + consumeStage.getDroppedFrames();
+    }
+
+    public int getQueueDepth() {
+        return input.size() + consumeStage.getQueueDepth();
+    }
+
+    // Сколько входных буферов конвейер может держать одновременно: кольцо и кадр в переводе.
+    // Ступени вывода буфер уже не нужен.
+    public int getMaxRetainedInputs() {
+        return input.getCapacity() + 1;
+    }
+}
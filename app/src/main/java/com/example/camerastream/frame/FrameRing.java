@@ -0,0 +1,191 @@
+package com.example.camerastream.frame;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Кольцевой буфер кадров без блокировок для одного писателя (поток камеры) и одного
+// читателя. Ячейки выделяются заранее и хранят ссылку на данные кадра, владельца буфера,
+// параметры потока и время получения; номер кадра равен его позиции в кольце, поэтому
+// пропуски в номерах показывают вытесненные кадры. На кадр ничего не выделяется.
+// При заполнении кольца писатель либо вытесняет самый старый кадр (OVERWRITE_OLDEST) и
+// возвращает его буфер владельцу как пропущенный, либо ждёт, пока читатель освободит место (BLOCK).
+public class FrameRing {
+    public static final int OVERWRITE_OLDEST = 0;
+    public static final int BLOCK = 1;
+
+    private final int policy;
+    private final int capacity;
+    private final int mask;
+    private final byte[][] payloads;
+    private final BufferRecycler[] pools;
+    private final StreamConfig[] configs;
+    private final long[] timestamps;
+
+    // head — позиция следующего кадра для чтения, tail — для записи. head сдвигает читатель,
+    // а при вытеснении и писатель, поэтому только через compareAndSet.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    private volatile Thread waitingProducer;
+    private volatile Thread waitingConsumer;
+    private volatile boolean closed;
+
+    // Ёмкость округляется вверх до степени двойки.
+    public FrameRing(int capacity, int policy) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Неверная ёмкость кольца: " + capacity);
+        if (policy != OVERWRITE_OLDEST && policy != BLOCK)
+            throw new IllegalArgumentException("Неизвестный режим кольца: " + policy);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.policy = policy;
+        this.capacity = size;
+        this.mask = size - 1;
+        payloads = new byte[size][];
+        pools = new BufferRecycler[size];
+        configs = new StreamConfig[size];
+        timestamps = new long[size];
+    }
+
+    // Вызывается только писателем. Возвращает false, если кадр не принят (кольцо закрыто)
+    // или ради него вытеснен более старый.
+    public boolean offer(byte[] data, BufferRecycler bufferPool, StreamConfig config, long timestampNanos) {
+        boolean accepted = true;
+        long position = tail.get();
+        while (position - head.get() >= capacity) {
+            if (closed) {
+                drop(data, bufferPool);
+                return false;
+            }
+            if (policy == OVERWRITE_OLDEST) {
+                // Сначала забираем ячейку у читателя, потом пишем в неё: если читатель уже
+                // прочитал её поля, его compareAndSet не пройдёт и прочитанное он отбросит.
+                long oldest = position - capacity;
+                if (head.compareAndSet(oldest, oldest + 1)) {
+                    int index = (int) oldest & mask;
+                    drop(payloads[index], pools[index]);
+                    accepted = false;
+                }
+            } else {
+                waitingProducer = Thread.currentThread();
+                if (position - head.get() >= capacity && !closed)
+                    LockSupport.park(this);
+                waitingProducer = null;
+            }
+        }
+        if (closed) {
+            drop(data, bufferPool);
+            return false;
+        }
+
+        int index = (int) position & mask;
+        payloads[index] = data;
+        pools[index] = bufferPool;
+        configs[index] = config;
+        timestamps[index] = timestampNanos;
+        tail.set(position + 1);
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+        return accepted;
+    }
+
+    // Вызывается только читателем: переносит самый старый кадр в frame.
+    // false — кольцо пусто. Пиксели и прочие поля frame не трогаются.
+    public boolean poll(Frame frame) {
+        while (true) {
+            long position = head.get();
+            if (position >= tail.get())
+                return false;
+            int index = (int) position & mask;
+            byte[] data = payloads[index];
+            BufferRecycler bufferPool = pools[index];
+            StreamConfig config = configs[index];
+            long timestampNanos = timestamps[index];
+            // Ячейку читатель не очищает: после сдвига head в неё уже может писать писатель.
+            if (head.compareAndSet(position, position + 1)) {
+                frame.data = data;
+                frame.bufferPool = bufferPool;
+                frame.config = config;
+                frame.timestampNanos = timestampNanos;
+                frame.sequence = position;
+
+                Thread producer = waitingProducer;
+                if (producer != null)
+                    LockSupport.unpark(producer);
+                return true;
+            }
+        }
+    }
+
+    // Как poll, но ждёт кадра. false — кольцо закрыто.
+    public boolean take(Frame frame) {
+        while (!poll(frame)) {
+            if (closed)
+                return false;
+            waitingConsumer = Thread.currentThread();
+            if (head.get() >= tail.get() && !closed)
+                LockSupport.park(this);
+            waitingConsumer = null;
+        }
+        return true;
+    }
+
+    // Будит ждущие потоки; новые кадры после этого не принимаются.
+    public void close() {
+        closed = true;
+        Thread thread = waitingProducer;
+        if (thread != null)
+            LockSupport.unpark(thread);
+        thread = waitingConsumer;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    // Возвращает владельцам буферы непрочитанных кадров. Вызывается, когда читатель уже остановлен.
+    public void clear() {
+        while (true) {
+            long position = head.get();
+            if (position >= tail.get())
+                return;
+            int index = (int) position & mask;
+            if (head.compareAndSet(position, position + 1))
+                drop(payloads[index], pools[index]);
+        }
+    }
+
+    private void drop(byte[] data, BufferRecycler bufferPool) {
+        droppedFrames.incrementAndGet();
+        if (data != null && bufferPool != null)
+            bufferPool.drop(data);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getPolicy() {
+        return policy;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    // Сколько кадров записано в кольцо за всё время.
+    public long getOfferedFrames() {
+        return tail.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+}
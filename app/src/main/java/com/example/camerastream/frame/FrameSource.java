@@ -0,0 +1,18 @@
+package com.example.camerastream.frame;
+
+// Источник кадров: камера или воспроизведение записи. Кадр передаётся слушателю вместе
+// с владельцем буфера, которому буфер нужно вернуть после обработки, поэтому обработка
+// не зависит от того, откуда пришли кадры.
+public interface FrameSource {
+    interface Listener {
+        // Вызывается в потоке источника и не должен блокироваться надолго: пока он не вернулся,
+        // источник не отдаёт следующий кадр.
+        void onFrame(byte[] data, StreamConfig config, BufferRecycler bufferPool, long timestampNanos);
+    }
+
+    void setListener(Listener listener);
+
+    void start();
+
+    void stop();
+}
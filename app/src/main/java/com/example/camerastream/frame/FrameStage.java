@@ -0,0 +1,153 @@
+package com.example.camerastream.frame;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+// Ступень конвейера со своим рабочим потоком. Кадры передаются либо через одну ячейку
+// («побеждает последний кадр»: непрочитанный кадр вытесняется новым), либо через ограниченную
+// очередь, из которой при переполнении вытесняется самый старый кадр. Вызывающий поток
+// никогда не ждёт рабочий.
+public class FrameStage<T> {
+    public interface Handler<T> {
+        void handle(T frame);
+    }
+
+    // Ёмкость для режима одной ячейки.
+    public static final int LATEST_FRAME = 0;
+
+    private final String name;
+    private final Handler<T> handler;
+    private final Handler<T> dropHandler;
+    private final AtomicReference<T> slot = new AtomicReference<T>();
+    private final ArrayBlockingQueue<T> queue;
+
+    private final AtomicLong offeredFrames = new AtomicLong();
+    private final AtomicLong processedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private volatile int maxQueueDepth;
+
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    // dropHandler получает вытесненные кадры, чтобы вернуть их ресурсы.
+    public FrameStage(String name, int queueCapacity, Handler<T> handler, Handler<T> dropHandler) {
+        this.name = name;
+        this.handler = handler;
+        this.dropHandler = dropHandler;
+        this.queue = queueCapacity > LATEST_FRAME ? new ArrayBlockingQueue<T>(queueCapacity) : null;
+    }
+
+    public synchronized void start() {
+        if (worker != null)
+            return;
+        running = true;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, name);
+        worker.start();
+    }
+
+    // Останавливает рабочий поток; кадры, оставшиеся в очереди, отдаются dropHandler.
+    public synchronized void stop() {
+        Thread thread = worker;
+        if (thread == null)
+            return;
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+
+        T frame;
+        while ((frame = poll()) != null)
+            drop(frame);
+    }
+
+    // Передаёт кадр рабочему потоку. Возвращает false, если ради него пришлось вытеснить кадр.
+    public boolean offer(T frame) {
+        offeredFrames.incrementAndGet();
+        boolean accepted = true;
+        if (queue == null) {
+            T previous = slot.getAndSet(frame);
+            if (previous != null) {
+                drop(previous);
+                accepted = false;
+            }
+        } else {
+            while (!queue.offer(frame)) {
+                T oldest = queue.poll();
+                if (oldest != null) {
+                    drop(oldest);
+                    accepted = false;
+                }
+            }
+        }
+        int depth = getQueueDepth();
+        if (depth > maxQueueDepth)
+            maxQueueDepth = depth;
+
+        Thread thread = worker;
+        if (thread != null)
+            LockSupport.unpark(thread);
+        return accepted;
+    }
+
+    private T poll() {
+        return queue == null ? slot.getAndSet(null) : queue.poll();
+    }
+
+    private void drop(T frame) {
+        droppedFrames.incrementAndGet();
+        dropHandler.handle(frame);
+    }
+
+    private void loop() {
+        while (running) {
+            T frame = poll();
+            if (frame == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                handler.handle(frame);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            processedFrames.incrementAndGet();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        if (queue == null)
+            return slot.get() == null ? 0 : 1;
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getOfferedFrames() {
+        return offeredFrames.get();
+    }
+
+    public long getProcessedFrames() {
+        return processedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+}
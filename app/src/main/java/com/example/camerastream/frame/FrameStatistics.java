@@ -0,0 +1,144 @@
+package com.example.camerastream.frame;
+
+// Статистика яркости кадра за один проход по прореженной плоскости Y: гистограмма на 256
+// уровней, средняя, доли засвеченных и провалившихся в чёрное точек и резкость — средняя
+// энергия градиента (квадраты разностей с соседями справа и снизу). Резкость зависит от
+// сцены, поэтому сравнивать её имеет смысл между кадрами одной сцены, например чтобы выбрать
+// самый резкий снимок. Все массивы выделяются заранее, подсчёт память не выделяет.
+public class FrameStatistics {
+    // Уровни, начиная с которых точка считается провалившейся в чёрное или засвеченной.
+    public static final int DARK_LEVEL = 5;
+    public static final int BRIGHT_LEVEL = 250;
+    // Кадр недодержан или передержан, если средняя за пределами или много точек обрезано.
+    private static final int UNDEREXPOSED_MEAN = 40;
+    private static final int OVEREXPOSED_MEAN = 215;
+    private static final float CLIPPED_RATIO = 0.1f;
+
+    private final int step;
+    private final int[] histogram = new int[256];
+    private int sampleCount;
+    private float mean;
+    private float darkRatio;
+    private float brightRatio;
+    private float sharpness;
+
+    // step — шаг прореживания по обеим осям: на каждую точку выборки приходится step * step точек кадра.
+    public FrameStatistics(int step) {
+        if (step <= 0)
+            throw new IllegalArgumentException("Неверный шаг выборки: " + step);
+        this.step = step;
+    }
+
+    // Считает статистику кадра NV21, NV16 или YUY2.
+    public void compute(byte[] data, int format, int width, int height) {
+        if (!YuvConverter.isSupported(format))
+            throw new IllegalArgumentException("Неподдерживаемый формат кадра: " + format);
+        int[] histogram = this.histogram;
+        for (int i = 0; i < 256; i++)
+            histogram[i] = 0;
+        // У YUY2 яркость — каждый второй байт строки.
+        int pixelStep = format == YuvConverter.YUY2 ? 2 : 1;
+        int stride = width * pixelStep;
+        int columnStep = step * pixelStep;
+        long sum = 0;
+        long gradient = 0;
+        int count = 0;
+        // Последние строка и столбец не берутся: у них нет соседа снизу или справа.
+        for (int row = 0; row < height - 1; row += step) {
+            int index = row * stride;
+            int end = index + (width - 1) * pixelStep;
+            int rowGradient = 0;
+            for (; index < end; index += columnStep) {
+                int value = data[index] & 0xff;
+                int dx = (data[index + pixelStep] & 0xff) - value;
+                int dy = (data[index + stride] & 0xff) - value;
+                histogram[value]++;
+                sum += value;
+                rowGradient += dx * dx + dy * dy;
+                count++;
+            }
+            gradient += rowGradient;
+        }
+        if (count == 0) {
+            clear();
+            return;
+        }
+        sampleCount = count;
+        int dark = 0;
+        for (int i = 0; i <= DARK_LEVEL; i++)
+            dark += histogram[i];
+        int bright = 0;
+        for (int i = BRIGHT_LEVEL; i < 256; i++)
+            bright += histogram[i];
+        mean = (float) sum / count;
+        darkRatio = (float) dark / count;
+        brightRatio = (float) bright / count;
+        sharpness = (float) gradient / count;
+    }
+
+    // Статистики нет: кадр не посчитан или слишком мал.
+    public void clear() {
+        for (int i = 0; i < 256; i++)
+            histogram[i] = 0;
+        sampleCount = 0;
+        mean = 0;
+        darkRatio = 0;
+        brightRatio = 0;
+        sharpness = 0;
+    }
+
+    public void copyFrom(FrameStatistics other) {
+        System.arraycopy(other.histogram, 0, histogram, 0, histogram.length);
+        sampleCount = other.sampleCount;
+        mean = other.mean;
+        darkRatio = other.darkRatio;
+        brightRatio = other.brightRatio;
+        sharpness = other.sharpness;
+    }
+
+    // Число точек выборки каждого уровня яркости. Массив общий, изменять его нельзя.
+    public int[] getHistogram() {
+        return histogram;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public float getMean() {
+        return mean;
+    }
+
+    // Доля точек не ярче DARK_LEVEL.
+    public float getDarkRatio() {
+        return darkRatio;
+    }
+
+    // Доля точек не темнее BRIGHT_LEVEL.
+    public float getBrightRatio() {
+        return brightRatio;
+    }
+
+    public float getSharpness() {
+        return sharpness;
+    }
+
+    public boolean isUnderexposed() {
+        return sampleCount > 0 && (mean < UNDEREXPOSED_MEAN || darkRatio > CLIPPED_RATIO);
+    }
+
+    public boolean isOverexposed() {
+        return sampleCount > 0 && (mean > OVEREXPOSED_MEAN || brightRatio > CLIPPED_RATIO);
+    }
+
+    public void appendSummary(StringBuilder out) {
+        out.append("яркость ").append(Math.round(mean))
+                .append(", чёрное ").append(Math.round(darkRatio * 100))
+                .append("%, засветка ").append(Math.round(brightRatio * 100))
+                .append("%, резкость ").append(Math.round(sharpness));
+        if (isUnderexposed())
+            out.append(", темно");
+        else if (isOverexposed())
+            out.append(", пересвет");
+    }
+}
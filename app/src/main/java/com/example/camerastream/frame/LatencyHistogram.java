@@ -0,0 +1,82 @@
+package com.example.camerastream.frame;
+
+// Гистограмма задержек с фиксированным объёмом памяти. Значения хранятся в микросекундах
+// в логарифмических корзинах по 16 на каждую степень двойки (погрешность не больше 1/16),
+// верхняя граница — около 67 секунд. Запись не выделяет память.
+// Рассчитана на один пишущий поток; читать можно из любого, получая почти согласованный срез.
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MICROS = (1 << 26) - 1;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_MICROS) + 1;
+
+    private final int[] counts = new int[BUCKET_COUNT];
+    private int totalCount;
+    private int maxMicros;
+    private long sumMicros;
+
+    public void recordNanos(long nanos) {
+        long micros = nanos / 1000;
+        int value = micros < 0 ? 0 : (micros > MAX_MICROS ? MAX_MICROS : (int) micros);
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sumMicros += value;
+        if (value > maxMicros)
+            maxMicros = value;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = 0;
+        totalCount = 0;
+        maxMicros = 0;
+        sumMicros = 0;
+    }
+
+    public int getCount() {
+        return totalCount;
+    }
+
+    public int getMaxMicros() {
+        return maxMicros;
+    }
+
+    public int getMeanMicros() {
+        int count = totalCount;
+        return count == 0 ? 0 : (int) (sumMicros / count);
+    }
+
+    // Верхняя граница корзины, в которую попадает заданная доля значений (0..100).
+    public int getPercentileMicros(double percentile) {
+        int count = totalCount;
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        if (rank < 1)
+            rank = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(bucketUpperBound(i), maxMicros);
+        }
+        return maxMicros;
+    }
+
+    // Значения меньше 2 * SUB_BUCKETS лежат в корзинах по одному, дальше — по SUB_BUCKETS
+    // корзин на каждую степень двойки.
+    private static int bucketIndex(int micros) {
+        if (micros < 2 * SUB_BUCKETS)
+            return micros;
+        int shift = 31 - Integer.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (micros >> shift) - SUB_BUCKETS;
+    }
+
+    private static int bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.camerastream.frame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Перевод кадра из YUV в ARGB на нескольких ядрах: кадр делится на горизонтальные полосы
+// исходных строк, каждую полосу переводит свой поток через YuvConverter.convertRows, поэтому
+// результат совпадает с однопоточным до бита. Одну полосу переводит сам вызывающий поток.
+// ForkJoinPool появился в Android только в API 21, поэтому используется постоянный набор
+// потоков, которые ждут очередной кадр; на кадр ничего не выделяется.
+// Маленькие кадры переводятся в вызывающем потоке: будить потоки ради них дороже самой работы.
+// Полосы разбираются через общий счётчик: то, что не взяли потоки, доделывает вызывающий,
+// поэтому кадр переводится до конца, даже если потоки остановились посреди convert.
+public class ParallelYuvConverter {
+    // Кадры меньше этого числа пикселей (VGA) переводятся в один поток.
+    public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 640 * 480;
+
+    private final Thread[] workers;
+    private final int bandCount;
+    private final int sequentialThreshold;
+    // Номер следующей свободной полосы; после кадра он не меньше bandCount.
+    private final AtomicInteger nextBand = new AtomicInteger();
+    // Сколько полос кадра ещё не переведено.
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile boolean running = true;
+    private volatile int generation;
+    private volatile Thread caller;
+    private volatile RuntimeException failure;
+
+    // Параметры текущего кадра; видны потокам после записи generation.
+    private byte[] data;
+    private int format;
+    private int width;
+    private int height;
+    private int rotation;
+    private boolean mirror;
+    private int[] out;
+    private int bandRows;
+
+    // threadCount — общее число потоков вместе с вызывающим.
+    public ParallelYuvConverter(int threadCount, int sequentialThreshold) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Неверное число потоков: " + threadCount);
+        this.sequentialThreshold = sequentialThreshold;
+        bandCount = threadCount;
+        nextBand.set(bandCount);
+        workers = new Thread[threadCount - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    workerLoop();
+                }
+            }, "ParallelYuvConverter-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getThreadCount() {
+        return workers.length + 1;
+    }
+
+    public synchronized void convert(byte[] data, int format, int width, int height,
+                                     int rotation, boolean mirror, int[] out) {
+        if (workers.length == 0 || !running || width * height < sequentialThreshold) {
+            YuvConverter.convert(data, format, width, height, rotation, mirror, out);
+            return;
+        }
+
+        this.data = data;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.rotation = rotation;
+        this.mirror = mirror;
+        this.out = out;
+        // Полосы начинаются с чётной строки, чтобы у NV21 пара строк с общей цветностью
+        // не делилась между потоками.
+        bandRows = ((height + bandCount - 1) / bandCount + 1) & ~1;
+        failure = null;
+        pending.set(bandCount);
+        caller = Thread.currentThread();
+        // Полоса 0 — вызывающего потока, остальные разбираются с первой.
+        nextBand.set(1);
+        generation++;
+        for (Thread worker : workers)
+            LockSupport.unpark(worker);
+
+        convertClaimed(0);
+        int band;
+        while ((band = nextBand.getAndIncrement()) < bandCount)
+            convertClaimed(band);
+        while (pending.get() > 0)
+            LockSupport.park(this);
+
+        this.data = null;
+        this.out = null;
+        RuntimeException error = failure;
+        if (error != null)
+            throw error;
+    }
+
+    // Останавливает потоки; после этого кадры переводятся в вызывающем потоке.
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers)
+            LockSupport.unpark(worker);
+    }
+
+    private void convertBand(int band) {
+        int rowStart = Math.min(band * bandRows, height);
+        int rowEnd = Math.min(rowStart + bandRows, height);
+        if (rowStart < rowEnd)
+            YuvConverter.convertRows(data, format, width, height, rotation, mirror, out, rowStart, rowEnd);
+    }
+
+    // Переводит взятую полосу; ошибка передаётся вызывающему потоку.
+    private void convertClaimed(int band) {
+        try {
+            convertBand(band);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            if (pending.decrementAndGet() == 0)
+                LockSupport.unpark(caller);
+        }
+    }
+
+    private void workerLoop() {
+        int seen = 0;
+        while (true) {
+            int current = generation;
+            if (current == seen) {
+                // Полосы, которые поток не успел взять до остановки, доделает вызывающий.
+                if (!running)
+                    return;
+                LockSupport.park(this);
+                continue;
+            }
+            seen = current;
+            int band;
+            while ((band = nextBand.getAndIncrement()) < bandCount)
+                convertClaimed(band);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.camerastream.frame;
+
+// Размер кадра предпросмотра без зависимости от android.hardware.Camera.Size.
+public final class PreviewSize {
+    public final int width;
+    public final int height;
+
+    public PreviewSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof PreviewSize))
+            return false;
+        PreviewSize size = (PreviewSize) o;
+        return width == size.width && height == size.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * width + height;
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height;
+    }
+}
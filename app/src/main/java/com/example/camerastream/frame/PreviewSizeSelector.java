@@ -0,0 +1,212 @@
+package com.example.camerastream.frame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Выбор размера предпросмотра из поддерживаемых камерой. Размеры упорядочиваются по отличию
+// соотношения сторон от поверхности и по стоимости кадра для конвейера: из подходящих по
+// пропорциям берётся самый дешёвый, который не меньше поверхности, а если такого нет —
+// самый крупный. Размеры сверх ограничений (число точек, точки в секунду при заданной
+// частоте) не рассматриваются. Выбор запоминается для камеры, размера поверхности и поворота,
+// поэтому повторная настройка ничего не пересчитывает.
+public final class PreviewSizeSelector {
+    private static final double ASPECT_TOLERANCE = 0.1;
+    private static final int CACHE_SIZE = 32;
+
+    private static final class Key {
+        final int cameraId;
+        final int width;
+        final int height;
+        final int rotation;
+
+        Key(int cameraId, int width, int height, int rotation) {
+            this.cameraId = cameraId;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return cameraId == key.cameraId && width == key.width && height == key.height
+                    && rotation == key.rotation;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((cameraId * 31 + width) * 31 + height) * 31 + rotation;
+        }
+    }
+
+    // Размер вместе с его оценкой для одной поверхности.
+    private static final class Candidate {
+        final PreviewSize size;
+        final boolean aspectMatches;
+        final double aspectError;
+        final boolean covers;
+        final long cost;
+
+        Candidate(PreviewSize size, boolean aspectMatches, double aspectError, boolean covers, long cost) {
+            this.size = size;
+            this.aspectMatches = aspectMatches;
+            this.aspectError = aspectError;
+            this.covers = covers;
+            this.cost = cost;
+        }
+    }
+
+    private static final Comparator<Candidate> RANKING = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            if (a.aspectMatches != b.aspectMatches)
+                return a.aspectMatches ? -1 : 1;
+            // Пропорции в пределах допуска считаются одинаковыми.
+            if (!a.aspectMatches && a.aspectError != b.aspectError)
+                return a.aspectError < b.aspectError ? -1 : 1;
+            if (a.covers != b.covers)
+                return a.covers ? -1 : 1;
+            if (a.cost == b.cost)
+                return 0;
+            // Из покрывающих поверхность — самый дешёвый, из остальных — самый крупный.
+            return (a.cost < b.cost) == a.covers ? -1 : 1;
+        }
+    };
+
+    private final int bitsPerPixel;
+    private int maxPixels = Integer.MAX_VALUE;
+    private long maxPixelsPerSecond = Long.MAX_VALUE;
+    private int targetFps;
+
+    private final Map<Integer, List<PreviewSize>> supportedSizes = new HashMap<Integer, List<PreviewSize>>();
+    private final LinkedHashMap<Key, PreviewSize> cache = new LinkedHashMap<Key, PreviewSize>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, PreviewSize> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private long cacheHits;
+    private long cacheMisses;
+
+    // bitsPerPixel — глубина формата предпросмотра (ImageFormat.getBitsPerPixel), по ней
+    // оценивается объём кадра.
+    public PreviewSizeSelector(int bitsPerPixel) {
+        if (bitsPerPixel <= 0)
+            throw new IllegalArgumentException("Неизвестная глубина цвета: " + bitsPerPixel);
+        this.bitsPerPixel = bitsPerPixel;
+    }
+
+    // Наибольшее число точек кадра.
+    public synchronized void setMaxPixels(int maxPixels) {
+        this.maxPixels = maxPixels > 0 ? maxPixels : Integer.MAX_VALUE;
+        cache.clear();
+    }
+
+    // Конвейер успевает обработать не больше maxPixelsPerSecond точек в секунду, а кадры
+    // нужны с частотой fps; 0 — без ограничения.
+    public synchronized void setFrameBudget(int fps, long maxPixelsPerSecond) {
+        this.targetFps = Math.max(0, fps);
+        this.maxPixelsPerSecond = maxPixelsPerSecond > 0 ? maxPixelsPerSecond : Long.MAX_VALUE;
+        cache.clear();
+    }
+
+    // Размеры, которые поддерживает камера. Если список не изменился, выбор для неё сохраняется.
+    public synchronized void setSupportedSizes(int cameraId, List<PreviewSize> sizes) {
+        List<PreviewSize> copy = sizes == null ? null : new ArrayList<PreviewSize>(sizes);
+        List<PreviewSize> previous = supportedSizes.get(cameraId);
+        if (copy == null ? previous == null : copy.equals(previous))
+            return;
+        supportedSizes.put(cameraId, copy);
+        for (Key key : new ArrayList<Key>(cache.keySet())) {
+            if (key.cameraId == cameraId)
+                cache.remove(key);
+        }
+    }
+
+    // Лучший размер для поверхности width x height или null, если размеры камеры неизвестны.
+    // rotation — поворот кадров камеры относительно экрана.
+    public synchronized PreviewSize select(int cameraId, int width, int height, int rotation) {
+        Key key = new Key(cameraId, width, height, rotation);
+        PreviewSize size = cache.get(key);
+        if (size != null) {
+            cacheHits++;
+            return size;
+        }
+        cacheMisses++;
+        List<PreviewSize> ranked = rank(supportedSizes.get(cameraId), width, height, rotation);
+        if (ranked.isEmpty())
+            return null;
+        size = ranked.get(0);
+        cache.put(key, size);
+        return size;
+    }
+
+    // Размеры от лучшего к худшему. Если ограничениям не удовлетворяет ни один размер,
+    // остаётся самый дешёвый.
+    public List<PreviewSize> rank(List<PreviewSize> sizes, int width, int height, int rotation) {
+        List<PreviewSize> result = new ArrayList<PreviewSize>();
+        if (sizes == null || sizes.isEmpty() || width <= 0 || height <= 0)
+            return result;
+        // Кадры камеры повёрнуты относительно экрана: сравниваем с поверхностью в их положении.
+        int targetWidth = width;
+        int targetHeight = height;
+        if (rotation == 90 || rotation == 270) {
+            targetWidth = height;
+            targetHeight = width;
+        }
+        double targetRatio = (double) targetWidth / targetHeight;
+
+        List<Candidate> candidates = new ArrayList<Candidate>(sizes.size());
+        PreviewSize cheapest = null;
+        for (PreviewSize size : sizes) {
+            if (size.width <= 0 || size.height <= 0)
+                continue;
+            if (cheapest == null || frameCost(size) < frameCost(cheapest))
+                cheapest = size;
+            if (!withinLimits(size))
+                continue;
+            double aspectError = Math.abs((double) size.width / size.height - targetRatio);
+            candidates.add(new Candidate(size, aspectError <= ASPECT_TOLERANCE, aspectError,
+                    size.width >= targetWidth && size.height >= targetHeight, frameCost(size)));
+        }
+        if (candidates.isEmpty()) {
+            if (cheapest != null)
+                result.add(cheapest);
+            return result;
+        }
+        Collections.sort(candidates, RANKING);
+        for (Candidate candidate : candidates)
+            result.add(candidate.size);
+        return result;
+    }
+
+    private boolean withinLimits(PreviewSize size) {
+        long pixels = (long) size.width * size.height;
+        if (pixels > maxPixels)
+            return false;
+        return targetFps <= 0 || pixels * targetFps <= maxPixelsPerSecond;
+    }
+
+    // Байт на кадр у камеры плюс ARGB после перевода: столько памяти кадр проходит по конвейеру.
+    public long frameCost(PreviewSize size) {
+        long pixels = (long) size.width * size.height;
+        return pixels * bitsPerPixel / 8 + pixels * 4;
+    }
+
+    public synchronized long getCacheHits() {
+        return cacheHits;
+    }
+
+    public synchronized long getCacheMisses() {
+        return cacheMisses;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.camerastream.frame;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Воспроизведение последовательности кадров (записи RawFrameRecorder или синтетических кадров)
+// как будто с камеры: кадры читаются в ограниченный набор буферов FrameBufferPool и отдаются
+// слушателю в собственном потоке. Последовательность повторяется по кругу, пока не будет
+// выдано frameCount кадров.
+// PACED — в темпе камеры: с частотой fps или, если fps не задана, с промежутками из записи;
+// как и камера, источник пропускает кадр, если все буферы ещё в обработке.
+// AS_FAST_AS_POSSIBLE — без пауз: источник ждёт свободный буфер, поэтому скорость
+// ограничена только обработкой.
+public class ReplayFrameSource implements FrameSource {
+    public interface Sequence {
+        int getFrameCount();
+
+        StreamConfig getConfig(int frame);
+
+        long getTimestampNanos(int frame);
+
+        // Копирует кадр в buffer и возвращает его длину.
+        int readFrame(int frame, byte[] buffer) throws IOException;
+    }
+
+    public static final int PACED = 0;
+    public static final int AS_FAST_AS_POSSIBLE = 1;
+
+    // Промежуток между кадрами, если последовательность из одного кадра.
+    private static final long DEFAULT_INTERVAL_NANOS = 33333333L;
+
+    private final Sequence sequence;
+    private final int mode;
+    private final long intervalNanos;
+    private final long frameCount;
+    private final FrameBufferPool bufferPool;
+    private final ArrayBlockingQueue<byte[]> freeBuffers;
+    private volatile Listener listener;
+
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile IOException failure;
+
+    private final AtomicLong emittedFrames = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    // fps — частота в режиме PACED, 0 — промежутки из записи. bufferCount — сколько буферов
+    // у «камеры», frameCount — сколько кадров выдать всего.
+    public ReplayFrameSource(Sequence sequence, int mode, int fps, int bufferCount, long frameCount) {
+        if (sequence.getFrameCount() == 0)
+            throw new IllegalArgumentException("Нет кадров для воспроизведения");
+        if (mode != PACED && mode != AS_FAST_AS_POSSIBLE)
+            throw new IllegalArgumentException("Неизвестный режим: " + mode);
+        this.sequence = sequence;
+        this.mode = mode;
+        this.intervalNanos = fps > 0 ? 1000000000L / fps : 0;
+        this.frameCount = frameCount;
+        int bufferSize = 0;
+        for (int i = 0; i < sequence.getFrameCount(); i++)
+            bufferSize = Math.max(bufferSize, sequence.getConfig(i).frameSize);
+        freeBuffers = new ArrayBlockingQueue<byte[]>(bufferCount);
+        bufferPool = new FrameBufferPool(bufferSize, bufferCount, new FrameBufferPool.BufferSink() {
+            @Override
+            public void addBuffer(byte[] buffer) {
+                freeBuffers.offer(buffer);
+            }
+        });
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        running = true;
+        bufferPool.start();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        }, "ReplayFrameSource");
+        thread.start();
+    }
+
+    // Останавливает воспроизведение; буферы, ещё не возвращённые обработкой, больше не нужны.
+    @Override
+    public void stop() {
+        Thread current;
+        synchronized (this) {
+            current = thread;
+            if (current == null)
+                return;
+            running = false;
+            thread = null;
+        }
+        current.interrupt();
+        try {
+            current.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        bufferPool.close();
+    }
+
+    // Ждёт, пока будут выданы все кадры. Возвращает false, если время вышло.
+    public boolean awaitCompletion(long timeoutMillis) throws InterruptedException {
+        Thread current = thread;
+        if (current == null)
+            return true;
+        current.join(timeoutMillis);
+        return !current.isAlive();
+    }
+
+    private void replay() {
+        int count = sequence.getFrameCount();
+        long due = System.nanoTime();
+        startNanos = due;
+        try {
+            for (long i = 0; i < frameCount && running; i++) {
+                int frame = (int) (i % count);
+                if (mode == PACED) {
+                    if (i > 0)
+                        due += interval(frame, count);
+                    long delay = due - System.nanoTime();
+                    while (delay > 0 && running) {
+                        LockSupport.parkNanos(this, delay);
+                        delay = due - System.nanoTime();
+                    }
+                }
+                byte[] buffer = mode == PACED ? freeBuffers.poll() : freeBuffers.take();
+                if (buffer == null) {
+                    skippedFrames.incrementAndGet();
+                    continue;
+                }
+                sequence.readFrame(frame, buffer);
+                bufferPool.onFrameReceived(buffer);
+                emittedFrames.incrementAndGet();
+                Listener target = listener;
+                if (target != null)
+                    target.onFrame(buffer, sequence.getConfig(frame), bufferPool, System.nanoTime());
+                else
+                    bufferPool.recycle(buffer);
+            }
+        } catch (InterruptedException e) {
+            // Остановлено через stop().
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            endNanos = System.nanoTime();
+        }
+    }
+
+    // Промежуток перед кадром frame в режиме PACED.
+    private long interval(int frame, int count) {
+        if (intervalNanos > 0)
+            return intervalNanos;
+        if (frame > 0)
+            return Math.max(0, sequence.getTimestampNanos(frame) - sequence.getTimestampNanos(frame - 1));
+        // Переход от последнего кадра к первому — средний промежуток записи.
+        if (count < 2)
+            return DEFAULT_INTERVAL_NANOS;
+        return Math.max(0, (sequence.getTimestampNanos(count - 1) - sequence.getTimestampNanos(0)) / (count - 1));
+    }
+
+    public boolean isRunning() {
+        Thread current = thread;
+        return current != null && current.isAlive();
+    }
+
+    public IOException getFailure() {
+        return failure;
+    }
+
+    public FrameBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public long getEmittedFrames() {
+        return emittedFrames.get();
+    }
+
+    // Пропущены, потому что все буферы были в обработке (только в режиме PACED).
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    // Время от первого кадра до окончания воспроизведения или до текущего момента.
+    public long getElapsedNanos() {
+        long end = isRunning() ? System.nanoTime() : endNanos;
+        return Math.max(0, end - startNanos);
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.camerastream.frame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Кадр шины FrameBus, который одновременно читают несколько подписчиков. Данные не копируются:
+// все подписчики видят один буфер камеры и не должны его изменять. Каждый, кто держит кадр,
+// держит ссылку на него; когда отпущена последняя, буфер возвращается пулу камеры, а сам
+// объект — шине для следующего кадра. После release() поля кадра читать нельзя.
+public class SharedFrame implements BufferRecycler {
+    public byte[] data;
+    public StreamConfig config;
+    public long timestampNanos;
+    public long sequence;
+
+    private final FrameBus bus;
+    private BufferRecycler bufferPool;
+    private final AtomicInteger references = new AtomicInteger();
+    // Обработал ли кадр хоть один подписчик; иначе буфер возвращается пулу как пропущенный.
+    private volatile boolean processed;
+
+    SharedFrame(FrameBus bus) {
+        this.bus = bus;
+    }
+
+    void reset(byte[] data, StreamConfig config, BufferRecycler bufferPool, long timestampNanos, long sequence) {
+        this.data = data;
+        this.config = config;
+        this.bufferPool = bufferPool;
+        this.timestampNanos = timestampNanos;
+        this.sequence = sequence;
+        processed = false;
+        references.set(1);
+    }
+
+    // Ещё одна ссылка: подписчик оставляет кадр себе после возврата из onFrame
+    // или передаёт его дальше, например в FramePipeline.
+    public void retain() {
+        if (references.incrementAndGet() <= 1)
+            throw new IllegalStateException("Кадр " + sequence + " уже освобождён");
+    }
+
+    // Кадр обработан, ссылка больше не нужна.
+    public void release() {
+        processed = true;
+        releaseReference();
+    }
+
+    void markProcessed() {
+        processed = true;
+    }
+
+    // Ссылка отпускается без обработки кадра.
+    void releaseDropped() {
+        releaseReference();
+    }
+
+    private void releaseReference() {
+        int left = references.decrementAndGet();
+        if (left > 0)
+            return;
+        if (left < 0)
+            throw new IllegalStateException("Кадр " + sequence + " освобождён лишний раз");
+        byte[] buffer = data;
+        BufferRecycler pool = bufferPool;
+        boolean wasProcessed = processed;
+        data = null;
+        config = null;
+        bufferPool = null;
+        if (buffer != null && pool != null) {
+            if (wasProcessed)
+                pool.recycle(buffer);
+            else
+                pool.drop(buffer);
+        }
+        bus.recycleFrame(this);
+    }
+
+    public int getReferenceCount() {
+        return references.get();
+    }
+
+    // Кадр шины можно отдать туда, где ждут владельца буфера: его буфер освобождается
+    // вместе со ссылкой.
+    @Override
+    public void recycle(byte[] buffer) {
+        release();
+    }
+
+    @Override
+    public void drop(byte[] buffer) {
+        releaseDropped();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.camerastream.frame;
+
+// Неизменяемые параметры потока кадров от камеры. Снимаются один раз при настройке камеры
+// и заменяются целиком при перенастройке, поэтому обработка кадров не обращается к
+// Camera.getParameters() и не может увидеть формат от одной настройки, а размер от другой.
+public final class StreamConfig {
+    public final int format;
+    public final int width;
+    public final int height;
+    // Длина строки Y-плоскости в байтах; у кадров предпросмотра NV21/NV16/YUY2 выравнивания нет.
+    public final int stride;
+    public final int bitsPerPixel;
+    public final int frameSize;
+    // Поворот по часовой стрелке до ориентации экрана и отражение для фронтальной камеры.
+    public final int rotation;
+    public final boolean mirror;
+
+    public StreamConfig(int format, int width, int height, int bitsPerPixel, int rotation, boolean mirror) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.stride = format == YuvConverter.YUY2 ? width * 2 : width;
+        this.bitsPerPixel = bitsPerPixel;
+        this.frameSize = FrameBufferPool.frameSize(width, height, bitsPerPixel);
+        this.rotation = rotation;
+        this.mirror = mirror;
+    }
+
+    // Размеры кадра после поворота в ориентацию экрана.
+    public int getDisplayWidth() {
+        return YuvConverter.outputWidth(width, height, rotation);
+    }
+
+    public int getDisplayHeight() {
+        return YuvConverter.outputHeight(width, height, rotation);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof StreamConfig))
+            return false;
+        StreamConfig config = (StreamConfig) o;
+        return format == config.format && width == config.width && height == config.height
+                && bitsPerPixel == config.bitsPerPixel && rotation == config.rotation && mirror == config.mirror;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = format;
+        result = 31 * result + width;
+        result = 31 * result + height;
+        result = 31 * result + bitsPerPixel;
+        result = 31 * result + rotation;
+        return 31 * result + (mirror ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "StreamConfig{format=" + format + ", " + width + "x" + height + ", rotation=" + rotation
+                + (mirror ? ", mirror" : "") + "}";
+    }
+}
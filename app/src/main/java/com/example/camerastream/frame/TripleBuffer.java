@@ -0,0 +1,48 @@
+package com.example.camerastream.frame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Тройная буферизация без блокировок для одного писателя и одного читателя: писатель
+// заполняет задний буфер, читатель показывает передний, а третий буфер ждёт показа.
+// Писатель никогда не пишет в буфер, который сейчас на экране, и никогда не ждёт читателя:
+// если читатель не успел, ждущий буфер просто заменяется более свежим.
+// Класс раздаёт только номера буферов 0..2, сами буферы хранит вызывающий код.
+public class TripleBuffer {
+    public static final int BUFFER_COUNT = 3;
+
+    // Признак того, что ждущий буфер ещё не забран читателем.
+    private static final int FRESH = 4;
+    private static final int INDEX_MASK = 3;
+
+    private final AtomicInteger pending = new AtomicInteger(1);
+    // Принадлежит писателю.
+    private int back;
+    // Принадлежит читателю.
+    private int front = 2;
+
+    // Номер буфера, в который писатель пишет очередной кадр.
+    public int getBackIndex() {
+        return back;
+    }
+
+    // Отдаёт заполненный задний буфер на показ. Возвращает true, если предыдущий кадр
+    // читатель уже забрал, — тогда его нужно разбудить; иначе он заберёт и этот кадр.
+    public boolean publish() {
+        int previous = pending.getAndSet(back | FRESH);
+        back = previous & INDEX_MASK;
+        return (previous & FRESH) == 0;
+    }
+
+    // Вызывается читателем: делает ждущий кадр передним. false — нового кадра нет.
+    public boolean swap() {
+        if ((pending.get() & FRESH) == 0)
+            return false;
+        front = pending.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    // Номер буфера, который показывает читатель.
+    public int getFrontIndex() {
+        return front;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.camerastream.frame;
+
+// Перевод кадров предпросмотра из YUV в ARGB_8888 без промежуточного сжатия в JPEG.
+// Коэффициенты BT.601 посчитаны заранее в таблицы с фиксированной точкой (10 бит дробной части),
+// поэтому на пиксель приходятся только сложения, сдвиги и выборки из таблиц.
+public final class YuvConverter {
+    // Значения совпадают с константами android.graphics.ImageFormat.
+    public static final int NV16 = 0x10;
+    public static final int NV21 = 0x11;
+    public static final int YUY2 = 0x14;
+
+    private static final int SHIFT = 10;
+    private static final int CLAMP_OFFSET = 512;
+
+    private static final int[] Y_TABLE = new int[256];
+    private static final int[] RV_TABLE = new int[256];
+    private static final int[] GU_TABLE = new int[256];
+    private static final int[] GV_TABLE = new int[256];
+    private static final int[] BU_TABLE = new int[256];
+    private static final int[] CLAMP = new int[CLAMP_OFFSET * 3];
+
+    static {
+        int one = 1 << SHIFT;
+        for (int i = 0; i < 256; i++) {
+            Y_TABLE[i] = Math.round(1.164f * one * (i - 16));
+            RV_TABLE[i] = Math.round(1.596f * one * (i - 128));
+            GU_TABLE[i] = Math.round(-0.391f * one * (i - 128));
+            GV_TABLE[i] = Math.round(-0.813f * one * (i - 128));
+            BU_TABLE[i] = Math.round(2.018f * one * (i - 128));
+        }
+        for (int i = 0; i < CLAMP.length; i++) {
+            int value = i - CLAMP_OFFSET;
+            CLAMP[i] = value < 0 ? 0 : (value > 255 ? 255 : value);
+        }
+    }
+
+    private YuvConverter() {
+    }
+
+    public static boolean isSupported(int format) {
+        return format == NV21 || format == NV16 || format == YUY2;
+    }
+
+    // Размеры кадра после поворота на rotation градусов по часовой стрелке.
+    public static int outputWidth(int width, int height, int rotation) {
+        return rotation == 90 || rotation == 270 ? height : width;
+    }
+
+    public static int outputHeight(int width, int height, int rotation) {
+        return rotation == 90 || rotation == 270 ? width : height;
+    }
+
+    // Переводит кадр в массив out размером не меньше width * height.
+    public static void convert(byte[] data, int format, int width, int height, int[] out) {
+        convert(data, format, width, height, 0, false, out);
+    }
+
+    // То же, но сразу в ориентации экрана: кадр отражается по горизонтали (mirror, фронтальная камера)
+    // и поворачивается на rotation градусов по часовой стрелке, как это делает
+    // Camera.setDisplayOrientation. Поворот не требует отдельного прохода по кадру:
+    // меняется только порядок записи пикселей в out.
+    public static void convert(byte[] data, int format, int width, int height,
+                               int rotation, boolean mirror, int[] out) {
+        convertRows(data, format, width, height, rotation, mirror, out, 0, height);
+    }
+
+    // Переводит только строки исходного кадра [rowStart, rowEnd). Строки независимы друг от друга,
+    // поэтому разные полосы кадра можно переводить в разных потоках в один и тот же out.
+    public static void convertRows(byte[] data, int format, int width, int height,
+                                   int rotation, boolean mirror, int[] out, int rowStart, int rowEnd) {
+        if (out.length < width * height)
+            throw new IllegalArgumentException("Буфер меньше кадра " + width + "x" + height);
+        if (rotation != 0 && rotation != 90 && rotation != 180 && rotation != 270)
+            throw new IllegalArgumentException("Неподдерживаемый угол поворота: " + rotation);
+        if (rowStart < 0 || rowEnd > height || rowStart > rowEnd)
+            throw new IllegalArgumentException("Строки " + rowStart + ".." + rowEnd + " вне кадра высотой " + height);
+
+        switch (format) {
+            case NV21:
+                convertSemiPlanar(data, width, height, 1, 1, 0, rotation, mirror, out, rowStart, rowEnd);
+                break;
+            case NV16:
+                convertSemiPlanar(data, width, height, 0, 0, 1, rotation, mirror, out, rowStart, rowEnd);
+                break;
+            case YUY2:
+                convertYuy2(data, width, height, rotation, mirror, out, rowStart, rowEnd);
+                break;
+            default:
+                throw new IllegalArgumentException("Неподдерживаемый формат кадра: " + format);
+        }
+    }
+
+    // Шаг в out при переходе к следующему пикселю исходной строки.
+    private static int columnStep(int height, int rotation, boolean mirror) {
+        int step;
+        switch (rotation) {
+            case 90:
+                step = height;
+                break;
+            case 180:
+                step = -1;
+                break;
+            case 270:
+                step = -height;
+                break;
+            default:
+                step = 1;
+        }
+        return mirror ? -step : step;
+    }
+
+    // Позиция в out первого пикселя исходной строки row.
+    private static int rowStart(int width, int height, int row, int rotation, boolean mirror) {
+        int start;
+        switch (rotation) {
+            case 90:
+                start = height - 1 - row;
+                break;
+            case 180:
+                start = (height - 1 - row) * width + width - 1;
+                break;
+            case 270:
+                start = (width - 1) * height + row;
+                break;
+            default:
+                start = row * width;
+        }
+        // При отражении первый пиксель строки попадает туда, куда без отражения попал бы последний.
+        return mirror ? start + (width - 1) * columnStep(height, rotation, false) : start;
+    }
+
+    // Y-плоскость, за ней чередующиеся байты цветности: NV21 — VU на каждую пару строк,
+    // NV16 — UV на каждую строку.
+    private static void convertSemiPlanar(byte[] data, int width, int height, int chromaShift,
+                                          int uOffset, int vOffset, int rotation, boolean mirror,
+                                          int[] out, int rowStart, int rowEnd) {
+        int frameSize = width * height;
+        int step = columnStep(height, rotation, mirror);
+        for (int row = rowStart; row < rowEnd; row++) {
+            int yIndex = row * width;
+            int uvIndex = frameSize + (row >> chromaShift) * width;
+            int outIndex = rowStart(width, height, row, rotation, mirror);
+            for (int col = 0; col < width; col += 2, uvIndex += 2) {
+                int u = data[uvIndex + uOffset] & 0xff;
+                int v = data[uvIndex + vOffset] & 0xff;
+                int rv = RV_TABLE[v];
+                int guv = GU_TABLE[u] + GV_TABLE[v];
+                int bu = BU_TABLE[u];
+
+                out[outIndex] = toArgb(Y_TABLE[data[yIndex++] & 0xff], rv, guv, bu);
+                outIndex += step;
+                if (col + 1 < width) {
+                    out[outIndex] = toArgb(Y_TABLE[data[yIndex++] & 0xff], rv, guv, bu);
+                    outIndex += step;
+                }
+            }
+        }
+    }
+
+    // Упакованный формат: Y0 U Y1 V на каждые два пикселя.
+    private static void convertYuy2(byte[] data, int width, int height, int rotation, boolean mirror,
+                                    int[] out, int rowStart, int rowEnd) {
+        int step = columnStep(height, rotation, mirror);
+        for (int row = rowStart; row < rowEnd; row++) {
+            int index = row * width * 2;
+            int outIndex = rowStart(width, height, row, rotation, mirror);
+            for (int col = 0; col < width; col += 2, index += 4) {
+                int u = data[index + 1] & 0xff;
+                int v = data[index + 3] & 0xff;
+                int rv = RV_TABLE[v];
+                int guv = GU_TABLE[u] + GV_TABLE[v];
+                int bu = BU_TABLE[u];
+
+                out[outIndex] = toArgb(Y_TABLE[data[index] & 0xff], rv, guv, bu);
+                outIndex += step;
+                if (col + 1 < width) {
+                    out[outIndex] = toArgb(Y_TABLE[data[index + 2] & 0xff], rv, guv, bu);
+                    outIndex += step;
+                }
+            }
+        }
+    }
+
+    private static int toArgb(int y, int rv, int guv, int bu) {
+        int r = CLAMP[((y + rv) >> SHIFT) + CLAMP_OFFSET];
+        int g = CLAMP[((y + guv) >> SHIFT) + CLAMP_OFFSET];
+        int b = CLAMP[((y + bu) >> SHIFT) + CLAMP_OFFSET];
+        return 0xff000000 | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.camerastream.frame;
+
+// Вырезание области и уменьшение кадров NV21 и NV16 до перевода в RGB или сжатия, чтобы
+// дальнейшие ступени обрабатывали меньше пикселей. При целом коэффициенте уменьшения
+// используется усреднение по блоку, иначе — билинейная интерполяция.
+// Область вырезается с чётных координат, поэтому отсчёты цветности остаются в центре своих
+// блоков яркости и цвет не смещается относительно яркости.
+// Каждый потребитель держит свой экземпляр: результат пишется во внутренний буфер,
+// который используется повторно и выделяется заново только при росте кадра.
+public class YuvScaler {
+    private static final int FRACTION_BITS = 16;
+    private static final int FRACTION_MASK = (1 << FRACTION_BITS) - 1;
+
+    private byte[] output;
+    private int outputWidth;
+    private int outputHeight;
+
+    public static boolean isSupported(int format) {
+        return format == YuvConverter.NV21 || format == YuvConverter.NV16;
+    }
+
+    // Размер кадра в байтах.
+    public static int frameSize(int format, int width, int height) {
+        switch (format) {
+            case YuvConverter.NV21:
+                return width * height * 3 / 2;
+            case YuvConverter.NV16:
+                return width * height * 2;
+            default:
+                throw new IllegalArgumentException("Неподдерживаемый формат кадра: " + format);
+        }
+    }
+
+    // Уменьшает весь кадр в divisor раз. Если размер не делится нацело, края кадра
+    // поровну обрезаются, чтобы остался точный блочный коэффициент.
+    public byte[] scale(byte[] data, int format, int width, int height, int divisor) {
+        if (divisor <= 1) {
+            outputWidth = width;
+            outputHeight = height;
+            return data;
+        }
+        int outWidth = (width / divisor) & ~1;
+        int outHeight = (height / divisor) & ~1;
+        int cropWidth = outWidth * divisor;
+        int cropHeight = outHeight * divisor;
+        return scale(data, format, width, height, ((width - cropWidth) / 2) & ~1, ((height - cropHeight) / 2) & ~1,
+                cropWidth, cropHeight, outWidth, outHeight);
+    }
+
+    // Вырезает область и приводит её к размеру outWidth x outHeight.
+    public byte[] scale(byte[] data, int format, int width, int height,
+                        int cropX, int cropY, int cropWidth, int cropHeight, int outWidth, int outHeight) {
+        int size = frameSize(format, outWidth, outHeight);
+        if (output == null || output.length < size)
+            output = new byte[size];
+        scale(data, format, width, height, cropX, cropY, cropWidth, cropHeight, output, outWidth, outHeight);
+        outputWidth = outWidth;
+        outputHeight = outHeight;
+        return output;
+    }
+
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    public int getOutputHeight() {
+        return outputHeight;
+    }
+
+    public static void scale(byte[] src, int format, int width, int height,
+                             int cropX, int cropY, int cropWidth, int cropHeight,
+                             byte[] dst, int outWidth, int outHeight) {
+        if (!isSupported(format))
+            throw new IllegalArgumentException("Неподдерживаемый формат кадра: " + format);
+        if (((cropX | cropY | cropWidth | cropHeight | outWidth | outHeight) & 1) != 0)
+            throw new IllegalArgumentException("Область и размер результата должны быть чётными");
+        if (cropX < 0 || cropY < 0 || cropX + cropWidth > width || cropY + cropHeight > height
+                || outWidth <= 0 || outHeight <= 0)
+            throw new IllegalArgumentException("Область " + cropWidth + "x" + cropHeight + "+" + cropX + "+" + cropY
+                    + " вне кадра " + width + "x" + height);
+        if (dst.length < frameSize(format, outWidth, outHeight))
+            throw new IllegalArgumentException("Буфер меньше кадра " + outWidth + "x" + outHeight);
+
+        // Яркость.
+        scalePlane(src, 0, width, 1, cropX, cropY, cropWidth, cropHeight,
+                dst, 0, outWidth, outWidth, outHeight);
+
+        // Цветность: пары байт с шагом 2, у NV21 на каждые две строки, у NV16 на каждую.
+        int chromaShift = format == YuvConverter.NV21 ? 1 : 0;
+        int srcOffset = width * height;
+        int dstOffset = outWidth * outHeight;
+        for (int channel = 0; channel < 2; channel++)
+            scalePlane(src, srcOffset + channel, width, 2, cropX / 2, cropY >> chromaShift,
+                    cropWidth / 2, cropHeight >> chromaShift,
+                    dst, dstOffset + channel, outWidth, outWidth / 2, outHeight >> chromaShift);
+    }
+
+    // Плоскость задаётся смещением, длиной строки в байтах и шагом между отсчётами;
+    // координаты и размеры — в отсчётах плоскости.
+    private static void scalePlane(byte[] src, int srcOffset, int srcStride, int step,
+                                   int x0, int y0, int srcWidth, int srcHeight,
+                                   byte[] dst, int dstOffset, int dstStride, int dstWidth, int dstHeight) {
+        if (srcWidth % dstWidth == 0 && srcHeight % dstHeight == 0
+                && srcWidth / dstWidth == srcHeight / dstHeight)
+            boxPlane(src, srcOffset, srcStride, step, x0, y0, srcWidth / dstWidth,
+                    dst, dstOffset, dstStride, dstWidth, dstHeight);
+        else
+            bilinearPlane(src, srcOffset, srcStride, step, x0, y0, srcWidth, srcHeight,
+                    dst, dstOffset, dstStride, dstWidth, dstHeight);
+    }
+
+    private static void boxPlane(byte[] src, int srcOffset, int srcStride, int step, int x0, int y0, int factor,
+                                 byte[] dst, int dstOffset, int dstStride, int dstWidth, int dstHeight) {
+        if (factor == 2) {
+            boxPlane2(src, srcOffset, srcStride, step, x0, y0, dst, dstOffset, dstStride, dstWidth, dstHeight);
+            return;
+        }
+        int area = factor * factor;
+        int half = area / 2;
+        for (int row = 0; row < dstHeight; row++) {
+            int srcRow = srcOffset + (y0 + row * factor) * srcStride + x0 * step;
+            int out = dstOffset + row * dstStride;
+            for (int col = 0; col < dstWidth; col++, out += step) {
+                int blockStart = srcRow + col * factor * step;
+                int sum = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    int index = blockStart + dy * srcStride;
+                    for (int dx = 0; dx < factor; dx++, index += step)
+                        sum += src[index] & 0xff;
+                }
+                dst[out] = (byte) ((sum + half) / area);
+            }
+        }
+    }
+
+    // Самый частый случай — уменьшение вдвое — без вложенных циклов по блоку.
+    private static void boxPlane2(byte[] src, int srcOffset, int srcStride, int step, int x0, int y0,
+                                  byte[] dst, int dstOffset, int dstStride, int dstWidth, int dstHeight) {
+        int pairStep = 2 * step;
+        for (int row = 0; row < dstHeight; row++) {
+            int top = srcOffset + (y0 + 2 * row) * srcStride + x0 * step;
+            int bottom = top + srcStride;
+            int out = dstOffset + row * dstStride;
+            for (int col = 0; col < dstWidth; col++, out += step, top += pairStep, bottom += pairStep) {
+                int sum = (src[top] & 0xff) + (src[top + step] & 0xff)
+                        + (src[bottom] & 0xff) + (src[bottom + step] & 0xff);
+                dst[out] = (byte) ((sum + 2) >> 2);
+            }
+        }
+    }
+
+    // Центры отсчётов результата отображаются на центры отсчётов источника:
+    // x = (col + 0.5) * srcWidth / dstWidth - 0.5.
+    private static void bilinearPlane(byte[] src, int srcOffset, int srcStride, int step,
+                                      int x0, int y0, int srcWidth, int srcHeight,
+                                      byte[] dst, int dstOffset, int dstStride, int dstWidth, int dstHeight) {
+        long xRatio = ((long) srcWidth << FRACTION_BITS) / dstWidth;
+        long yRatio = ((long) srcHeight << FRACTION_BITS) / dstHeight;
+        for (int row = 0; row < dstHeight; row++) {
+            int y = (int) Math.max(0, ((2L * row + 1) * yRatio >> 1) - (1 << (FRACTION_BITS - 1)));
+            int top = Math.min(y >> FRACTION_BITS, srcHeight - 1);
+            int bottom = Math.min(top + 1, srcHeight - 1);
+            int fy = y & FRACTION_MASK;
+            int topRow = srcOffset + (y0 + top) * srcStride + x0 * step;
+            int bottomRow = srcOffset + (y0 + bottom) * srcStride + x0 * step;
+            int out = dstOffset + row * dstStride;
+            for (int col = 0; col < dstWidth; col++, out += step) {
+                int x = (int) Math.max(0, ((2L * col + 1) * xRatio >> 1) - (1 << (FRACTION_BITS - 1)));
+                int left = Math.min(x >> FRACTION_BITS, srcWidth - 1);
+                int right = Math.min(left + 1, srcWidth - 1);
+                int fx = x & FRACTION_MASK;
+                int a = src[topRow + left * step] & 0xff;
+                int b = src[topRow + right * step] & 0xff;
+                int c = src[bottomRow + left * step] & 0xff;
+                int d = src[bottomRow + right * step] & 0xff;
+                long upper = (a << FRACTION_BITS) + (long) (b - a) * fx;
+                long lower = (c << FRACTION_BITS) + (long) (d - c) * fx;
+                long value = (upper << FRACTION_BITS) + (lower - upper) * fy;
+                dst[out] = (byte) ((value + (1L << (2 * FRACTION_BITS - 1))) >> (2 * FRACTION_BITS));
+            }
+        }
+    }
+}
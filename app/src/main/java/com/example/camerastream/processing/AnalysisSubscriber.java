@@ -0,0 +1,62 @@
+package com.example.camerastream.processing;
+
+import com.example.camerastream.analysis.MotionDetector;
+import com.example.camerastream.frame.FrameBus;
+import com.example.camerastream.frame.FrameStatistics;
+import com.example.camerastream.frame.SharedFrame;
+import com.example.camerastream.frame.StreamConfig;
+
+// Анализ кадров: движение и статистика яркости. Результат движения решает, сжимать ли
+// и записывать ли кадры без движения (см. FrameProcessor.Settings.skipStaticFrames).
+public class AnalysisSubscriber implements FrameBus.Subscriber {
+    // Используется только в потоке анализа.
+    private final MotionDetector motionDetector;
+    // Движение с учётом времени удержания, чтобы не обрывать запись на паузах;
+    // true, если движение не определяется.
+    private volatile boolean motionActive = true;
+    // Статистика считается в потоке анализа в working, а читается из statistics.
+    private final FrameStatistics working;
+    private final FrameStatistics statistics;
+
+    AnalysisSubscriber(FrameProcessor.Settings settings) {
+        motionDetector = settings.motionDetection ? new MotionDetector(settings.motionColumns, settings.motionRows,
+                settings.motionBackgroundShift, settings.motionHoldNanos) : null;
+        if (motionDetector != null)
+            motionDetector.setSensitivity(settings.motionSensitivity);
+        working = settings.frameStatistics ? new FrameStatistics(settings.statisticsStep) : null;
+        statistics = settings.frameStatistics ? new FrameStatistics(settings.statisticsStep) : null;
+    }
+
+    // Слушатель начала и конца движения; вызывается в потоке анализа.
+    void setMotionListener(MotionDetector.Listener listener) {
+        if (motionDetector != null)
+            motionDetector.setListener(listener);
+    }
+
+    @Override
+    public void onFrame(SharedFrame frame) {
+        StreamConfig config = frame.config;
+        if (motionDetector != null) {
+            motionDetector.process(frame.data, config.format, config.width, config.height, frame.timestampNanos);
+            motionActive = motionDetector.isMotion();
+        }
+        if (working != null) {
+            working.compute(frame.data, config.format, config.width, config.height);
+            synchronized (statistics) {
+                statistics.copyFrom(working);
+            }
+        }
+    }
+
+    public boolean isMotionActive() {
+        return motionActive;
+    }
+
+    public void appendStatistics(StringBuilder out) {
+        if (statistics == null)
+            return;
+        synchronized (statistics) {
+            statistics.appendSummary(out);
+        }
+    }
+}
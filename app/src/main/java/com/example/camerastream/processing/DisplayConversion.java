@@ -0,0 +1,107 @@
+package com.example.camerastream.processing;
+
+import com.example.camerastream.analysis.DuplicateFilter;
+import com.example.camerastream.analysis.FrameFingerprint;
+import com.example.camerastream.frame.Frame;
+import com.example.camerastream.frame.FrameBudgetScheduler;
+import com.example.camerastream.frame.FrameMetrics;
+import com.example.camerastream.frame.FramePipeline;
+import com.example.camerastream.frame.ParallelYuvConverter;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+import com.example.camerastream.frame.YuvScaler;
+
+// Перевод кадра в ARGB для показа, выполняется в потоке перевода FramePipeline.
+// Кадр, почти совпадающий с последним переведённым, помечается повтором и не переводится.
+public class DisplayConversion implements FramePipeline.Stage {
+    // Перевод другим способом, например через сжатие в JPEG и декодирование на Android.
+    public interface Converter {
+        void convert(Frame frame, FrameMetrics metrics);
+    }
+
+    private final ParallelYuvConverter converter;
+    private final FrameMetrics metrics;
+    private final int scale;
+    // У показа свой размер кадра, поэтому и свой буфер уменьшения.
+    private final YuvScaler scaler = new YuvScaler();
+    private final FrameFingerprint fingerprint;
+    private final DuplicateFilter duplicates;
+    private StreamConfig fingerprintConfig;
+    private volatile Converter fallback;
+    private volatile FrameBudgetScheduler.Stage budgetStage;
+
+    DisplayConversion(FrameProcessor.Settings settings, ParallelYuvConverter converter, FrameMetrics metrics) {
+        this.converter = converter;
+        this.metrics = metrics;
+        scale = settings.displayScale;
+        if (settings.skipDuplicateFrames) {
+            fingerprint = new FrameFingerprint(settings.fingerprintColumns, settings.fingerprintRows);
+            duplicates = new DuplicateFilter("показ", settings.fingerprintColumns, settings.fingerprintRows,
+                    settings.duplicateThreshold);
+        } else {
+            fingerprint = null;
+            duplicates = null;
+        }
+    }
+
+    // null — переводить напрямую через ParallelYuvConverter.
+    public void setConverter(Converter converter) {
+        fallback = converter;
+    }
+
+    void setBudgetStage(FrameBudgetScheduler.Stage stage) {
+        budgetStage = stage;
+    }
+
+    @Override
+    public void process(Frame frame) {
+        long started = System.nanoTime();
+        StreamConfig config = frame.config;
+        if (duplicates != null) {
+            if (config != fingerprintConfig) {
+                fingerprintConfig = config;
+                duplicates.reset();
+            }
+            fingerprint.compute(frame.data, config.format, config.width, config.height);
+            frame.duplicate = duplicates.isDuplicate(fingerprint);
+        }
+
+        // Повтор кадра, который уже на экране, не переводится, а конвейер не отдаёт его выводу.
+        // Время перевода для него не записывается, в бюджет показа идёт только цена отпечатка.
+        Converter other = fallback;
+        if (frame.duplicate) {
+            // Переводить нечего.
+        } else if (other != null) {
+            other.convert(frame, metrics);
+        } else {
+            convert(frame);
+        }
+        FrameBudgetScheduler.Stage budget = budgetStage;
+        if (budget != null)
+            budget.record(System.nanoTime() - started);
+    }
+
+    private void convert(Frame frame) {
+        long start = System.nanoTime();
+        StreamConfig config = frame.config;
+        byte[] data = frame.data;
+        int width = config.width;
+        int height = config.height;
+        // Уменьшенный кадр переводится в RGB быстрее во столько раз, во сколько в нём меньше пикселей.
+        if (scale > 1 && YuvScaler.isSupported(config.format)) {
+            data = scaler.scale(data, config.format, width, height, scale);
+            width = scaler.getOutputWidth();
+            height = scaler.getOutputHeight();
+        }
+        int[] pixels = frame.ensurePixels(YuvConverter.outputWidth(width, height, config.rotation),
+                YuvConverter.outputHeight(width, height, config.rotation));
+        // Поворот и отражение делаются в том же проходе, что и перевод цвета.
+        converter.convert(data, config.format, width, height, config.rotation, config.mirror, pixels);
+        metrics.record(FrameMetrics.CONVERT, System.nanoTime() - start);
+    }
+
+    // null, если повторы не отсеиваются.
+    public DuplicateFilter getDuplicates() {
+        return duplicates;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.camerastream.processing;
+
+import com.example.camerastream.frame.BufferRecycler;
+import com.example.camerastream.frame.FrameBudgetScheduler;
+import com.example.camerastream.frame.FrameBus;
+import com.example.camerastream.frame.FrameMetrics;
+import com.example.camerastream.frame.FramePipeline;
+import com.example.camerastream.frame.FrameStage;
+import com.example.camerastream.frame.ParallelYuvConverter;
+import com.example.camerastream.frame.SharedFrame;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+import com.example.camerastream.stream.JpegEncoder;
+import com.example.camerastream.stream.TileDeltaEncoder;
+
+// Обработка кадров без Android: шина раздаёт кадр показу (перевод в ARGB через FramePipeline),
+// трансляции, плиткам, записи и анализу, а FrameBudgetScheduler прореживает их под нагрузкой.
+// Одна и та же обработка работает в MediaRecorderActivity и в ReplayRunner из модуля benchmark.
+public class FrameProcessor {
+    // Параметры обработки; менять их после создания FrameProcessor нельзя.
+    public static class Settings {
+        // Под нагрузкой прореживать и отключать ступени в порядке, обратном приоритету:
+        // показ, трансляция, плитки, запись, анализ. 0 — без FrameBudgetScheduler.
+        public int budgetFps = 30;
+        // Потоки перевода и сжатия; столько же ядер в бюджете кадра.
+        public int threads = Runtime.getRuntime().availableProcessors();
+        // FrameStage.LATEST_FRAME — показывать только самый свежий кадр, иначе длина очереди ступеней.
+        public int displayQueueCapacity = FrameStage.LATEST_FRAME;
+        // Во сколько раз уменьшать кадр перед показом; 1 — показывать полный размер.
+        public int displayScale = 1;
+        // Не переводить для показа и не сжимать для трансляции кадры, почти совпадающие
+        // с последним обработанным: отпечаток — миниатюра яркости, порог — разница в ячейке,
+        // чуть больше шума матрицы.
+        public boolean skipDuplicateFrames = true;
+        public int fingerprintColumns = 16;
+        public int fingerprintRows = 12;
+        public int duplicateThreshold = 4;
+        // Не сжимать для трансляции и не записывать кадры без движения. Трансляция всё равно
+        // обновляется раз в streamIdleRefreshNanos, чтобы новые клиенты получили изображение.
+        public boolean skipStaticFrames = true;
+        public long streamIdleRefreshNanos = 1000000000L;
+        // Пределы, в которых AdaptiveQualityController меняет параметры трансляции.
+        public int streamMinQuality = 40;
+        public int streamMaxQuality = 90;
+        public int streamMaxFrameSkip = 3;
+        public long streamTargetEncodeNanos = 40000000L;
+        public long streamMaxBytesPerSecond = 2 * 1024 * 1024;
+        public int streamMaxScale = 4;
+        // Трансляция изменений плитками. Точка считается изменившейся при разнице больше порога,
+        // плитка — при нескольких таких точках; весь кадр уходит раз в tileKeyframeNanos.
+        public boolean tileStreaming = true;
+        public int tileSize = 64;
+        public int tileQuality = 75;
+        public int tilePixelThreshold = 16;
+        public int tileMinChangedPixels = 4;
+        public long tileKeyframeNanos = 10000000000L;
+        // Записывать кадры без сжатия (RawFrameRecorder передаётся в RecordSubscriber.start).
+        public boolean recordRaw = false;
+        // Держать в памяти кадры за последние секунды и записывать их вместе с живыми кадрами,
+        // когда начинается движение или вызван PreEventBuffer.trigger().
+        public boolean recordPreEvent = false;
+        // Очередь записи: кадры только копируются, но ни один не должен пропасть из-за короткой задержки.
+        public int recordQueueCapacity = 2;
+        public int preEventBytes = 32 * 1024 * 1024;
+        public int preEventMaxFrames = 300;
+        public long preEventNanos = 5000000000L;
+        // Обнаружение движения: сетка, скорость обновления фона, чувствительность в процентах
+        // и сколько считать движение продолжающимся после последнего изменения. Движение
+        // достаточно искать несколько раз в секунду.
+        public boolean motionDetection = true;
+        public long motionIntervalNanos = 100000000L;
+        public int motionColumns = 16;
+        public int motionRows = 12;
+        public int motionBackgroundShift = 4;
+        public int motionSensitivity = 50;
+        public long motionHoldNanos = 2000000000L;
+        // Статистика яркости (гистограмма, экспозиция, резкость) по каждой statisticsStep-й точке
+        // и строке. Считается анализом для тех кадров, которые он берёт, и входит в цену его ступени.
+        public boolean frameStatistics = true;
+        public int statisticsStep = 4;
+
+        // Результат обнаружения движения управляет трансляцией, записью или буфером событий,
+        // поэтому анализ нельзя отключать под нагрузкой.
+        public boolean motionGatesStages() {
+            return motionDetection && (skipStaticFrames || recordPreEvent);
+        }
+    }
+
+    private final ParallelYuvConverter converter;
+    private final JpegEncoder streamEncoder;
+    private final JpegEncoder tileJpegEncoder;
+    private final FramePipeline pipeline;
+    private final FrameBus bus;
+    private final FrameBudgetScheduler scheduler;
+    private final DisplayConversion display;
+    private final StreamSubscriber stream;
+    private final TileSubscriber tiles;
+    private final RecordSubscriber record;
+    private final AnalysisSubscriber analysis;
+
+    // output получает переведённые кадры в потоке вывода FramePipeline.
+    public FrameProcessor(Settings settings, FrameMetrics metrics, FramePipeline.Stage output) {
+        converter = new ParallelYuvConverter(settings.threads, ParallelYuvConverter.DEFAULT_SEQUENTIAL_THRESHOLD);
+        streamEncoder = new JpegEncoder(settings.threads, JpegEncoder.DEFAULT_SEQUENTIAL_THRESHOLD);
+        display = new DisplayConversion(settings, converter, metrics);
+        pipeline = new FramePipeline(display, output, settings.displayQueueCapacity, metrics);
+        analysis = settings.motionDetection || settings.frameStatistics ? new AnalysisSubscriber(settings) : null;
+        stream = new StreamSubscriber(settings, streamEncoder, metrics, analysis);
+        if (settings.tileStreaming) {
+            tileJpegEncoder = new JpegEncoder(settings.threads, JpegEncoder.DEFAULT_SEQUENTIAL_THRESHOLD);
+            tiles = new TileSubscriber(settings, new TileDeltaEncoder(tileJpegEncoder, settings.tileSize,
+                    settings.tilePixelThreshold, settings.tileMinChangedPixels, settings.tileKeyframeNanos));
+        } else {
+            tileJpegEncoder = null;
+            tiles = null;
+        }
+        record = settings.recordRaw || settings.recordPreEvent ? new RecordSubscriber(settings, analysis) : null;
+        if (analysis != null && record != null)
+            analysis.setMotionListener(record);
+
+        bus = new FrameBus(FrameBus.AUTO_FRAME_COUNT);
+        // Показ отдаёт кадры конвейеру и держит их, пока они ждут перевода или переводятся.
+        // Вызывается в потоке публикации, кадр передаётся без копирования.
+        bus.subscribe("display", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+                frame.retain();
+                pipeline.submit(frame.data, frame.config, frame);
+            }
+        }, FrameBus.DIRECT, 0).setHeldFrames(pipeline.getMaxRetainedInputs());
+        FrameBus.Subscription streamSubscription = bus.subscribe("stream", stream, FrameStage.LATEST_FRAME, 0);
+        FrameBus.Subscription tileSubscription = tiles != null
+                ? bus.subscribe("tiles", tiles, FrameStage.LATEST_FRAME, 0) : null;
+        FrameBus.Subscription recordSubscription = record != null
+                ? bus.subscribe("record", record, settings.recordQueueCapacity, 0) : null;
+        FrameBus.Subscription analysisSubscription = analysis != null
+                ? bus.subscribe("analysis", analysis, FrameStage.LATEST_FRAME, settings.motionIntervalNanos) : null;
+
+        scheduler = settings.budgetFps > 0 ? new FrameBudgetScheduler(settings.budgetFps, settings.threads) : null;
+        if (scheduler != null) {
+            display.setBudgetStage(scheduler.addStage("показ", false));
+            streamSubscription.setBudgetStage(scheduler.addStage("трансляция", true));
+            if (tileSubscription != null)
+                tileSubscription.setBudgetStage(scheduler.addStage("плитки", true));
+            if (recordSubscription != null)
+                recordSubscription.setBudgetStage(scheduler.addStage("запись", true));
+            // Отключённый анализ оставил бы движение и буфер событий в последнем состоянии.
+            if (analysisSubscription != null)
+                analysisSubscription.setBudgetStage(scheduler.addStage("анализ", !settings.motionGatesStages()));
+        }
+    }
+
+    public void start() {
+        pipeline.start();
+        bus.start();
+    }
+
+    // Останавливает шину и конвейер; их потоки возвращают буферы источнику. Запись
+    // останавливается отдельно, через getRecording().stop().
+    public void stop() {
+        bus.stop();
+        pipeline.stop();
+        converter.shutdown();
+        streamEncoder.shutdown();
+        if (tileJpegEncoder != null)
+            tileJpegEncoder.shutdown();
+    }
+
+    // Кадр источника; вызывается в его потоке. Буфер вернётся источнику от последнего подписчика.
+    public void onFrame(byte[] data, StreamConfig config, BufferRecycler bufferPool, long timestampNanos) {
+        if (scheduler != null)
+            scheduler.onFrame(timestampNanos);
+        if (YuvConverter.isSupported(config.format))
+            bus.publish(data, config, bufferPool, timestampNanos);
+        else if (bufferPool != null)
+            bufferPool.recycle(data);
+    }
+
+    public FrameBus getBus() {
+        return bus;
+    }
+
+    public FramePipeline getPipeline() {
+        return pipeline;
+    }
+
+    // null, если бюджета кадра нет.
+    public FrameBudgetScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public DisplayConversion getDisplay() {
+        return display;
+    }
+
+    public StreamSubscriber getStream() {
+        return stream;
+    }
+
+    // null, если трансляция плитками выключена.
+    public TileSubscriber getTiles() {
+        return tiles;
+    }
+
+    // null, если запись выключена.
+    public RecordSubscriber getRecording() {
+        return record;
+    }
+
+    // null, если нет ни обнаружения движения, ни статистики.
+    public AnalysisSubscriber getAnalysis() {
+        return analysis;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.camerastream.processing;
+
+import com.example.camerastream.analysis.MotionDetector;
+import com.example.camerastream.frame.FrameBus;
+import com.example.camerastream.frame.SharedFrame;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.record.PreEventBuffer;
+import com.example.camerastream.record.RawFrameRecorder;
+
+// Запись копирует кадр в свои буферы, поэтому кадр шины освобождается сразу. С буфером событий
+// кадры копятся в памяти и пишутся с историей, когда начинается движение или вызван trigger();
+// без него пишутся все кадры с движением.
+public class RecordSubscriber implements FrameBus.Subscriber, MotionDetector.Listener {
+    private final FrameProcessor.Settings settings;
+    // null, если движение не определяется: тогда пишется каждый кадр.
+    private final AnalysisSubscriber analysis;
+    private volatile RawFrameRecorder recorder;
+    private volatile PreEventBuffer preEventBuffer;
+
+    RecordSubscriber(FrameProcessor.Settings settings, AnalysisSubscriber analysis) {
+        this.settings = settings;
+        this.analysis = analysis;
+    }
+
+    // Начинает запись в запущенный recorder, который остановится в stop(). null — кадры буфера
+    // событий никуда не пишутся, например чтобы измерить только цену копирования.
+    public synchronized void start(RawFrameRecorder recorder) {
+        stop();
+        this.recorder = recorder;
+        if (!settings.recordPreEvent)
+            return;
+        PreEventBuffer buffer = new PreEventBuffer(settings.preEventBytes, settings.preEventMaxFrames,
+                settings.preEventNanos, new PreEventBuffer.Sink() {
+                    @Override
+                    public void write(byte[] data, int offset, int length, StreamConfig config,
+                                      long timestampNanos) throws InterruptedException {
+                        RawFrameRecorder target = RecordSubscriber.this.recorder;
+                        if (target != null)
+                            target.recordWaiting(data, offset, length, config, timestampNanos);
+                    }
+                });
+        buffer.start();
+        preEventBuffer = buffer;
+    }
+
+    public synchronized void stop() {
+        PreEventBuffer buffer = preEventBuffer;
+        if (buffer != null) {
+            preEventBuffer = null;
+            buffer.stop();
+        }
+        RawFrameRecorder target = recorder;
+        if (target != null) {
+            recorder = null;
+            target.stop();
+        }
+    }
+
+    @Override
+    public void onFrame(SharedFrame frame) {
+        StreamConfig config = frame.config;
+        PreEventBuffer buffer = preEventBuffer;
+        RawFrameRecorder target = recorder;
+        if (buffer != null)
+            buffer.add(frame.data, config.frameSize, config, frame.timestampNanos);
+        else if (target != null && settings.recordRaw
+                && !(settings.skipStaticFrames && analysis != null && !analysis.isMotionActive()))
+            target.record(frame.data, config.frameSize, config, frame.timestampNanos);
+    }
+
+    // При движении буфер событий записывает историю и продолжает запись до его окончания.
+    @Override
+    public void onMotionStarted(long timestampNanos) {
+        PreEventBuffer buffer = preEventBuffer;
+        if (buffer != null)
+            buffer.trigger();
+    }
+
+    @Override
+    public void onMotionStopped(long timestampNanos) {
+        PreEventBuffer buffer = preEventBuffer;
+        if (buffer != null)
+            buffer.stopLive();
+    }
+
+    // null, если запись не идёт.
+    public RawFrameRecorder getRecorder() {
+        return recorder;
+    }
+
+    // null, если буфер событий выключен или запись не идёт.
+    public PreEventBuffer getPreEventBuffer() {
+        return preEventBuffer;
+    }
+}
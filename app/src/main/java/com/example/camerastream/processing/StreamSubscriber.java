@@ -0,0 +1,138 @@
+package com.example.camerastream.processing;
+
+import com.example.camerastream.analysis.DuplicateFilter;
+import com.example.camerastream.analysis.FrameFingerprint;
+import com.example.camerastream.frame.FrameBus;
+import com.example.camerastream.frame.FrameMetrics;
+import com.example.camerastream.frame.SharedFrame;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+import com.example.camerastream.frame.YuvScaler;
+import com.example.camerastream.stream.AdaptiveQualityController;
+import com.example.camerastream.stream.EncodedFrame;
+import com.example.camerastream.stream.JpegEncoder;
+import com.example.camerastream.stream.MjpegServer;
+
+// Трансляция MJPEG: кадр сжимается один раз и раздаётся всем клиентам MjpegServer.
+// Качество, уменьшение и пропуск кадров подстраивает AdaptiveQualityController.
+public class StreamSubscriber implements FrameBus.Subscriber {
+    // Сжатие форматов, которые не умеет JpegEncoder, например YUY2 через YuvImage на Android.
+    public interface Encoder {
+        boolean isSupported(int format);
+
+        byte[] encode(byte[] data, int format, int width, int height, int quality);
+    }
+
+    private final FrameProcessor.Settings settings;
+    private final JpegEncoder encoder;
+    private final FrameMetrics metrics;
+    // null, если движение не определяется: тогда сжимается каждый кадр.
+    private final AnalysisSubscriber analysis;
+    private final AdaptiveQualityController quality;
+    private final YuvScaler scaler = new YuvScaler();
+    private final FrameFingerprint fingerprint;
+    private final DuplicateFilter duplicates;
+    private StreamConfig fingerprintConfig;
+    private EncodedFrame lastEncoded;
+    private long streamedNanos;
+    private volatile MjpegServer server;
+    private volatile Encoder fallback;
+
+    StreamSubscriber(FrameProcessor.Settings settings, JpegEncoder encoder, FrameMetrics metrics,
+                     AnalysisSubscriber analysis) {
+        this.settings = settings;
+        this.encoder = encoder;
+        this.metrics = metrics;
+        this.analysis = analysis;
+        quality = new AdaptiveQualityController(settings.streamMinQuality, settings.streamMaxQuality,
+                settings.streamMaxScale, settings.streamMaxFrameSkip, settings.streamTargetEncodeNanos,
+                settings.streamMaxBytesPerSecond);
+        if (settings.skipDuplicateFrames) {
+            fingerprint = new FrameFingerprint(settings.fingerprintColumns, settings.fingerprintRows);
+            duplicates = new DuplicateFilter("трансляция", settings.fingerprintColumns, settings.fingerprintRows,
+                    settings.duplicateThreshold);
+        } else {
+            fingerprint = null;
+            duplicates = null;
+        }
+    }
+
+    // null — не транслировать.
+    public void setServer(MjpegServer server) {
+        this.server = server;
+    }
+
+    public void setEncoder(Encoder encoder) {
+        fallback = encoder;
+    }
+
+    @Override
+    public void onFrame(SharedFrame frame) {
+        MjpegServer target = server;
+        boolean skipStatic = settings.skipStaticFrames && analysis != null && !analysis.isMotionActive();
+        if (target != null && target.hasClients()
+                && (!skipStatic || frame.timestampNanos - streamedNanos >= settings.streamIdleRefreshNanos))
+            streamFrame(frame, target);
+    }
+
+    private void streamFrame(SharedFrame frame, MjpegServer server) {
+        StreamConfig config = frame.config;
+        Encoder other = fallback;
+        boolean direct = config.format == YuvConverter.NV21;
+        if (!direct && (other == null || !other.isSupported(config.format)))
+            return;
+        if (!quality.shouldEncode())
+            return;
+        if (duplicates != null && isDuplicate(frame)) {
+            // Повтор не сжимается; клиентам изредка досылается прошлый сжатый кадр.
+            if (lastEncoded != null && frame.timestampNanos - streamedNanos >= settings.streamIdleRefreshNanos) {
+                streamedNanos = frame.timestampNanos;
+                server.publish(lastEncoded);
+            }
+            return;
+        }
+        streamedNanos = frame.timestampNanos;
+        long start = System.nanoTime();
+        byte[] data = frame.data;
+        int width = config.width;
+        int height = config.height;
+        int scale = quality.getScale();
+        if (scale > 1 && YuvScaler.isSupported(config.format)) {
+            data = scaler.scale(data, config.format, width, height, scale);
+            width = scaler.getOutputWidth();
+            height = scaler.getOutputHeight();
+        }
+        byte[] jpeg;
+        if (direct) {
+            // Сервер хранит опубликованный массив, поэтому он свой у каждого кадра, но выделяется
+            // сразу нужного размера и заполняется одним копированием.
+            jpeg = new byte[encoder.encode(data, width, height, quality.getQuality())];
+            encoder.writeTo(jpeg, 0);
+        } else {
+            jpeg = other.encode(data, config.format, width, height, quality.getQuality());
+        }
+        long end = System.nanoTime();
+        metrics.record(FrameMetrics.STREAM_ENCODE, end - start);
+        lastEncoded = server.publish(jpeg, jpeg.length, frame.timestampNanos);
+        quality.onFrameEncoded(end - start, server.getSentBytes(), server.getDroppedFrames(), end);
+    }
+
+    private boolean isDuplicate(SharedFrame frame) {
+        StreamConfig config = frame.config;
+        if (config != fingerprintConfig) {
+            fingerprintConfig = config;
+            duplicates.reset();
+        }
+        fingerprint.compute(frame.data, config.format, config.width, config.height);
+        return duplicates.isDuplicate(fingerprint);
+    }
+
+    public AdaptiveQualityController getQuality() {
+        return quality;
+    }
+
+    // null, если повторы не отсеиваются.
+    public DuplicateFilter getDuplicates() {
+        return duplicates;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.camerastream.processing;
+
+import com.example.camerastream.frame.FrameBus;
+import com.example.camerastream.frame.SharedFrame;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+import com.example.camerastream.stream.TileDeltaEncoder;
+import com.example.camerastream.stream.TileStreamServer;
+
+// Трансляция изменений плитками через TileStreamServer. Плитки сравниваются с тем, что клиенты
+// уже видят, поэтому кадры без изменений почти ничего не стоят и отдельно не отсеиваются.
+public class TileSubscriber implements FrameBus.Subscriber {
+    // Вызывается в потоке плиток до отправки сообщения, кадр ещё удерживается.
+    public interface Listener {
+        void onEncoded(SharedFrame frame, byte[] message);
+    }
+
+    private final TileDeltaEncoder encoder;
+    private final int quality;
+    private volatile TileStreamServer server;
+    private volatile Listener listener;
+
+    TileSubscriber(FrameProcessor.Settings settings, TileDeltaEncoder encoder) {
+        this.encoder = encoder;
+        quality = settings.tileQuality;
+    }
+
+    // null — не транслировать.
+    public void setServer(TileStreamServer server) {
+        this.server = server;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void onFrame(SharedFrame frame) {
+        TileStreamServer target = server;
+        StreamConfig config = frame.config;
+        if (target == null || !target.hasClients() || config.format != YuvConverter.NV21)
+            return;
+        byte[] message = encoder.encode(frame.data, config.width, config.height, quality,
+                frame.timestampNanos, target.takeKeyframeRequest());
+        if (message == null)
+            return;
+        Listener current = listener;
+        if (current != null)
+            current.onEncoded(frame, message);
+        target.publish(message);
+    }
+
+    public TileDeltaEncoder getEncoder() {
+        return encoder;
+    }
+}
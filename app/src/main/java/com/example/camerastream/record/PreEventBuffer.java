@@ -0,0 +1,231 @@
+package com.example.camerastream.record;
+
+import com.example.camerastream.frame.StreamConfig;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Кадры за последние несколько секунд до события. Кадры копируются в один заранее
+// выделенный массив байт, который используется по кругу, поэтому объём истории ограничен
+// памятью, а не числом кадров: сжатых JPEG помещается во много раз больше, чем кадров YUV.
+// Кадры старше historyNanos и кадры, на которые не хватает места, вытесняются.
+// trigger() отдаёт накопленную историю приёмнику в отдельном потоке и дальше передаёт ему
+// новые кадры до stopLive(), без разрыва между историей и живыми кадрами. Ещё не переданные
+// кадры не вытесняются; если приёмник не успевает и место кончилось, новый кадр
+// пропускается — поток, добавляющий кадры, никогда не ждёт приёмник.
+public class PreEventBuffer {
+    public interface Sink {
+        void write(byte[] data, int offset, int length, StreamConfig config, long timestampNanos)
+                throws InterruptedException;
+    }
+
+    private final byte[] arena;
+    private final long historyNanos;
+    private final Sink sink;
+
+    // Кадры с номерами first..end-1 лежат в ячейках номер % maxFrames.
+    private final int[] offsets;
+    private final int[] lengths;
+    private final long[] timestamps;
+    private final StreamConfig[] configs;
+    private long first;
+    private long end;
+    private int writeOffset;
+
+    // Кадры drainStart..min(drainEnd, end)-1 ещё должны уйти приёмнику.
+    private long drainStart;
+    private long drainEnd;
+    private boolean live;
+
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong writtenFrames = new AtomicLong();
+    private Thread drainThread;
+    private boolean running;
+
+    // capacityBytes — память под кадры, maxFrames — сколько кадров может храниться,
+    // historyNanos — сколько времени до события хранить.
+    public PreEventBuffer(int capacityBytes, int maxFrames, long historyNanos, Sink sink) {
+        if (capacityBytes <= 0 || maxFrames <= 0 || historyNanos <= 0)
+            throw new IllegalArgumentException("Неверные размеры буфера событий");
+        arena = new byte[capacityBytes];
+        this.historyNanos = historyNanos;
+        this.sink = sink;
+        offsets = new int[maxFrames];
+        lengths = new int[maxFrames];
+        timestamps = new long[maxFrames];
+        configs = new StreamConfig[maxFrames];
+    }
+
+    public synchronized void start() {
+        if (drainThread != null)
+            return;
+        running = true;
+        drainThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "PreEventBuffer");
+        drainThread.start();
+    }
+
+    // Останавливает передачу; кадры, не успевшие уйти приёмнику, остаются в буфере.
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = drainThread;
+            if (thread == null)
+                return;
+            running = false;
+            drainThread = null;
+            notifyAll();
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Копирует кадр в буфер. Возвращает false, если кадр пропущен.
+    public synchronized boolean add(byte[] data, int length, StreamConfig config, long timestampNanos) {
+        if (length <= 0 || length > arena.length) {
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        int offset;
+        while ((offset = allocate(length)) < 0 || end - first == offsets.length) {
+            if (!evictOldest()) {
+                droppedFrames.incrementAndGet();
+                return false;
+            }
+        }
+        System.arraycopy(data, 0, arena, offset, length);
+        int slot = (int) (end % offsets.length);
+        offsets[slot] = offset;
+        lengths[slot] = length;
+        timestamps[slot] = timestampNanos;
+        configs[slot] = config;
+        end++;
+        writeOffset = offset + length;
+
+        while (end - first > 1 && timestampNanos - timestamps[(int) (first % offsets.length)] > historyNanos) {
+            if (!evictOldest())
+                break;
+        }
+        if (drainStart < drainEnd)
+            notifyAll();
+        return true;
+    }
+
+    // Сбрасывает историю приёмнику и переходит к передаче живых кадров.
+    public synchronized void trigger() {
+        if (!live) {
+            live = true;
+            drainStart = Math.max(drainStart, first);
+        }
+        drainEnd = Long.MAX_VALUE;
+        notifyAll();
+    }
+
+    // Завершает передачу живых кадров: кадры, добавленные до вызова, ещё будут переданы.
+    public synchronized void stopLive() {
+        if (!live)
+            return;
+        live = false;
+        drainEnd = end;
+    }
+
+    public synchronized boolean isLive() {
+        return live;
+    }
+
+    // Смещение в массиве, куда помещается кадр, или -1. Свободное место — от конца последнего
+    // кадра до конца массива и от начала массива до первого кадра либо, если кадры уже
+    // перенесены в начало, между последним и первым.
+    private int allocate(int length) {
+        if (end == first)
+            return 0;
+        int firstOffset = offsets[(int) (first % offsets.length)];
+        if (writeOffset > firstOffset) {
+            if (arena.length - writeOffset >= length)
+                return writeOffset;
+            return firstOffset >= length ? 0 : -1;
+        }
+        return firstOffset - writeOffset >= length ? writeOffset : -1;
+    }
+
+    private boolean evictOldest() {
+        if (first == end || (first >= drainStart && first < drainEnd))
+            return false;
+        configs[(int) (first % offsets.length)] = null;
+        first++;
+        if (first == end)
+            writeOffset = 0;
+        return true;
+    }
+
+    private void drainLoop() {
+        while (true) {
+            long sequence;
+            int offset;
+            int length;
+            StreamConfig config;
+            long timestampNanos;
+            synchronized (this) {
+                while (running && drainStart >= Math.min(drainEnd, end)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running)
+                    return;
+                sequence = drainStart;
+                int slot = (int) (sequence % offsets.length);
+                offset = offsets[slot];
+                length = lengths[slot];
+                config = configs[slot];
+                timestampNanos = timestamps[slot];
+            }
+            // Кадр защищён от вытеснения, пока drainStart не сдвинут, поэтому копировать
+            // его можно без блокировки.
+            try {
+                sink.write(arena, offset, length, config, timestampNanos);
+                writtenFrames.incrementAndGet();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            synchronized (this) {
+                drainStart = sequence + 1;
+            }
+        }
+    }
+
+    public synchronized int getFrameCount() {
+        return (int) (end - first);
+    }
+
+    // Сколько времени охватывают кадры в буфере.
+    public synchronized long getBufferedNanos() {
+        if (end - first < 2)
+            return 0;
+        return timestamps[(int) ((end - 1) % offsets.length)] - timestamps[(int) (first % offsets.length)];
+    }
+
+    public int getCapacityBytes() {
+        return arena.length;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    // Сколько кадров передано приёмнику.
+    public long getWrittenFrames() {
+        return writtenFrames.get();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.camerastream.record;
+
+import com.example.camerastream.frame.ReplayFrameSource;
+import com.example.camerastream.frame.StreamConfig;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Чтение записи RawFrameRecorder: индексы всех сегментов каталога читаются сразу,
+// сегменты отображаются в память при первом обращении к их кадрам.
+// Записи индекса, выходящие за конец сегмента (запись оборвалась), пропускаются.
+// Запись можно воспроизвести через ReplayFrameSource. Экземпляр не потокобезопасен.
+public class RawFrameReader implements ReplayFrameSource.Sequence {
+    private static class Entry {
+        final long timestampNanos;
+        final int segment;
+        final int offset;
+        final int length;
+        final StreamConfig config;
+
+        Entry(long timestampNanos, int segment, int offset, int length, StreamConfig config) {
+            this.timestampNanos = timestampNanos;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.config = config;
+        }
+    }
+
+    private final List<File> segmentFiles = new ArrayList<File>();
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private MappedByteBuffer[] segments;
+
+    public RawFrameReader(File directory) throws IOException {
+        String[] names = directory.list();
+        if (names == null)
+            throw new IOException("Не удалось прочитать каталог " + directory);
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (String name : names) {
+            int number = SegmentIndex.segmentNumber(name);
+            if (number > 0)
+                numbers.add(number);
+        }
+        Collections.sort(numbers);
+        for (int number : numbers) {
+            File segmentFile = new File(directory, SegmentIndex.segmentName(number, SegmentIndex.SEGMENT_SUFFIX));
+            if (!segmentFile.isFile())
+                continue;
+            readIndex(new File(directory, SegmentIndex.segmentName(number, SegmentIndex.INDEX_SUFFIX)),
+                    segmentFiles.size(), segmentFile.length());
+            segmentFiles.add(segmentFile);
+        }
+        segments = new MappedByteBuffer[segmentFiles.size()];
+    }
+
+    private void readIndex(File file, int segment, long segmentLength) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            SegmentIndex.readHeader(in, file);
+            StreamConfig previous = null;
+            while (true) {
+                long timestampNanos;
+                try {
+                    timestampNanos = in.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                int offset = in.readInt();
+                int length = in.readInt();
+                StreamConfig config = SegmentIndex.readConfig(in);
+                // У соседних кадров параметры обычно одни и те же.
+                if (config.equals(previous))
+                    config = previous;
+                previous = config;
+                if (offset >= 0 && length >= 0 && (long) offset + length <= segmentLength)
+                    entries.add(new Entry(timestampNanos, segment, offset, length, config));
+            }
+        } catch (EOFException e) {
+            // Последняя запись индекса записана не полностью.
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public int getFrameCount() {
+        return entries.size();
+    }
+
+    public int getSegmentCount() {
+        return segmentFiles.size();
+    }
+
+    @Override
+    public long getTimestampNanos(int frame) {
+        return entries.get(frame).timestampNanos;
+    }
+
+    public int getFrameLength(int frame) {
+        return entries.get(frame).length;
+    }
+
+    @Override
+    public StreamConfig getConfig(int frame) {
+        return entries.get(frame).config;
+    }
+
+    // Копирует кадр в buffer и возвращает его длину.
+    @Override
+    public int readFrame(int frame, byte[] buffer) throws IOException {
+        Entry entry = entries.get(frame);
+        if (buffer.length < entry.length)
+            throw new IllegalArgumentException("Буфер меньше кадра: " + buffer.length + " < " + entry.length);
+        MappedByteBuffer segment = segments[entry.segment];
+        if (segment == null) {
+            RandomAccessFile file = new RandomAccessFile(segmentFiles.get(entry.segment), "r");
+            try {
+                segment = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            } finally {
+                file.close();
+            }
+            segments[entry.segment] = segment;
+        }
+        segment.position(entry.offset);
+        segment.get(buffer, 0, entry.length);
+        return entry.length;
+    }
+
+    // Отображения сегментов освободит сборщик мусора.
+    public void close() {
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = null;
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.camerastream.record;
+
+import com.example.camerastream.frame.StreamConfig;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Запись кадров без сжатия в файлы сегментов. Сегмент заранее создаётся нужного размера
+// и отображается в память, кадры дописываются в него подряд; рядом пишется индекс
+// (SegmentIndex) со временем, смещением и параметрами каждого кадра. Новый сегмент
+// начинается, когда кадр не помещается в текущий или сегмент записывается дольше
+// заданного времени; закрытый сегмент обрезается до записанной длины.
+// record() только копирует кадр в заранее выделенный буфер и ставит его в очередь:
+// запись на диск идёт в отдельном потоке. Если свободных буферов нет, кадр пропускается.
+public class RawFrameRecorder {
+    private static final long POLL_NANOS = 100000000L;
+
+    // Кадр, ожидающий записи.
+    private static class PendingFrame {
+        byte[] data;
+        int length;
+        StreamConfig config;
+        long timestampNanos;
+    }
+
+    private final File directory;
+    private final long segmentBytes;
+    private final long segmentNanos;
+    private final int bufferSize;
+    private final ArrayBlockingQueue<PendingFrame> freeFrames;
+    private final ArrayBlockingQueue<PendingFrame> queuedFrames;
+
+    private final AtomicLong recordedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private volatile int segmentCount;
+    private volatile IOException failure;
+
+    private volatile Thread writer;
+    private volatile boolean running;
+
+    // Принадлежат потоку записи.
+    private int segmentNumber;
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private DataOutputStream index;
+    private long segmentStartNanos;
+
+    // bufferSize — наибольший размер кадра, bufferCount — сколько кадров может ждать записи.
+    // segmentNanos — 0, если сегменты делить только по размеру.
+    public RawFrameRecorder(File directory, long segmentBytes, long segmentNanos, int bufferSize, int bufferCount) {
+        if (segmentBytes < bufferSize || segmentBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Неверный размер сегмента: " + segmentBytes);
+        if (bufferSize <= 0 || bufferCount <= 0)
+            throw new IllegalArgumentException("Неверные размеры буферов записи");
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segmentNanos = segmentNanos;
+        this.bufferSize = bufferSize;
+        freeFrames = new ArrayBlockingQueue<PendingFrame>(bufferCount);
+        queuedFrames = new ArrayBlockingQueue<PendingFrame>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            PendingFrame frame = new PendingFrame();
+            frame.data = new byte[bufferSize];
+            freeFrames.offer(frame);
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (writer != null)
+            return;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Не удалось создать каталог " + directory);
+        // Нумерация продолжается после уже записанных сегментов.
+        segmentNumber = SegmentIndex.lastSegmentNumber(directory);
+        // Кадры, поставленные в очередь уже после прошлой остановки, не записываются.
+        PendingFrame stale;
+        while ((stale = queuedFrames.poll()) != null)
+            freeFrames.offer(stale);
+        failure = null;
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "RawFrameRecorder");
+        writer.start();
+    }
+
+    // Дописывает кадры, уже стоящие в очереди, и закрывает текущий сегмент.
+    public synchronized void stop() {
+        Thread thread = writer;
+        if (thread == null)
+            return;
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    // Вызывается в потоке обработки кадров; на диск ничего не пишет и не ждёт.
+    // Возвращает false, если кадр пропущен.
+    public boolean record(byte[] data, int length, StreamConfig config, long timestampNanos) {
+        if (!running || failure != null || length > bufferSize) {
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        PendingFrame frame = freeFrames.poll();
+        if (frame == null) {
+            droppedFrames.incrementAndGet();
+            return false;
+        }
+        enqueue(frame, data, 0, length, config, timestampNanos);
+        return true;
+    }
+
+    // Как record, но ждёт свободного буфера вместо пропуска кадра. Для потоков, которые
+    // могут ждать записи, например при сбросе накопленной истории кадров.
+    public boolean recordWaiting(byte[] data, int offset, int length, StreamConfig config, long timestampNanos)
+            throws InterruptedException {
+        PendingFrame frame = null;
+        while (frame == null) {
+            if (!running || failure != null || length > bufferSize) {
+                droppedFrames.incrementAndGet();
+                return false;
+            }
+            frame = freeFrames.poll(POLL_NANOS, TimeUnit.NANOSECONDS);
+        }
+        enqueue(frame, data, offset, length, config, timestampNanos);
+        return true;
+    }
+
+    private void enqueue(PendingFrame frame, byte[] data, int offset, int length, StreamConfig config,
+                         long timestampNanos) {
+        System.arraycopy(data, offset, frame.data, 0, length);
+        frame.length = length;
+        frame.config = config;
+        frame.timestampNanos = timestampNanos;
+        queuedFrames.offer(frame);
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                PendingFrame frame = queuedFrames.poll(POLL_NANOS, TimeUnit.NANOSECONDS);
+                if (frame == null) {
+                    if (!running)
+                        break;
+                    continue;
+                }
+                try {
+                    if (failure == null)
+                        write(frame);
+                } catch (IOException e) {
+                    // Например, закончилось место. Поток продолжает забирать кадры из очереди,
+                    // чтобы буферы возвращались, но больше ничего не пишет.
+                    e.printStackTrace();
+                    failure = e;
+                } finally {
+                    frame.config = null;
+                    freeFrames.offer(frame);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                e.printStackTrace();
+                if (failure == null)
+                    failure = e;
+            }
+            running = false;
+        }
+    }
+
+    private void write(PendingFrame frame) throws IOException {
+        if (segment != null && (segment.remaining() < frame.length
+                || (segmentNanos > 0 && frame.timestampNanos - segmentStartNanos >= segmentNanos)))
+            closeSegment();
+        if (segment == null)
+            openSegment(frame.timestampNanos);
+        int offset = segment.position();
+        segment.put(frame.data, 0, frame.length);
+        SegmentIndex.writeEntry(index, frame.timestampNanos, offset, frame.length, frame.config);
+        recordedFrames.incrementAndGet();
+        writtenBytes.addAndGet(frame.length);
+    }
+
+    private void openSegment(long timestampNanos) throws IOException {
+        segmentNumber++;
+        File file = new File(directory, SegmentIndex.segmentName(segmentNumber, SegmentIndex.SEGMENT_SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(segmentBytes);
+            segment = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                    new File(directory, SegmentIndex.segmentName(segmentNumber, SegmentIndex.INDEX_SUFFIX)))));
+            SegmentIndex.writeHeader(index);
+        } catch (IOException e) {
+            segment = null;
+            raf.close();
+            throw e;
+        }
+        segmentFile = raf;
+        segmentStartNanos = timestampNanos;
+        segmentCount++;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segmentFile == null)
+            return;
+        MappedByteBuffer buffer = segment;
+        RandomAccessFile raf = segmentFile;
+        DataOutputStream out = index;
+        segment = null;
+        segmentFile = null;
+        index = null;
+        try {
+            buffer.force();
+            out.close();
+            // Отображение освободит сборщик мусора; обрезка файла его не затрагивает,
+            // потому что за записанную длину больше никто не обращается.
+            raf.setLength(buffer.position());
+        } finally {
+            raf.close();
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Ошибка записи; после неё кадры принимаются, но не записываются.
+    public IOException getFailure() {
+        return failure;
+    }
+
+    public int getQueuedFrames() {
+        return queuedFrames.size();
+    }
+
+    public long getRecordedFrames() {
+        return recordedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.camerastream.record;
+
+import com.example.camerastream.frame.StreamConfig;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// Формат файлов записи. Сегмент segment-NNNNNN.raw — кадры подряд без заголовков,
+// индекс segment-NNNNNN.idx — заголовок и по записи на кадр:
+//   long время получения, нс; int смещение в сегменте; int длина кадра;
+//   int формат; short ширина; short высота; short поворот; byte бит на пиксель; byte флаги.
+// Числа записываются в порядке байт DataOutputStream (старший байт первым).
+final class SegmentIndex {
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".raw";
+    static final String INDEX_SUFFIX = ".idx";
+
+    static final int MAGIC = 0x43534958; // "CSIX"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int ENTRY_SIZE = 28;
+
+    private static final int FLAG_MIRROR = 1;
+
+    private SegmentIndex() {
+    }
+
+    static String segmentName(int number, String suffix) {
+        return String.format(Locale.US, "%s%06d%s", SEGMENT_PREFIX, number, suffix);
+    }
+
+    // Номер сегмента по имени файла индекса или 0, если это не индекс.
+    static int segmentNumber(String indexName) {
+        if (!indexName.startsWith(SEGMENT_PREFIX) || !indexName.endsWith(INDEX_SUFFIX))
+            return 0;
+        try {
+            return Integer.parseInt(indexName.substring(SEGMENT_PREFIX.length(),
+                    indexName.length() - INDEX_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static int lastSegmentNumber(File directory) {
+        int last = 0;
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names)
+                last = Math.max(last, segmentNumber(name));
+        }
+        return last;
+    }
+
+    static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    static void readHeader(DataInputStream in, File file) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Файл " + file + " не является индексом записи");
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Неподдерживаемая версия индекса " + version + " в " + file);
+    }
+
+    static void writeEntry(DataOutputStream out, long timestampNanos, int offset, int length,
+                           StreamConfig config) throws IOException {
+        out.writeLong(timestampNanos);
+        out.writeInt(offset);
+        out.writeInt(length);
+        out.writeInt(config.format);
+        out.writeShort(config.width);
+        out.writeShort(config.height);
+        out.writeShort(config.rotation);
+        out.writeByte(config.bitsPerPixel);
+        out.writeByte(config.mirror ? FLAG_MIRROR : 0);
+    }
+
+    // Параметры потока из записи индекса; timestamp, offset и length читает вызывающий.
+    static StreamConfig readConfig(DataInputStream in) throws IOException {
+        int format = in.readInt();
+        int width = in.readUnsignedShort();
+        int height = in.readUnsignedShort();
+        int rotation = in.readShort();
+        int bitsPerPixel = in.readUnsignedByte();
+        int flags = in.readUnsignedByte();
+        return new StreamConfig(format, width, height, bitsPerPixel, rotation, (flags & FLAG_MIRROR) != 0);
+    }
+}
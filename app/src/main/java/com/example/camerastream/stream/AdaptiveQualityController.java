@@ -0,0 +1,181 @@
+package com.example.camerastream.stream;
+
+// Подбирает качество JPEG, уменьшение кадра и пропуск кадров для трансляции по измеренному
+// времени сжатия, байтам, действительно отправленным клиентам, и кадрам, выброшенным из очередей
+// отставших клиентов. Если сжатие не укладывается в целевую задержку, поток превышает допустимый
+// или клиенты не успевают забирать кадры, параметры ухудшаются по одному шагу: сначала качество,
+// затем размер кадра, затем частота. Когда запас появляется снова, они восстанавливаются
+// в обратном порядке. Между порогами ухудшения и восстановления ничего не меняется,
+// поэтому параметры не колеблются от кадра к кадру.
+// Все методы вызываются из одного потока — того, который сжимает кадры.
+public class AdaptiveQualityController {
+    private static final int QUALITY_STEP_DOWN = 10;
+    private static final int QUALITY_STEP_UP = 5;
+    private static final double DEGRADE_THRESHOLD = 1.1;
+    private static final double RESTORE_THRESHOLD = 0.7;
+    // Сглаживание времени сжатия: вес нового измерения.
+    private static final double ENCODE_SMOOTHING = 0.2;
+    private static final long DECISION_INTERVAL_NANOS = 500000000L;
+    private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+    private final int minQuality;
+    private final int maxQuality;
+    private final int maxScale;
+    private final int maxFrameSkip;
+    private final long targetEncodeNanos;
+    private final long maxBytesPerSecond;
+
+    private int quality;
+    // Делитель размера кадра: 1, 2, 4...
+    private int scale = 1;
+    // Сколько кадров пропускать между сжатыми.
+    private int frameSkip;
+    private int skipped;
+
+    private double encodeNanos;
+    // Окно замера: время начала, счётчики сервера в его начале и число сжатых кадров.
+    private long windowStartNanos;
+    private long windowSentBytes;
+    private long windowDroppedFrames;
+    private int windowFrames;
+    private long bytesPerSecond;
+    // Выброшенные из очередей клиентов кадры на один сжатый кадр за последнее окно.
+    private double dropRatio;
+    private long lastDecisionNanos;
+    private int adjustments;
+
+    // maxScale — наибольший делитель размера кадра (1 — не уменьшать), maxBytesPerSecond — 0,
+    // если поток не ограничен.
+    public AdaptiveQualityController(int minQuality, int maxQuality, int maxScale, int maxFrameSkip,
+                                     long targetEncodeNanos, long maxBytesPerSecond) {
+        if (minQuality < 1 || maxQuality > 100 || minQuality > maxQuality)
+            throw new IllegalArgumentException("Неверные пределы качества: " + minQuality + ".." + maxQuality);
+        if (maxScale < 1 || maxFrameSkip < 0 || targetEncodeNanos <= 0)
+            throw new IllegalArgumentException("Неверные пределы уменьшения кадра или пропуска кадров");
+        this.minQuality = minQuality;
+        this.maxQuality = maxQuality;
+        this.maxScale = maxScale;
+        this.maxFrameSkip = maxFrameSkip;
+        this.targetEncodeNanos = targetEncodeNanos;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.quality = maxQuality;
+    }
+
+    // Вызывается на каждый кадр до сжатия: false — кадр пропустить.
+    public boolean shouldEncode() {
+        if (skipped < frameSkip) {
+            skipped++;
+            return false;
+        }
+        skipped = 0;
+        return true;
+    }
+
+    // Вызывается после сжатия кадра с текущими параметрами. sentBytes и droppedFrames — счётчики
+    // сервера с его запуска (MjpegServer.getSentBytes, getDroppedFrames): сжатые, но не ушедшие
+    // клиентам кадры поток не увеличивают, а выброшенные из очереди медленного клиента снижают параметры.
+    public void onFrameEncoded(long encodeTimeNanos, long sentBytes, long droppedFrames, long nowNanos) {
+        encodeNanos = encodeNanos == 0 ? encodeTimeNanos
+                : encodeNanos + ENCODE_SMOOTHING * (encodeTimeNanos - encodeNanos);
+
+        // Счётчики меньше прежних — сервер перезапущен, окно начинается заново.
+        if (sentBytes < windowSentBytes || droppedFrames < windowDroppedFrames)
+            windowStartNanos = 0;
+        if (windowStartNanos == 0) {
+            windowStartNanos = nowNanos;
+            windowSentBytes = sentBytes;
+            windowDroppedFrames = droppedFrames;
+            windowFrames = 0;
+            if (lastDecisionNanos == 0)
+                lastDecisionNanos = nowNanos;
+        }
+        windowFrames++;
+        long elapsed = nowNanos - windowStartNanos;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            bytesPerSecond = (sentBytes - windowSentBytes) * 1000000000L / elapsed;
+            dropRatio = (double) (droppedFrames - windowDroppedFrames) / windowFrames;
+            windowStartNanos = nowNanos;
+            windowSentBytes = sentBytes;
+            windowDroppedFrames = droppedFrames;
+            windowFrames = 0;
+        }
+
+        if (nowNanos - lastDecisionNanos < DECISION_INTERVAL_NANOS)
+            return;
+        lastDecisionNanos = nowNanos;
+
+        double load = getLoad();
+        if (load > DEGRADE_THRESHOLD)
+            degrade();
+        else if (load < RESTORE_THRESHOLD)
+            restore();
+    }
+
+    // Отношение измеренных затрат к допустимым; больше 1 — не укладываемся. Если клиенты
+    // теряли кадры, нагрузка не меньше 1 плюс доля потерянных: при потере больше десятой части
+    // кадров параметры ухудшаются, пока потери есть — не восстанавливаются.
+    public double getLoad() {
+        double load = encodeNanos / targetEncodeNanos;
+        if (maxBytesPerSecond > 0)
+            load = Math.max(load, (double) bytesPerSecond / maxBytesPerSecond);
+        if (dropRatio > 0)
+            load = Math.max(load, 1 + dropRatio);
+        return load;
+    }
+
+    private void degrade() {
+        if (quality > minQuality) {
+            quality = Math.max(minQuality, quality - QUALITY_STEP_DOWN);
+        } else if (scale * 2 <= maxScale) {
+            scale *= 2;
+        } else if (frameSkip < maxFrameSkip) {
+            frameSkip++;
+        } else {
+            return;
+        }
+        adjustments++;
+    }
+
+    private void restore() {
+        if (frameSkip > 0) {
+            frameSkip--;
+        } else if (scale > 1) {
+            scale /= 2;
+        } else if (quality < maxQuality) {
+            quality = Math.min(maxQuality, quality + QUALITY_STEP_UP);
+        } else {
+            return;
+        }
+        adjustments++;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public int getFrameSkip() {
+        return frameSkip;
+    }
+
+    public long getEncodeNanos() {
+        return (long) encodeNanos;
+    }
+
+    // Сколько байт в секунду действительно ушло клиентам.
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public double getDropRatio() {
+        return dropRatio;
+    }
+
+    // Сколько раз менялись параметры.
+    public int getAdjustments() {
+        return adjustments;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.camerastream.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Сжатый кадр, общий для всех клиентов: кодируется один раз, а заголовок части
+// multipart-ответа собирается один раз при создании. После публикации не изменяется.
+public class EncodedFrame {
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final byte[] data;
+    private final int length;
+    private final long timestampNanos;
+    private final byte[] partHeader;
+
+    public EncodedFrame(byte[] data, int length, long timestampNanos, String contentType, String boundary) {
+        this.data = data;
+        this.length = length;
+        this.timestampNanos = timestampNanos;
+        this.partHeader = ("--" + boundary + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + length + "\r\n\r\n").getBytes();
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    // Размер части вместе с заголовком, то есть сколько байт уйдёт в сеть.
+    public int getPartLength() {
+        return partHeader.length + length + CRLF.length;
+    }
+
+    void writePart(OutputStream out) throws IOException {
+        out.write(partHeader);
+        out.write(data, 0, length);
+        out.write(CRLF);
+    }
+}
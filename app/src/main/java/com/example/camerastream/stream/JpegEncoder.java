@@ -0,0 +1,659 @@
+package com.example.camerastream.stream;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Кодирование кадра NV21 в baseline JPEG 4:2:0 без YuvImage и без промежуточных потоков.
+// Таблицы квантования и Хаффмана считаются один раз на уровень качества. Кадр делится на
+// горизонтальные полосы из целых строк MCU, между полосами стоят маркеры перезапуска RSTn,
+// поэтому полосы кодируются независимо на нескольких ядрах и потом просто склеиваются.
+// Потоки устроены так же, как в ParallelYuvConverter: постоянный набор потоков разбирает полосы
+// через общий счётчик, одну полосу и всё, что не взяли потоки, кодирует вызывающий поток;
+// буферы полос растут только при первых кадрах и дальше переиспользуются.
+// Цветность NV21 уже уменьшена вдвое по обеим осям, поэтому блоки Cb и Cr берутся как есть.
+public class JpegEncoder {
+    // Кадры меньше этого числа пикселей кодируются одной полосой в вызывающем потоке.
+    public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 640 * 480;
+
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // Таблицы квантования из приложения K стандарта, в естественном порядке.
+    private static final int[] LUMA_QUANT = {
+            16, 11, 10, 16, 24, 40, 51, 61, 12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56, 14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77, 24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101, 72, 92, 95, 98, 112, 100, 103, 99
+    };
+    private static final int[] CHROMA_QUANT = {
+            17, 18, 24, 47, 99, 99, 99, 99, 18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99, 47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    // Стандартные таблицы Хаффмана: число кодов каждой длины 1..16 и значения.
+    private static final int[] DC_LUMA_BITS = {0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0};
+    private static final int[] DC_LUMA_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    private static final int[] DC_CHROMA_BITS = {0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0};
+    private static final int[] DC_CHROMA_VALUES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+    private static final int[] AC_LUMA_BITS = {0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d};
+    private static final int[] AC_LUMA_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+            0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+            0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+            0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+            0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+            0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+            0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+            0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+            0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+            0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+    private static final int[] AC_CHROMA_BITS = {0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77};
+    private static final int[] AC_CHROMA_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+            0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+            0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+            0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+            0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+            0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+            0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+            0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+            0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+            0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+            0xf9, 0xfa
+    };
+
+    // Коды Хаффмана по значению: code[value] и длина size[value].
+    private static final HuffmanTable DC_LUMA = new HuffmanTable(DC_LUMA_BITS, DC_LUMA_VALUES);
+    private static final HuffmanTable DC_CHROMA = new HuffmanTable(DC_CHROMA_BITS, DC_CHROMA_VALUES);
+    private static final HuffmanTable AC_LUMA = new HuffmanTable(AC_LUMA_BITS, AC_LUMA_VALUES);
+    private static final HuffmanTable AC_CHROMA = new HuffmanTable(AC_CHROMA_BITS, AC_CHROMA_VALUES);
+
+    // Масштаб строк и столбцов быстрого DCT (Arai, Agui, Nakajima).
+    private static final double[] AAN_SCALE = {
+            1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    // Таблицы уровня качества создаются при первом обращении.
+    private static final QualityTables[] QUALITY_TABLES = new QualityTables[101];
+
+    // Маркер, заголовок и таблицы Хаффмана не зависят ни от кадра, ни от качества.
+    private static final byte[] HUFFMAN_SEGMENT = huffmanSegment();
+
+    // Наибольший объём одного MCU (шесть блоков) с учётом вставки нулей после 0xFF.
+    private static final int MAX_MCU_BYTES = 6 * 2 * (27 + 63 * 26) / 8 + 16;
+
+    private static final class HuffmanTable {
+        final int[] bits;
+        final int[] values;
+        final int[] code = new int[256];
+        final int[] size = new int[256];
+
+        HuffmanTable(int[] bits, int[] values) {
+            this.bits = bits;
+            this.values = values;
+            int next = 0;
+            int index = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length - 1]; i++) {
+                    int value = values[index++];
+                    code[value] = next++;
+                    size[value] = length;
+                }
+                next <<= 1;
+            }
+        }
+    }
+
+    private static final class QualityTables {
+        // SOI, APP0 и DQT.
+        final byte[] header;
+        // Множители для коэффициентов быстрого DCT, в естественном порядке.
+        final float[] lumaDivisors = new float[64];
+        final float[] chromaDivisors = new float[64];
+
+        QualityTables(int quality) {
+            int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+            int[] luma = scaleTable(LUMA_QUANT, scale);
+            int[] chroma = scaleTable(CHROMA_QUANT, scale);
+            for (int row = 0; row < 8; row++)
+                for (int column = 0; column < 8; column++) {
+                    int i = row * 8 + column;
+                    double aan = AAN_SCALE[row] * AAN_SCALE[column] * 8;
+                    lumaDivisors[i] = (float) (1.0 / (luma[i] * aan));
+                    chromaDivisors[i] = (float) (1.0 / (chroma[i] * aan));
+                }
+
+            byte[] jfif = {
+                    (byte) 0xff, (byte) 0xd8,
+                    (byte) 0xff, (byte) 0xe0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0
+            };
+            header = new byte[jfif.length + 4 + 2 * 65];
+            System.arraycopy(jfif, 0, header, 0, jfif.length);
+            int offset = jfif.length;
+            header[offset++] = (byte) 0xff;
+            header[offset++] = (byte) 0xdb;
+            header[offset++] = 0;
+            header[offset++] = (byte) (2 + 2 * 65);
+            header[offset++] = 0;
+            for (int i = 0; i < 64; i++)
+                header[offset++] = (byte) luma[ZIGZAG[i]];
+            header[offset++] = 1;
+            for (int i = 0; i < 64; i++)
+                header[offset++] = (byte) chroma[ZIGZAG[i]];
+        }
+
+        private static int[] scaleTable(int[] base, int scale) {
+            int[] table = new int[64];
+            for (int i = 0; i < 64; i++)
+                table[i] = Math.max(1, Math.min(255, (base[i] * scale + 50) / 100));
+            return table;
+        }
+    }
+
+    // Полоса кадра: свой буфер, свои счётчики битов и предсказатели DC.
+    private static final class Stripe {
+        byte[] buffer = new byte[64 * 1024];
+        int length;
+        private long bitBuffer;
+        private int bitCount;
+        final float[] block = new float[64];
+        final int[] coefficients = new int[64];
+        int lastY;
+        int lastCb;
+        int lastCr;
+
+        void reset() {
+            length = 0;
+            bitBuffer = 0;
+            bitCount = 0;
+            lastY = 0;
+            lastCb = 0;
+            lastCr = 0;
+        }
+
+        void ensureCapacity(int extra) {
+            if (buffer.length - length >= extra)
+                return;
+            byte[] grown = new byte[Math.max(buffer.length * 2, length + extra)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+
+        void writeBits(int bits, int size) {
+            bitBuffer = (bitBuffer << size) | (bits & ((1 << size) - 1));
+            bitCount += size;
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                int b = (int) (bitBuffer >> bitCount) & 0xff;
+                buffer[length++] = (byte) b;
+                if (b == 0xff)
+                    buffer[length++] = 0;
+            }
+        }
+
+        // Дополняет последний байт единицами, как требует стандарт перед маркером.
+        void flush() {
+            if (bitCount > 0)
+                writeBits(0x7f, 8 - bitCount);
+        }
+    }
+
+    private final Thread[] workers;
+    private final Stripe[] stripes;
+    private final int sequentialThreshold;
+    // Номер следующей свободной полосы; после кадра он не меньше stripes.length.
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    // Сколько полос кадра ещё не закодировано, включая пустые полосы сверх stripeCount.
+    private final AtomicInteger pending = new AtomicInteger();
+    // SOF0 или SOS для записи в ByteBuffer.
+    private final byte[] segmentScratch = new byte[19];
+
+    private volatile boolean running = true;
+    private volatile int generation;
+    private volatile Thread caller;
+    private volatile RuntimeException failure;
+
+    // Параметры текущего кадра; видны потокам после записи generation.
+    private byte[] data;
+    private int width;
+    private int height;
+    private QualityTables tables;
+    private int stripeCount;
+    private int stripeRows;
+    private int mcuColumns;
+    private int mcuRows;
+    private int encodedLength;
+
+    // threadCount — общее число потоков вместе с вызывающим.
+    public JpegEncoder(int threadCount, int sequentialThreshold) {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Неверное число потоков: " + threadCount);
+        this.sequentialThreshold = sequentialThreshold;
+        stripes = new Stripe[threadCount];
+        for (int i = 0; i < threadCount; i++)
+            stripes[i] = new Stripe();
+        nextStripe.set(threadCount);
+        workers = new Thread[threadCount - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    workerLoop();
+                }
+            }, "JpegEncoder-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public int getThreadCount() {
+        return workers.length + 1;
+    }
+
+    // Кодирует кадр и возвращает размер JPEG. Результат остаётся в кодировщике до следующего
+    // вызова и записывается через writeTo, поэтому массив нужного размера можно выделить
+    // уже после кодирования.
+    public synchronized int encode(byte[] data, int width, int height, int quality) {
+        if (width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0)
+            throw new IllegalArgumentException("Неверный размер кадра NV21: " + width + "x" + height);
+        if (data.length < width * height * 3 / 2)
+            throw new IllegalArgumentException("Кадр меньше " + width + "x" + height);
+        this.data = data;
+        this.width = width;
+        this.height = height;
+        tables = getTables(quality);
+        mcuColumns = (width + 15) / 16;
+        mcuRows = (height + 15) / 16;
+        boolean parallel = workers.length > 0 && width * height >= sequentialThreshold && running;
+        int maxStripes = parallel ? stripes.length : 1;
+        stripeRows = (mcuRows + maxStripes - 1) / maxStripes;
+        stripeCount = (mcuRows + stripeRows - 1) / stripeRows;
+
+        if (stripeCount == 1) {
+            encodeStripe(0);
+        } else {
+            failure = null;
+            pending.set(stripes.length);
+            caller = Thread.currentThread();
+            // Полоса 0 — вызывающего потока, остальные разбираются с первой.
+            nextStripe.set(1);
+            generation++;
+            for (Thread worker : workers)
+                LockSupport.unpark(worker);
+            encodeClaimed(0);
+            int index;
+            while ((index = nextStripe.getAndIncrement()) < stripes.length)
+                encodeClaimed(index);
+            while (pending.get() > 0)
+                LockSupport.park(this);
+            RuntimeException error = failure;
+            if (error != null)
+                throw error;
+        }
+        this.data = null;
+
+        int length = tables.header.length + 19 + HUFFMAN_SEGMENT.length + 14 + 2;
+        if (stripeCount > 1)
+            length += 6 + 2 * (stripeCount - 1);
+        for (int i = 0; i < stripeCount; i++)
+            length += stripes[i].length;
+        encodedLength = length;
+        return length;
+    }
+
+    // Кодирует кадр сразу в out начиная с offset и возвращает размер JPEG.
+    public synchronized int encode(byte[] data, int width, int height, int quality, byte[] out, int offset) {
+        encode(data, width, height, quality);
+        return writeTo(out, offset);
+    }
+
+    // Записывает последний закодированный кадр в out начиная с offset и возвращает его размер.
+    public synchronized int writeTo(byte[] out, int offset) {
+        if (encodedLength == 0)
+            throw new IllegalStateException("Кадр ещё не закодирован");
+        if (out.length - offset < encodedLength)
+            throw new IllegalArgumentException("Буфер меньше кадра: " + (out.length - offset) + " < " + encodedLength);
+        int position = offset;
+        byte[] header = tables.header;
+        System.arraycopy(header, 0, out, position, header.length);
+        position += header.length;
+        position = writeFrameHeader(out, position);
+        System.arraycopy(HUFFMAN_SEGMENT, 0, out, position, HUFFMAN_SEGMENT.length);
+        position += HUFFMAN_SEGMENT.length;
+        if (stripeCount > 1) {
+            int interval = stripeRows * mcuColumns;
+            out[position++] = (byte) 0xff;
+            out[position++] = (byte) 0xdd;
+            out[position++] = 0;
+            out[position++] = 4;
+            out[position++] = (byte) (interval >> 8);
+            out[position++] = (byte) interval;
+        }
+        position = writeScanHeader(out, position);
+        for (int i = 0; i < stripeCount; i++) {
+            if (i > 0) {
+                out[position++] = (byte) 0xff;
+                out[position++] = (byte) (0xd0 + (i - 1) % 8);
+            }
+            Stripe stripe = stripes[i];
+            System.arraycopy(stripe.buffer, 0, out, position, stripe.length);
+            position += stripe.length;
+        }
+        out[position++] = (byte) 0xff;
+        out[position++] = (byte) 0xd9;
+        return position - offset;
+    }
+
+    // То же для ByteBuffer, в том числе прямого: кадр пишется с текущей позиции.
+    public synchronized int writeTo(ByteBuffer out) {
+        if (encodedLength == 0)
+            throw new IllegalStateException("Кадр ещё не закодирован");
+        if (out.remaining() < encodedLength)
+            throw new IllegalArgumentException("Буфер меньше кадра: " + out.remaining() + " < " + encodedLength);
+        out.put(tables.header);
+        byte[] headers = segmentScratch;
+        int length = writeFrameHeader(headers, 0);
+        out.put(headers, 0, length);
+        out.put(HUFFMAN_SEGMENT);
+        if (stripeCount > 1) {
+            int interval = stripeRows * mcuColumns;
+            out.put((byte) 0xff).put((byte) 0xdd).put((byte) 0).put((byte) 4)
+                    .put((byte) (interval >> 8)).put((byte) interval);
+        }
+        length = writeScanHeader(headers, 0);
+        out.put(headers, 0, length);
+        for (int i = 0; i < stripeCount; i++) {
+            if (i > 0)
+                out.put((byte) 0xff).put((byte) (0xd0 + (i - 1) % 8));
+            out.put(stripes[i].buffer, 0, stripes[i].length);
+        }
+        out.put((byte) 0xff).put((byte) 0xd9);
+        return encodedLength;
+    }
+
+    public synchronized int getEncodedLength() {
+        return encodedLength;
+    }
+
+    // Останавливает потоки; после этого кадры кодируются одной полосой.
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers)
+            LockSupport.unpark(worker);
+    }
+
+    // SOF0: 8 бит, три компонента, яркость 2x2, цветность 1x1.
+    private int writeFrameHeader(byte[] out, int position) {
+        out[position++] = (byte) 0xff;
+        out[position++] = (byte) 0xc0;
+        out[position++] = 0;
+        out[position++] = 17;
+        out[position++] = 8;
+        out[position++] = (byte) (height >> 8);
+        out[position++] = (byte) height;
+        out[position++] = (byte) (width >> 8);
+        out[position++] = (byte) width;
+        out[position++] = 3;
+        out[position++] = 1;
+        out[position++] = 0x22;
+        out[position++] = 0;
+        out[position++] = 2;
+        out[position++] = 0x11;
+        out[position++] = 1;
+        out[position++] = 3;
+        out[position++] = 0x11;
+        out[position++] = 1;
+        return position;
+    }
+
+    private static int writeScanHeader(byte[] out, int position) {
+        out[position++] = (byte) 0xff;
+        out[position++] = (byte) 0xda;
+        out[position++] = 0;
+        out[position++] = 12;
+        out[position++] = 3;
+        out[position++] = 1;
+        out[position++] = 0x00;
+        out[position++] = 2;
+        out[position++] = 0x11;
+        out[position++] = 3;
+        out[position++] = 0x11;
+        out[position++] = 0;
+        out[position++] = 63;
+        out[position++] = 0;
+        return position;
+    }
+
+    private static byte[] huffmanSegment() {
+        HuffmanTable[] tables = {DC_LUMA, AC_LUMA, DC_CHROMA, AC_CHROMA};
+        int[] classes = {0x00, 0x10, 0x01, 0x11};
+        int length = 2;
+        for (HuffmanTable table : tables)
+            length += 1 + 16 + table.values.length;
+        byte[] segment = new byte[2 + length];
+        int position = 0;
+        segment[position++] = (byte) 0xff;
+        segment[position++] = (byte) 0xc4;
+        segment[position++] = (byte) (length >> 8);
+        segment[position++] = (byte) length;
+        for (int t = 0; t < tables.length; t++) {
+            segment[position++] = (byte) classes[t];
+            for (int i = 0; i < 16; i++)
+                segment[position++] = (byte) tables[t].bits[i];
+            for (int value : tables[t].values)
+                segment[position++] = (byte) value;
+        }
+        return segment;
+    }
+
+    private static QualityTables getTables(int quality) {
+        quality = Math.max(1, Math.min(100, quality));
+        synchronized (QUALITY_TABLES) {
+            QualityTables tables = QUALITY_TABLES[quality];
+            if (tables == null) {
+                tables = new QualityTables(quality);
+                QUALITY_TABLES[quality] = tables;
+            }
+            return tables;
+        }
+    }
+
+    // Кодирует взятую полосу, если она есть в кадре; ошибка передаётся вызывающему потоку.
+    private void encodeClaimed(int index) {
+        try {
+            if (index < stripeCount)
+                encodeStripe(index);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            if (pending.decrementAndGet() == 0)
+                LockSupport.unpark(caller);
+        }
+    }
+
+    private void workerLoop() {
+        int seen = 0;
+        while (true) {
+            int current = generation;
+            if (current == seen) {
+                // Полосы, которые поток не успел взять до остановки, доделает вызывающий.
+                if (!running)
+                    return;
+                LockSupport.park(this);
+                continue;
+            }
+            seen = current;
+            int index;
+            while ((index = nextStripe.getAndIncrement()) < stripes.length)
+                encodeClaimed(index);
+        }
+    }
+
+    private void encodeStripe(int index) {
+        Stripe stripe = stripes[index];
+        stripe.reset();
+        int rowStart = index * stripeRows;
+        int rowEnd = Math.min(rowStart + stripeRows, mcuRows);
+        for (int row = rowStart; row < rowEnd; row++) {
+            for (int column = 0; column < mcuColumns; column++) {
+                stripe.ensureCapacity(MAX_MCU_BYTES);
+                int x = column * 16;
+                int y = row * 16;
+                for (int block = 0; block < 4; block++) {
+                    loadLuma(stripe.block, x + (block & 1) * 8, y + (block >> 1) * 8);
+                    stripe.lastY = encodeBlock(stripe, tables.lumaDivisors, stripe.lastY, DC_LUMA, AC_LUMA);
+                }
+                // В NV21 за яркостью идут пары V, U.
+                loadChroma(stripe.block, x / 2, y / 2, 1);
+                stripe.lastCb = encodeBlock(stripe, tables.chromaDivisors, stripe.lastCb, DC_CHROMA, AC_CHROMA);
+                loadChroma(stripe.block, x / 2, y / 2, 0);
+                stripe.lastCr = encodeBlock(stripe, tables.chromaDivisors, stripe.lastCr, DC_CHROMA, AC_CHROMA);
+            }
+        }
+        stripe.flush();
+    }
+
+    // Блок 8x8 яркости со сдвигом уровня; за краем кадра повторяются крайние точки.
+    private void loadLuma(float[] block, int x, int y) {
+        byte[] data = this.data;
+        int width = this.width;
+        boolean inside = x + 8 <= width && y + 8 <= height;
+        for (int row = 0; row < 8; row++) {
+            int sourceRow = inside ? y + row : Math.min(y + row, height - 1);
+            int rowOffset = sourceRow * width;
+            for (int column = 0; column < 8; column++) {
+                int sourceColumn = inside ? x + column : Math.min(x + column, width - 1);
+                block[row * 8 + column] = (data[rowOffset + sourceColumn] & 0xff) - 128;
+            }
+        }
+    }
+
+    // component: 0 — V (Cr), 1 — U (Cb).
+    private void loadChroma(float[] block, int x, int y, int component) {
+        byte[] data = this.data;
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int base = width * height + component;
+        for (int row = 0; row < 8; row++) {
+            int rowOffset = base + Math.min(y + row, chromaHeight - 1) * width;
+            for (int column = 0; column < 8; column++)
+                block[row * 8 + column] = (data[rowOffset + Math.min(x + column, chromaWidth - 1) * 2] & 0xff) - 128;
+        }
+    }
+
+    // DCT, квантование и кодирование блока. Возвращает DC для предсказания следующего блока.
+    private static int encodeBlock(Stripe stripe, float[] divisors, int lastDc, HuffmanTable dc, HuffmanTable ac) {
+        float[] block = stripe.block;
+        forwardDct(block);
+        int[] coefficients = stripe.coefficients;
+        for (int i = 0; i < 64; i++) {
+            // Округление к ближайшему, в том числе для отрицательных значений.
+            coefficients[i] = (int) (block[i] * divisors[i] + 16384.5f) - 16384;
+        }
+
+        int value = coefficients[0];
+        int difference = value - lastDc;
+        writeValue(stripe, difference, dc, 0);
+
+        int zeros = 0;
+        for (int i = 1; i < 64; i++) {
+            int coefficient = coefficients[ZIGZAG[i]];
+            if (coefficient == 0) {
+                zeros++;
+                continue;
+            }
+            while (zeros > 15) {
+                // ZRL: шестнадцать нулей подряд.
+                stripe.writeBits(ac.code[0xf0], ac.size[0xf0]);
+                zeros -= 16;
+            }
+            writeValue(stripe, coefficient, ac, zeros << 4);
+            zeros = 0;
+        }
+        if (zeros > 0)
+            stripe.writeBits(ac.code[0], ac.size[0]);
+        return value;
+    }
+
+    // Код категории (с числом нулей перед ней для AC) и сами биты значения.
+    private static void writeValue(Stripe stripe, int value, HuffmanTable table, int run) {
+        int magnitude = value < 0 ? -value : value;
+        int category = 0;
+        while (magnitude != 0) {
+            category++;
+            magnitude >>= 1;
+        }
+        int symbol = run | category;
+        stripe.writeBits(table.code[symbol], table.size[symbol]);
+        if (category > 0)
+            stripe.writeBits(value < 0 ? value - 1 : value, category);
+    }
+
+    // Быстрый DCT Arai, Agui, Nakajima в плавающей точке (как jfdctflt в libjpeg).
+    // Результат масштабирован, масштаб учтён в множителях квантования.
+    private static void forwardDct(float[] block) {
+        for (int offset = 0; offset < 64; offset += 8)
+            dct1d(block, offset, 1);
+        for (int column = 0; column < 8; column++)
+            dct1d(block, column, 8);
+    }
+
+    private static void dct1d(float[] d, int start, int step) {
+        int i0 = start;
+        int i1 = start + step;
+        int i2 = start + 2 * step;
+        int i3 = start + 3 * step;
+        int i4 = start + 4 * step;
+        int i5 = start + 5 * step;
+        int i6 = start + 6 * step;
+        int i7 = start + 7 * step;
+
+        float tmp0 = d[i0] + d[i7];
+        float tmp7 = d[i0] - d[i7];
+        float tmp1 = d[i1] + d[i6];
+        float tmp6 = d[i1] - d[i6];
+        float tmp2 = d[i2] + d[i5];
+        float tmp5 = d[i2] - d[i5];
+        float tmp3 = d[i3] + d[i4];
+        float tmp4 = d[i3] - d[i4];
+
+        // Чётная часть.
+        float tmp10 = tmp0 + tmp3;
+        float tmp13 = tmp0 - tmp3;
+        float tmp11 = tmp1 + tmp2;
+        float tmp12 = tmp1 - tmp2;
+
+        d[i0] = tmp10 + tmp11;
+        d[i4] = tmp10 - tmp11;
+        float z1 = (tmp12 + tmp13) * 0.707106781f;
+        d[i2] = tmp13 + z1;
+        d[i6] = tmp13 - z1;
+
+        // Нечётная часть.
+        tmp10 = tmp4 + tmp5;
+        tmp11 = tmp5 + tmp6;
+        tmp12 = tmp6 + tmp7;
+
+        float z5 = (tmp10 - tmp12) * 0.382683433f;
+        float z2 = 0.541196100f * tmp10 + z5;
+        float z4 = 1.306562965f * tmp12 + z5;
+        float z3 = tmp11 * 0.707106781f;
+
+        float z11 = tmp7 + z3;
+        float z13 = tmp7 - z3;
+
+        d[i5] = z13 + z2;
+        d[i3] = z13 - z2;
+        d[i1] = z11 + z4;
+        d[i7] = z11 - z4;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.camerastream.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+
+// Трансляция кадров по HTTP в формате MJPEG (multipart/x-mixed-replace): каждый кадр —
+// отдельная часть. Отставший клиент просто теряет самые старые кадры.
+public class MjpegServer extends StreamServer<EncodedFrame> {
+    public static final String BOUNDARY = "camerastream";
+    private static final String CONTENT_TYPE = "image/jpeg";
+
+    // Сервер доступен только с самого устройства (localhost, например через adb forward).
+    // port 0 — любой свободный порт, узнать его можно через getLocalPort() после start().
+    public MjpegServer(int port, int queueCapacity, int maxClients) {
+        this(loopbackAddress(), port, queueCapacity, maxClients);
+    }
+
+    // address — адрес, на котором принимать подключения; null — все адреса устройства.
+    public MjpegServer(InetAddress address, int port, int queueCapacity, int maxClients) {
+        super("MjpegServer", address, port, queueCapacity, maxClients);
+    }
+
+    // Раздаёт один и тот же сжатый кадр всем клиентам. Массив jpeg после вызова изменять нельзя.
+    // Возвращённый кадр можно разослать повторно через publish(EncodedFrame).
+    public EncodedFrame publish(byte[] jpeg, int length, long timestampNanos) {
+        EncodedFrame frame = new EncodedFrame(jpeg, length, timestampNanos, CONTENT_TYPE, BOUNDARY);
+        publish(frame);
+        return frame;
+    }
+
+    public long getPublishedFrames() {
+        return getPublishedCount();
+    }
+
+    // Кадры, выброшенные из очередей медленных клиентов.
+    public long getDroppedFrames() {
+        return getDroppedCount();
+    }
+
+    @Override
+    protected String getContentType() {
+        return "multipart/x-mixed-replace; boundary=" + BOUNDARY;
+    }
+
+    @Override
+    protected int write(EncodedFrame frame, OutputStream out) throws IOException {
+        frame.writePart(out);
+        return frame.getPartLength();
+    }
+}
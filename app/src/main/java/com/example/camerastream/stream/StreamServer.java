@@ -0,0 +1,290 @@
+package com.example.camerastream.stream;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Общая часть серверов трансляции по HTTP: приём подключений, по потоку и короткой очереди
+// на клиента, счётчики. Каждый клиент получает поток сообщений T после заголовков ответа;
+// если клиент не успевает, из его очереди выбрасываются самые старые сообщения, и остальные
+// клиенты его не ждут. Подкласс задаёт тип содержимого ответа, запись сообщения в поток
+// и при необходимости свою политику очереди клиента (createClient).
+public abstract class StreamServer<T> {
+    private static final int REQUEST_TIMEOUT_MILLIS = 5000;
+    private static final int SEND_BUFFER_SIZE = 64 * 1024;
+    // Если accept() раз за разом завершается ошибкой, повторы идут всё реже, до раза в ACCEPT_RETRY_MAX_MILLIS.
+    private static final long ACCEPT_RETRY_MIN_MILLIS = 100;
+    private static final long ACCEPT_RETRY_MAX_MILLIS = 5000;
+
+    private final String name;
+    private final InetAddress address;
+    private final int port;
+    private final int queueCapacity;
+    private final int maxClients;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<Client>();
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running;
+    private Thread acceptThread;
+
+    // name — начало имён потоков сервера; address — адрес, на котором принимать подключения,
+    // null — все адреса устройства. Проверки доступа нет, поэтому открывать сервер всей сети
+    // нужно только намеренно. port 0 — любой свободный порт, см. getLocalPort().
+    protected StreamServer(String name, InetAddress address, int port, int queueCapacity, int maxClients) {
+        this.name = name;
+        this.address = address;
+        this.port = port;
+        this.queueCapacity = queueCapacity;
+        this.maxClients = maxClients;
+    }
+
+    // InetAddress.getLoopbackAddress() появился только в API 19.
+    protected static InetAddress loopbackAddress() {
+        try {
+            return InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+        } catch (UnknownHostException e) {
+            // Адрес из четырёх байт допустим всегда.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Значение заголовка Content-Type ответа.
+    protected abstract String getContentType();
+
+    // Пишет сообщение в поток клиента и возвращает число записанных байт.
+    protected abstract int write(T message, OutputStream out) throws IOException;
+
+    // Клиент для нового подключения; подкласс может вернуть клиента со своей политикой очереди.
+    protected Client createClient(Socket socket) {
+        return new Client(socket);
+    }
+
+    // Клиент добавлен в список и сейчас начнёт получать сообщения.
+    protected void onClientAdded(Client client) {
+    }
+
+    public synchronized void start() throws IOException {
+        if (running)
+            return;
+        // Сокет открывается в вызывающем потоке, чтобы ошибка занятого порта была видна сразу.
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(address == null ? new InetSocketAddress(port) : new InetSocketAddress(address, port));
+        serverSocket = socket;
+        running = true;
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, name + "-accept");
+        acceptThread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running)
+            return;
+        running = false;
+        closeQuietly(serverSocket);
+        for (Client client : clients)
+            client.close();
+        clients.clear();
+        try {
+            acceptThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        acceptThread = null;
+    }
+
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? -1 : socket.getLocalPort();
+    }
+
+    // Есть ли кому отправлять: без клиентов кадры можно не сжимать вовсе.
+    public boolean hasClients() {
+        return !clients.isEmpty();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    // Раздаёт одно и то же сообщение всем клиентам. Изменять его после вызова нельзя.
+    public void publish(T message) {
+        publishedCount.incrementAndGet();
+        for (Client client : clients)
+            client.offer(message);
+    }
+
+    // Байты, записанные в сокеты клиентов с запуска сервера.
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    protected long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    // Сообщения, выброшенные из очередей медленных клиентов.
+    protected long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void acceptLoop() {
+        long retryMillis = ACCEPT_RETRY_MIN_MILLIS;
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                // Сокет закрыт в stop() или сам по себе — принимать больше нечего.
+                if (!running || serverSocket.isClosed())
+                    return;
+                // Ошибка печатается один раз на серию, а повторы идут всё реже.
+                if (retryMillis == ACCEPT_RETRY_MIN_MILLIS)
+                    e.printStackTrace();
+                try {
+                    Thread.sleep(retryMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                retryMillis = Math.min(retryMillis * 2, ACCEPT_RETRY_MAX_MILLIS);
+                continue;
+            }
+            retryMillis = ACCEPT_RETRY_MIN_MILLIS;
+            if (clients.size() >= maxClients) {
+                closeQuietly(socket);
+                continue;
+            }
+            Client client = createClient(socket);
+            clients.add(client);
+            onClientAdded(client);
+            client.start();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeQuietly(ServerSocket socket) {
+        if (socket == null)
+            return;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Подключённый клиент со своим потоком. offer() вызывается только из publish().
+    protected class Client implements Runnable {
+        private final Socket socket;
+        private final ArrayBlockingQueue<T> queue = new ArrayBlockingQueue<T>(queueCapacity);
+        private volatile boolean open = true;
+
+        protected Client(Socket socket) {
+            this.socket = socket;
+        }
+
+        void start() {
+            new Thread(this, name + "-" + socket.getRemoteSocketAddress()).start();
+        }
+
+        // Ставит сообщение в очередь, вытесняя самые старые.
+        protected void offer(T message) {
+            while (!enqueue(message)) {
+                if (queue.poll() != null)
+                    droppedCount.incrementAndGet();
+            }
+        }
+
+        // Ставит сообщение в очередь; false, если она заполнена.
+        protected final boolean enqueue(T message) {
+            return queue.offer(message);
+        }
+
+        // Выбрасывает все неотправленные сообщения.
+        protected final void dropQueued() {
+            while (queue.poll() != null)
+                droppedCount.incrementAndGet();
+        }
+
+        // Сообщение выброшено, не попав в очередь.
+        protected final void countDropped() {
+            droppedCount.incrementAndGet();
+        }
+
+        void close() {
+            open = false;
+            closeQuietly(socket);
+        }
+
+        @Override
+        public void run() {
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+                readRequest();
+
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream(), SEND_BUFFER_SIZE);
+                out.write(("HTTP/1.0 200 OK\r\n"
+                        + "Cache-Control: no-cache, no-store, must-revalidate\r\n"
+                        + "Pragma: no-cache\r\n"
+                        + "Connection: close\r\n"
+                        + "Content-Type: " + getContentType() + "\r\n\r\n").getBytes());
+                out.flush();
+
+                while (open && running) {
+                    T message = queue.poll(1, TimeUnit.SECONDS);
+                    if (message == null)
+                        continue;
+                    int length = write(message, out);
+                    out.flush();
+                    sentBytes.addAndGet(length);
+                }
+            } catch (SocketException e) {
+                // Клиент отключился.
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                clients.remove(this);
+                close();
+            }
+        }
+
+        // Запрос не разбирается: любой путь получает поток сообщений. Читаем до пустой строки,
+        // чтобы клиент не получил ответ раньше, чем закончит отправлять заголовки.
+        private void readRequest() throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                // Заголовки не нужны.
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.camerastream.stream;
+
+// Трансляция изменений: кадр NV21 делится на квадратные плитки, каждая сравнивается с тем, что
+// клиенты получили последним, и сжимаются только изменившиеся. Соседние изменившиеся плитки
+// одного ряда сжимаются одним JPEG, чтобы не платить за заголовок на каждую. Время от времени,
+// при смене размера или по просьбе сервера (новый или отставший клиент) отправляется ключевой
+// кадр — весь кадр одним JPEG.
+//
+// Сообщение (все числа big-endian, как у DataOutputStream):
+//   int    MAGIC
+//   byte   KEYFRAME или DELTA
+//   short  ширина кадра, short высота кадра
+//   long   время кадра, нс
+//   short  число областей
+//   для каждой области: short x, short y, short ширина, short высота, int длина, JPEG
+// Клиент рисует области поверх прошлой картинки; ключевой кадр начинает картинку заново.
+public class TileDeltaEncoder {
+    public static final int MAGIC = 0x4353544c;
+    public static final int KEYFRAME = 1;
+    public static final int DELTA = 2;
+    public static final int HEADER_LENGTH = 4 + 1 + 2 + 2 + 8 + 2;
+    public static final int REGION_HEADER_LENGTH = 2 * 4 + 4;
+
+    private final JpegEncoder encoder;
+    private final int tileSize;
+    private final int pixelThreshold;
+    private final int minChangedPixels;
+    private final long keyframeIntervalNanos;
+
+    // Кадр в том виде, в каком его видят клиенты (до сжатия): с ним сравнивается новый кадр.
+    private byte[] reference;
+    private int width;
+    private int height;
+    private long keyframeNanos;
+    private boolean[] changed;
+    private byte[] tile;
+    private byte[] message = new byte[64 * 1024];
+    private int length;
+
+    private long keyframes;
+    private long deltaFrames;
+    private long unchangedFrames;
+    private long sentTiles;
+    private long totalTiles;
+    private long sentBytes;
+    private long fullFrameBytes;
+    private int lastKeyframeLength;
+
+    // tileSize — сторона плитки, кратная 16; точка считается изменившейся, если яркость или
+    // цветность отличается больше чем на pixelThreshold, плитка — если таких точек среди
+    // проверенных не меньше minChangedPixels. keyframeIntervalNanos — как часто слать весь кадр.
+    public TileDeltaEncoder(JpegEncoder encoder, int tileSize, int pixelThreshold, int minChangedPixels,
+                            long keyframeIntervalNanos) {
+        if (tileSize <= 0 || tileSize % 16 != 0)
+            throw new IllegalArgumentException("Сторона плитки должна быть кратна 16: " + tileSize);
+        this.encoder = encoder;
+        this.tileSize = tileSize;
+        this.pixelThreshold = pixelThreshold;
+        this.minChangedPixels = Math.max(1, minChangedPixels);
+        this.keyframeIntervalNanos = keyframeIntervalNanos;
+    }
+
+    // Сжимает изменения кадра и возвращает сообщение для клиентов или null, если ничего
+    // не изменилось. Массив свой у каждого сообщения, его можно отдавать серверу.
+    public byte[] encode(byte[] data, int width, int height, int quality, long timestampNanos, boolean forceKeyframe) {
+        if ((width & 1) != 0 || (height & 1) != 0 || width > 0xffff || height > 0xffff)
+            throw new IllegalArgumentException("Неверный размер кадра NV21: " + width + "x" + height);
+        int frameSize = width * height * 3 / 2;
+        boolean keyframe = forceKeyframe || reference == null || width != this.width || height != this.height
+                || timestampNanos - keyframeNanos >= keyframeIntervalNanos;
+        if (keyframe) {
+            if (reference == null || reference.length < frameSize)
+                reference = new byte[frameSize];
+            this.width = width;
+            this.height = height;
+            int columns = (width + tileSize - 1) / tileSize;
+            int rows = (height + tileSize - 1) / tileSize;
+            if (changed == null || changed.length < columns * rows)
+                changed = new boolean[columns * rows];
+            encodeKeyframe(data, quality, timestampNanos);
+            keyframeNanos = timestampNanos;
+            System.arraycopy(data, 0, reference, 0, frameSize);
+            keyframes++;
+            lastKeyframeLength = length;
+        } else if (!encodeDelta(data, quality, timestampNanos)) {
+            unchangedFrames++;
+            fullFrameBytes += lastKeyframeLength;
+            return null;
+        } else {
+            deltaFrames++;
+        }
+        sentBytes += length;
+        // Без плиток каждый кадр ушёл бы целиком; его размер оценивается по ключевому кадру.
+        fullFrameBytes += lastKeyframeLength;
+        byte[] result = new byte[length];
+        System.arraycopy(message, 0, result, 0, length);
+        return result;
+    }
+
+    public static boolean isKeyframe(byte[] message) {
+        return message.length > 4 && message[4] == KEYFRAME;
+    }
+
+    private void encodeKeyframe(byte[] data, int quality, long timestampNanos) {
+        int size = encoder.encode(data, width, height, quality);
+        writeHeader(KEYFRAME, timestampNanos, 1);
+        ensureCapacity(REGION_HEADER_LENGTH + size);
+        writeRegionHeader(0, 0, width, height, size);
+        length += encoder.writeTo(message, length);
+    }
+
+    // Возвращает false, если не изменилась ни одна плитка.
+    private boolean encodeDelta(byte[] data, int quality, long timestampNanos) {
+        int columns = (width + tileSize - 1) / tileSize;
+        int rows = (height + tileSize - 1) / tileSize;
+        int changedCount = 0;
+        for (int row = 0; row < rows; row++)
+            for (int column = 0; column < columns; column++) {
+                boolean tileChanged = isChanged(data, column * tileSize, row * tileSize);
+                changed[row * columns + column] = tileChanged;
+                if (tileChanged)
+                    changedCount++;
+            }
+        totalTiles += columns * rows;
+        if (changedCount == 0)
+            return false;
+        sentTiles += changedCount;
+
+        int regions = 0;
+        writeHeader(DELTA, timestampNanos, 0);
+        for (int row = 0; row < rows; row++) {
+            int column = 0;
+            while (column < columns) {
+                if (!changed[row * columns + column]) {
+                    column++;
+                    continue;
+                }
+                int first = column;
+                while (column < columns && changed[row * columns + column])
+                    column++;
+                int x = first * tileSize;
+                int y = row * tileSize;
+                encodeRegion(data, x, y, Math.min(column * tileSize, width) - x,
+                        Math.min(y + tileSize, height) - y, quality);
+                regions++;
+            }
+        }
+        message[HEADER_LENGTH - 2] = (byte) (regions >> 8);
+        message[HEADER_LENGTH - 1] = (byte) regions;
+        return true;
+    }
+
+    // Сравнивает плитку с опорным кадром через точку по каждой оси: для плитки этого хватает,
+    // а читается вчетверо меньше.
+    private boolean isChanged(byte[] data, int x, int y) {
+        int right = Math.min(x + tileSize, width);
+        int bottom = Math.min(y + tileSize, height);
+        byte[] reference = this.reference;
+        int changedPixels = 0;
+        for (int row = y; row < bottom; row += 2) {
+            int index = row * width + x;
+            int end = row * width + right;
+            for (; index < end; index += 2) {
+                if (Math.abs((data[index] & 0xff) - (reference[index] & 0xff)) > pixelThreshold
+                        && ++changedPixels >= minChangedPixels)
+                    return true;
+            }
+        }
+        // Цветность: пары V, U за яркостью, вдвое реже по обеим осям.
+        int chroma = width * height;
+        for (int row = y / 2; row < bottom / 2; row += 2) {
+            int index = chroma + row * width + x;
+            int end = chroma + row * width + right;
+            for (; index < end; index += 4) {
+                if ((Math.abs((data[index] & 0xff) - (reference[index] & 0xff)) > pixelThreshold
+                        || Math.abs((data[index + 1] & 0xff) - (reference[index + 1] & 0xff)) > pixelThreshold)
+                        && ++changedPixels >= minChangedPixels)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    // Вырезает область в отдельный кадр NV21, сжимает её и переносит в опорный кадр.
+    private void encodeRegion(byte[] data, int x, int y, int regionWidth, int regionHeight, int quality) {
+        int size = regionWidth * regionHeight * 3 / 2;
+        if (tile == null || tile.length < size)
+            tile = new byte[size];
+        int chroma = width * height;
+        int tileChroma = regionWidth * regionHeight;
+        for (int row = 0; row < regionHeight; row++) {
+            int offset = (y + row) * width + x;
+            System.arraycopy(data, offset, tile, row * regionWidth, regionWidth);
+            System.arraycopy(data, offset, reference, offset, regionWidth);
+        }
+        for (int row = 0; row < regionHeight / 2; row++) {
+            int offset = chroma + (y / 2 + row) * width + x;
+            System.arraycopy(data, offset, tile, tileChroma + row * regionWidth, regionWidth);
+            System.arraycopy(data, offset, reference, offset, regionWidth);
+        }
+        int encoded = encoder.encode(tile, regionWidth, regionHeight, quality);
+        ensureCapacity(REGION_HEADER_LENGTH + encoded);
+        writeRegionHeader(x, y, regionWidth, regionHeight, encoded);
+        length += encoder.writeTo(message, length);
+    }
+
+    private void writeHeader(int type, long timestampNanos, int regions) {
+        length = 0;
+        writeInt(MAGIC);
+        message[length++] = (byte) type;
+        writeShort(width);
+        writeShort(height);
+        writeInt((int) (timestampNanos >>> 32));
+        writeInt((int) timestampNanos);
+        writeShort(regions);
+    }
+
+    private void writeRegionHeader(int x, int y, int regionWidth, int regionHeight, int size) {
+        writeShort(x);
+        writeShort(y);
+        writeShort(regionWidth);
+        writeShort(regionHeight);
+        writeInt(size);
+    }
+
+    private void writeShort(int value) {
+        message[length++] = (byte) (value >> 8);
+        message[length++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        message[length++] = (byte) (value >> 24);
+        message[length++] = (byte) (value >> 16);
+        message[length++] = (byte) (value >> 8);
+        message[length++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (message.length - length >= extra)
+            return;
+        byte[] grown = new byte[Math.max(message.length * 2, length + extra)];
+        System.arraycopy(message, 0, grown, 0, length);
+        message = grown;
+    }
+
+    public long getKeyframes() {
+        return keyframes;
+    }
+
+    public long getDeltaFrames() {
+        return deltaFrames;
+    }
+
+    // Кадры без изменений, по которым ничего не отправлено.
+    public long getUnchangedFrames() {
+        return unchangedFrames;
+    }
+
+    // Отправленные плитки из всех проверенных в кадрах-изменениях.
+    public long getSentTiles() {
+        return sentTiles;
+    }
+
+    public long getTotalTiles() {
+        return totalTiles;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    // Сколько ушло бы, если бы каждый кадр отправлялся целиком.
+    public long getFullFrameBytes() {
+        return fullFrameBytes;
+    }
+
+    // Доля трафика, сэкономленная по сравнению с отправкой целых кадров, в процентах.
+    public int getSavedPercent() {
+        return fullFrameBytes == 0 ? 0 : (int) (100 - sentBytes * 100 / fullFrameBytes);
+    }
+
+    public void appendSummary(StringBuilder out) {
+        out.append("плитки: ключевых ").append(keyframes)
+                .append(", изменений ").append(deltaFrames)
+                .append(", без изменений ").append(unchangedFrames)
+                .append(", плиток ").append(sentTiles).append('/').append(totalTiles)
+                .append(", сэкономлено ").append(getSavedPercent()).append('%');
+    }
+}
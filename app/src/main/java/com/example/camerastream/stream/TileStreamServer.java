@@ -0,0 +1,90 @@
+package com.example.camerastream.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Трансляция изменений кадра (сообщения TileDeltaEncoder) по HTTP: после заголовков ответа
+// сообщения идут подряд. Сообщение об изменениях нельзя просто выбросить, как кадр MJPEG:
+// картинка у клиента разойдётся с кадром. Поэтому отставший клиент теряет всю очередь и ждёт
+// ключевого кадра, а сервер просит его у кодировщика; новый клиент тоже начинает с ключевого кадра.
+public class TileStreamServer extends StreamServer<byte[]> {
+    public static final String CONTENT_TYPE = "application/x-camerastream-tiles";
+
+    private final AtomicBoolean keyframeRequested = new AtomicBoolean();
+
+    // Сервер доступен только с самого устройства (localhost, например через adb forward).
+    // port 0 — любой свободный порт, узнать его можно через getLocalPort() после start().
+    public TileStreamServer(int port, int queueCapacity, int maxClients) {
+        this(loopbackAddress(), port, queueCapacity, maxClients);
+    }
+
+    // address — адрес, на котором принимать подключения; null — все адреса устройства.
+    public TileStreamServer(InetAddress address, int port, int queueCapacity, int maxClients) {
+        super("TileStreamServer", address, port, queueCapacity, maxClients);
+    }
+
+    // Нужен ли ключевой кадр; вызов снимает просьбу, поэтому кадр нужно отправить.
+    public boolean takeKeyframeRequest() {
+        return keyframeRequested.getAndSet(false);
+    }
+
+    public long getPublishedMessages() {
+        return getPublishedCount();
+    }
+
+    // Сообщения, выброшенные из очередей отставших клиентов.
+    public long getDroppedMessages() {
+        return getDroppedCount();
+    }
+
+    @Override
+    protected String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    protected int write(byte[] message, OutputStream out) throws IOException {
+        out.write(message);
+        return message.length;
+    }
+
+    @Override
+    protected Client createClient(Socket socket) {
+        return new TileClient(socket);
+    }
+
+    // Просьба идёт после добавления клиента, чтобы ключевой кадр его уже застал.
+    @Override
+    protected void onClientAdded(Client client) {
+        keyframeRequested.set(true);
+    }
+
+    private class TileClient extends Client {
+        // Изменения бесполезны, пока клиент не получил ключевой кадр. Меняется только в publish().
+        private boolean awaitingKeyframe = true;
+
+        TileClient(Socket socket) {
+            super(socket);
+        }
+
+        @Override
+        protected void offer(byte[] message) {
+            if (TileDeltaEncoder.isKeyframe(message)) {
+                // Ключевой кадр делает ненужным всё, что ещё не отправлено.
+                dropQueued();
+                awaitingKeyframe = false;
+            } else if (awaitingKeyframe) {
+                return;
+            }
+            if (!enqueue(message)) {
+                dropQueued();
+                countDropped();
+                awaitingKeyframe = true;
+                keyframeRequested.set(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.camerastream.analysis;
+
+import com.example.camerastream.frame.YuvConverter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Детектор движения на искусственных последовательностях кадров: шум и медленное изменение
+// освещения движением не считаются, перемещающиеся яркие квадраты — считаются.
+public class MotionDetectorTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final long FRAME_NANOS = 33000000L;
+    private static final long HOLD_NANOS = 5 * FRAME_NANOS;
+    private static final int SQUARE = 220;
+
+    // Запоминает время начала и конца движения.
+    private static class RecordingListener implements MotionDetector.Listener {
+        final List<Long> started = new ArrayList<Long>();
+        final List<Long> stopped = new ArrayList<Long>();
+
+        @Override
+        public void onMotionStarted(long timestampNanos) {
+            started.add(timestampNanos);
+        }
+
+        @Override
+        public void onMotionStopped(long timestampNanos) {
+            stopped.add(timestampNanos);
+        }
+    }
+
+    @Test
+    public void noiseIsNotMotion() {
+        MotionDetector detector = new MotionDetector(8, 6, 3, HOLD_NANOS);
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            byte[] data = blank(YuvConverter.NV21, 100);
+            for (int p = 0; p < WIDTH * HEIGHT; p++)
+                data[p] = (byte) (100 + random.nextInt(11) - 5);
+            assertFalse("кадр " + i, detector.process(data, YuvConverter.NV21, WIDTH, HEIGHT, i * FRAME_NANOS));
+        }
+        assertEquals(0, detector.getMotionFrames());
+    }
+
+    @Test
+    public void slowLightingChangeIsNotMotion() {
+        MotionDetector detector = new MotionDetector(8, 6, 2, HOLD_NANOS);
+        for (int i = 0; i < 120; i++) {
+            assertFalse("кадр " + i, detector.process(blank(YuvConverter.NV21, 60 + i),
+                    YuvConverter.NV21, WIDTH, HEIGHT, i * FRAME_NANOS));
+        }
+    }
+
+    @Test
+    public void movingSquareStartsAndStopsMotion() {
+        MotionDetector detector = new MotionDetector(8, 6, 3, HOLD_NANOS);
+        RecordingListener listener = new RecordingListener();
+        detector.setListener(listener);
+        long time = 0;
+        for (int i = 0; i < 10; i++, time += FRAME_NANOS)
+            assertFalse(detector.process(blank(YuvConverter.NV21, 60), YuvConverter.NV21, WIDTH, HEIGHT, time));
+
+        // Квадрат в одну ячейку (8x8 точек) идёт слева направо по строке ячеек.
+        long firstMotion = time;
+        for (int column = 1; column < 6; column++, time += FRAME_NANOS) {
+            byte[] data = frame(YuvConverter.NV21, 60, SQUARE, column * 8, 16, 8, 8);
+            assertTrue("столбец " + column, detector.process(data, YuvConverter.NV21, WIDTH, HEIGHT, time));
+            assertEquals(1, detector.getRegionCount());
+            assertTrue(detector.isCellChanged(column, 2));
+            assertEquals(column * 8, detector.getRegionLeft(0));
+            assertEquals(16, detector.getRegionTop(0));
+        }
+        long lastMotion = time - FRAME_NANOS;
+        assertEquals(Arrays.asList(firstMotion), listener.started);
+
+        // Сцена снова пуста: движение держится ещё HOLD_NANOS после последнего кадра с ним.
+        while (detector.isMotion()) {
+            detector.process(blank(YuvConverter.NV21, 60), YuvConverter.NV21, WIDTH, HEIGHT, time);
+            time += FRAME_NANOS;
+        }
+        assertEquals(1, listener.stopped.size());
+        long stoppedAt = listener.stopped.get(0);
+        assertTrue("движение закончилось через " + (stoppedAt - lastMotion) + " нс",
+                stoppedAt - lastMotion >= HOLD_NANOS && stoppedAt - lastMotion < HOLD_NANOS + FRAME_NANOS);
+        assertEquals(1, listener.started.size());
+    }
+
+    @Test
+    public void separateSquaresAreSeparateRegions() {
+        MotionDetector detector = new MotionDetector(8, 6, 3, HOLD_NANOS);
+        detector.process(blank(YuvConverter.NV21, 60), YuvConverter.NV21, WIDTH, HEIGHT, 0);
+        // Квадрат 2x2 ячейки в левом верхнем углу и одна ячейка в правом нижнем.
+        byte[] data = frame(YuvConverter.NV21, 60, SQUARE, 0, 0, 16, 16, 56, 40, 8, 8);
+        assertTrue(detector.process(data, YuvConverter.NV21, WIDTH, HEIGHT, FRAME_NANOS));
+        assertEquals(5, detector.getChangedCells());
+        assertEquals(2, detector.getRegionCount());
+        int large = detector.getRegionCells(0) == 4 ? 0 : 1;
+        assertEquals(4, detector.getRegionCells(large));
+        assertEquals(0, detector.getRegionLeft(large));
+        assertEquals(16, detector.getRegionRight(large));
+        assertEquals(16, detector.getRegionBottom(large));
+        assertEquals(1, detector.getRegionCells(1 - large));
+        assertEquals(56, detector.getRegionLeft(1 - large));
+        assertEquals(WIDTH, detector.getRegionRight(1 - large));
+        assertEquals(HEIGHT, detector.getRegionBottom(1 - large));
+    }
+
+    @Test
+    public void minChangedCellsIgnoresSmallChanges() {
+        MotionDetector detector = new MotionDetector(8, 6, 3, HOLD_NANOS);
+        detector.setMinChangedCells(2);
+        detector.process(blank(YuvConverter.NV21, 60), YuvConverter.NV21, WIDTH, HEIGHT, 0);
+        assertFalse(detector.process(frame(YuvConverter.NV21, 60, SQUARE, 8, 8, 8, 8),
+                YuvConverter.NV21, WIDTH, HEIGHT, FRAME_NANOS));
+        assertEquals(1, detector.getChangedCells());
+    }
+
+    @Test
+    public void sensitivityChangesThreshold() {
+        MotionDetector detector = new MotionDetector(8, 6, 3, HOLD_NANOS);
+        detector.setSensitivity(0);
+        detector.process(blank(YuvConverter.NV21, 60), YuvConverter.NV21, WIDTH, HEIGHT, 0);
+        // Разница в 40 уровней меньше порога наименьшей чувствительности.
+        assertFalse(detector.process(frame(YuvConverter.NV21, 60, 100, 0, 0, 8, 8),
+                YuvConverter.NV21, WIDTH, HEIGHT, FRAME_NANOS));
+        detector.setSensitivity(100);
+        assertTrue(detector.process(frame(YuvConverter.NV21, 60, 100, 0, 0, 8, 8),
+                YuvConverter.NV21, WIDTH, HEIGHT, 2 * FRAME_NANOS));
+    }
+
+    @Test
+    public void yuy2MatchesNv21() {
+        MotionDetector nv21 = new MotionDetector(8, 6, 3, HOLD_NANOS);
+        MotionDetector yuy2 = new MotionDetector(8, 6, 3, HOLD_NANOS);
+        for (int i = 0; i < 8; i++) {
+            int x = i * 8;
+            nv21.process(frame(YuvConverter.NV21, 70, SQUARE, x, 24, 8, 16), YuvConverter.NV21, WIDTH, HEIGHT, i * FRAME_NANOS);
+            yuy2.process(frame(YuvConverter.YUY2, 70, SQUARE, x, 24, 8, 16), YuvConverter.YUY2, WIDTH, HEIGHT, i * FRAME_NANOS);
+            assertEquals("кадр " + i, nv21.getChangedCells(), yuy2.getChangedCells());
+            for (int row = 0; row < 6; row++)
+                for (int column = 0; column < 8; column++)
+                    assertEquals(nv21.isCellChanged(column, row), yuy2.isCellChanged(column, row));
+        }
+    }
+
+    @Test
+    public void newFrameSizeResetsBackground() {
+        MotionDetector detector = new MotionDetector(8, 6, 3, HOLD_NANOS);
+        detector.process(blank(YuvConverter.NV21, 60), YuvConverter.NV21, WIDTH, HEIGHT, 0);
+        byte[] data = new byte[WIDTH * 2 * HEIGHT * 2 * 3 / 2];
+        Arrays.fill(data, (byte) 200);
+        assertFalse(detector.process(data, YuvConverter.NV21, WIDTH * 2, HEIGHT * 2, FRAME_NANOS));
+    }
+
+    private static byte[] blank(int format, int background) {
+        return frame(format, background, background);
+    }
+
+    // Кадр с яркостью background и квадратами яркости brightness: по четыре числа x, y,
+    // ширина, высота на квадрат.
+    private static byte[] frame(int format, int background, int brightness, int... squares) {
+        int[] luma = new int[WIDTH * HEIGHT];
+        Arrays.fill(luma, background);
+        for (int s = 0; s < squares.length; s += 4) {
+            for (int y = squares[s + 1]; y < squares[s + 1] + squares[s + 3]; y++)
+                for (int x = squares[s]; x < squares[s] + squares[s + 2]; x++)
+                    luma[y * WIDTH + x] = brightness;
+        }
+        byte[] data;
+        if (format == YuvConverter.YUY2) {
+            data = new byte[WIDTH * HEIGHT * 2];
+            Arrays.fill(data, (byte) 128);
+            for (int i = 0; i < luma.length; i++)
+                data[i * 2] = (byte) luma[i];
+        } else {
+            data = new byte[WIDTH * HEIGHT * 3 / 2];
+            Arrays.fill(data, (byte) 128);
+            for (int i = 0; i < luma.length; i++)
+                data[i] = (byte) luma[i];
+        }
+        return data;
+    }
+}
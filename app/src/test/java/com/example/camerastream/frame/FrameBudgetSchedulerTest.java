@@ -0,0 +1,153 @@
+package com.example.camerastream.frame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Планировщик на 30 к/с и одно ядро: бюджет кадра около 33 мс. Время кадров задаётся тестом,
+// уровни пересматриваются раз в EVALUATE_INTERVAL_NANOS.
+public class FrameBudgetSchedulerTest {
+    private static final long MILLIS = 1000000L;
+
+    private FrameBudgetScheduler scheduler;
+    private FrameBudgetScheduler.Stage display;
+    private FrameBudgetScheduler.Stage stream;
+    private FrameBudgetScheduler.Stage record;
+    private FrameBudgetScheduler.Stage analysis;
+    // Изменения в виде «ступень:было>стало@мс».
+    private final List<String> changes = new ArrayList<String>();
+    private long now;
+
+    @Before
+    public void createScheduler() {
+        scheduler = new FrameBudgetScheduler(30, 1);
+        scheduler.setListener(new FrameBudgetScheduler.Listener() {
+            @Override
+            public void onStageChanged(FrameBudgetScheduler.Stage stage, int previousLevel, int loadPercent) {
+                changes.add(stage.getName() + ":" + previousLevel + ">" + stage.getLevel() + "@" + now / MILLIS);
+            }
+        });
+        display = scheduler.addStage("показ", false);
+        stream = scheduler.addStage("трансляция", true);
+        record = scheduler.addStage("запись", true);
+        analysis = scheduler.addStage("анализ", true);
+    }
+
+    // Показ сам занимает больше бюджета: ступени отключаются от последней к первой,
+    // каждая проходит все уровни, а показ не трогается.
+    @Test
+    public void degradesFromLowestPriority() {
+        settle(display, 40 * MILLIS);
+        settle(stream, MILLIS);
+        settle(record, MILLIS);
+        settle(analysis, MILLIS);
+        evaluate(14);
+        assertEquals(Arrays.asList(
+                "анализ:0>1@0", "анализ:1>2@500", "анализ:2>3@1000", "анализ:3>4@1500",
+                "запись:0>1@2000", "запись:1>2@2500", "запись:2>3@3000", "запись:3>4@3500",
+                "трансляция:0>1@4000", "трансляция:1>2@4500", "трансляция:2>3@5000", "трансляция:3>4@5500"),
+                changes);
+        assertEquals(0, display.getLevel());
+        assertEquals(0, analysis.getDecimation());
+        assertTrue(scheduler.getLoadPercent() > FrameBudgetScheduler.DEGRADE_LOAD);
+    }
+
+    // Между RESTORE_LOAD и DEGRADE_LOAD уровни не меняются ни в одну сторону.
+    @Test
+    public void holdsBetweenThresholds() {
+        settle(display, 20 * MILLIS);
+        settle(analysis, 12 * MILLIS);
+        // 60% + 36%: анализ прореживается до каждого второго кадра, нагрузка 78%.
+        evaluate(1);
+        assertEquals(Arrays.asList("анализ:0>1@0"), changes);
+        evaluate(20);
+        assertEquals(1, changes.size());
+        assertEquals(78, scheduler.getLoadPercent());
+
+        // С возвращённым анализом нагрузка была бы 69%.
+        settle(analysis, 3 * MILLIS);
+        evaluate(1);
+        assertEquals("анализ:1>0@10500", changes.get(1));
+        assertEquals(0, analysis.getLevel());
+    }
+
+    // После любого изменения ступень возвращается не раньше, чем через RESTORE_HOLD_NANOS.
+    @Test
+    public void waitsBeforeRestoring() {
+        settle(display, 20 * MILLIS);
+        settle(analysis, 12 * MILLIS);
+        evaluate(1);
+        settle(analysis, MILLIS);
+        long holdSteps = FrameBudgetScheduler.RESTORE_HOLD_NANOS / FrameBudgetScheduler.EVALUATE_INTERVAL_NANOS;
+        evaluate((int) holdSteps - 1);
+        assertEquals(1, analysis.getLevel());
+        evaluate(1);
+        assertEquals(0, analysis.getLevel());
+        assertEquals("анализ:1>0@" + FrameBudgetScheduler.RESTORE_HOLD_NANOS / MILLIS, changes.get(1));
+    }
+
+    // Возвращаются сначала более важные ступени, по уровню за раз и каждый раз после выдержки.
+    @Test
+    public void restoresFromHighestPriority() {
+        settle(display, 40 * MILLIS);
+        settle(stream, MILLIS);
+        settle(record, MILLIS);
+        settle(analysis, MILLIS);
+        evaluate(10);
+        assertEquals(2, stream.getLevel());
+        assertEquals(4, record.getLevel());
+        assertEquals(4, analysis.getLevel());
+
+        settle(display, MILLIS);
+        changes.clear();
+        evaluate(50);
+        List<String> expected = new ArrayList<String>();
+        String[] order = {"трансляция:2>1", "трансляция:1>0", "запись:4>3", "запись:3>2", "запись:2>1", "запись:1>0",
+                "анализ:4>3", "анализ:3>2", "анализ:2>1", "анализ:1>0"};
+        long at = 4500 + FrameBudgetScheduler.RESTORE_HOLD_NANOS / MILLIS;
+        for (String change : order) {
+            expected.add(change + "@" + at);
+            at += FrameBudgetScheduler.RESTORE_HOLD_NANOS / MILLIS;
+        }
+        assertEquals(expected, changes);
+    }
+
+    // Уровень n пропускает кадры, кроме каждого 2^n-го, последний уровень — все.
+    @Test
+    public void levelDecimatesFrames() {
+        settle(display, 30 * MILLIS);
+        settle(analysis, 40 * MILLIS);
+        evaluate(2);
+        assertEquals(2, analysis.getLevel());
+        assertEquals(4, analysis.getDecimation());
+        for (long sequence = 0; sequence < 16; sequence++)
+            assertEquals("кадр " + sequence, sequence % 4 == 0, analysis.shouldRun(sequence));
+        assertEquals(12, analysis.getSkippedFrames());
+        assertTrue(display.shouldRun(1));
+
+        evaluate(2);
+        assertEquals(FrameBudgetScheduler.SKIP_LEVEL, analysis.getLevel());
+        assertFalse(analysis.shouldRun(0));
+    }
+
+    // Скользящее среднее сходится к постоянному времени обработки.
+    private static void settle(FrameBudgetScheduler.Stage stage, long nanos) {
+        for (int i = 0; i < 300; i++)
+            stage.record(nanos);
+    }
+
+    // count пересмотров подряд; первый — в текущее время.
+    private void evaluate(int count) {
+        for (int i = 0; i < count; i++) {
+            scheduler.onFrame(now);
+            now += FrameBudgetScheduler.EVALUATE_INTERVAL_NANOS;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.camerastream.frame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FrameBufferPoolTest {
+    // Приёмник вместо камеры: запоминает отданные буферы.
+    private static class RecordingSink implements FrameBufferPool.BufferSink {
+        final List<byte[]> buffers = new ArrayList<byte[]>();
+
+        @Override
+        public synchronized void addBuffer(byte[] buffer) {
+            buffers.add(buffer);
+        }
+    }
+
+    @Test
+    public void startHandsOutAllBuffers() {
+        RecordingSink sink = new RecordingSink();
+        FrameBufferPool pool = new FrameBufferPool(12, 3, sink);
+        pool.start();
+        assertEquals(3, sink.buffers.size());
+        assertEquals(12, sink.buffers.get(0).length);
+        assertEquals(3, pool.getQueuedCount());
+    }
+
+    @Test
+    public void recycleReturnsSameBuffer() {
+        RecordingSink sink = new RecordingSink();
+        FrameBufferPool pool = new FrameBufferPool(12, 2, sink);
+        pool.start();
+        byte[] buffer = sink.buffers.get(0);
+        pool.onFrameReceived(buffer);
+        assertEquals(1, pool.getQueuedCount());
+        pool.recycle(buffer);
+        assertEquals(2, pool.getQueuedCount());
+        assertSame(buffer, sink.buffers.get(2));
+        assertEquals(1, pool.getReceivedFrames());
+    }
+
+    @Test
+    public void dropCountsAndReturnsBuffer() {
+        RecordingSink sink = new RecordingSink();
+        FrameBufferPool pool = new FrameBufferPool(12, 1, sink);
+        pool.start();
+        byte[] buffer = sink.buffers.get(0);
+        pool.onFrameReceived(buffer);
+        pool.drop(buffer);
+        assertEquals(1, pool.getDroppedFrames());
+        assertEquals(2, sink.buffers.size());
+    }
+
+    @Test
+    public void exhaustionCountedWhenSourceHasNoBuffers() {
+        RecordingSink sink = new RecordingSink();
+        FrameBufferPool pool = new FrameBufferPool(12, 2, sink);
+        pool.start();
+        pool.onFrameReceived(sink.buffers.get(0));
+        assertEquals(0, pool.getExhaustedCount());
+        pool.onFrameReceived(sink.buffers.get(1));
+        assertEquals(1, pool.getExhaustedCount());
+    }
+
+    @Test
+    public void foreignSizeIsNotReturned() {
+        RecordingSink sink = new RecordingSink();
+        FrameBufferPool pool = new FrameBufferPool(12, 1, sink);
+        pool.start();
+        pool.recycle(new byte[8]);
+        pool.recycle(null);
+        assertEquals(1, sink.buffers.size());
+    }
+
+    @Test
+    public void closedPoolKeepsBuffers() {
+        RecordingSink sink = new RecordingSink();
+        FrameBufferPool pool = new FrameBufferPool(12, 1, sink);
+        pool.start();
+        byte[] buffer = sink.buffers.get(0);
+        pool.onFrameReceived(buffer);
+        pool.close();
+        assertTrue(pool.isClosed());
+        pool.recycle(buffer);
+        pool.drop(buffer);
+        assertEquals(1, sink.buffers.size());
+    }
+
+    // Возврат буферов из нескольких потоков одновременно с close(): после возврата из close()
+    // приёмник не получает ни одного буфера.
+    @Test(timeout = 10000)
+    public void noBufferReachesSinkAfterClose() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            final AtomicBoolean closed = new AtomicBoolean();
+            final AtomicInteger late = new AtomicInteger();
+            final FrameBufferPool pool = new FrameBufferPool(4, 4, new FrameBufferPool.BufferSink() {
+                @Override
+                public void addBuffer(byte[] buffer) {
+                    if (closed.get())
+                        late.incrementAndGet();
+                }
+            });
+            pool.start();
+            final CountDownLatch ready = new CountDownLatch(1);
+            Thread[] threads = new Thread[3];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        byte[] buffer = new byte[4];
+                        ready.countDown();
+                        for (int j = 0; j < 1000; j++)
+                            pool.recycle(buffer);
+                    }
+                });
+                threads[i].start();
+            }
+            ready.await();
+            pool.close();
+            closed.set(true);
+            for (Thread thread : threads)
+                thread.join();
+            assertEquals("круг " + round, 0, late.get());
+        }
+    }
+
+    @Test
+    public void frameSizeFromBitsPerPixel() {
+        assertEquals(640 * 480 * 3 / 2, FrameBufferPool.frameSize(640, 480, 12));
+        assertEquals(640 * 480 * 2, FrameBufferPool.frameSize(640, 480, 16));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyPool() {
+        new FrameBufferPool(12, 0, new RecordingSink());
+    }
+
+    @Test
+    public void openPoolIsNotClosed() {
+        assertFalse(new FrameBufferPool(12, 1, new RecordingSink()).isClosed());
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.camerastream.frame;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Один кадр раздаётся всем подписчикам со счётчиком ссылок: буфер возвращается источнику
+// ровно один раз, когда его отпустит последний подписчик, в том числе после stop().
+public class FrameBusTest {
+    private static final StreamConfig CONFIG = new StreamConfig(YuvConverter.NV21, 16, 8, 12, 0, false);
+
+    // Пул источника: считает, какие буферы вернулись и как.
+    private static class RecordingRecycler implements BufferRecycler {
+        final List<byte[]> recycled = new ArrayList<byte[]>();
+        final List<byte[]> dropped = new ArrayList<byte[]>();
+
+        @Override
+        public synchronized void recycle(byte[] buffer) {
+            recycled.add(buffer);
+        }
+
+        @Override
+        public synchronized void drop(byte[] buffer) {
+            dropped.add(buffer);
+        }
+
+        synchronized int returned() {
+            return recycled.size() + dropped.size();
+        }
+    }
+
+    // Подписчик, который ждёт разрешения на каждый кадр.
+    private static class BlockingSubscriber implements FrameBus.Subscriber {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final AtomicInteger frames = new AtomicInteger();
+
+        @Override
+        public void onFrame(SharedFrame frame) {
+            entered.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            frames.incrementAndGet();
+        }
+    }
+
+    private final RecordingRecycler recycler = new RecordingRecycler();
+    private FrameBus bus;
+
+    @After
+    public void stopBus() {
+        if (bus != null)
+            bus.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void bufferReturnsAfterLastRelease() throws InterruptedException {
+        bus = new FrameBus(FrameBus.AUTO_FRAME_COUNT);
+        final SharedFrame[] kept = new SharedFrame[1];
+        bus.subscribe("direct", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+                frame.retain();
+                kept[0] = frame;
+            }
+        }, FrameBus.DIRECT, 0).setHeldFrames(1);
+        BlockingSubscriber queued = new BlockingSubscriber();
+        bus.subscribe("queued", queued, FrameStage.LATEST_FRAME, 0);
+        bus.start();
+
+        byte[] data = new byte[CONFIG.frameSize];
+        assertTrue(bus.publish(data, CONFIG, recycler, 1));
+        assertTrue(queued.entered.await(5, TimeUnit.SECONDS));
+        assertSame(data, kept[0].data);
+        assertEquals(2, kept[0].getReferenceCount());
+
+        kept[0].release();
+        assertEquals(0, recycler.returned());
+        queued.proceed.countDown();
+        waitForFreeFrames();
+        assertEquals(1, recycler.recycled.size());
+        assertSame(data, recycler.recycled.get(0));
+        assertEquals(0, recycler.dropped.size());
+    }
+
+    // Кадр, который не взял ни один подписчик, возвращается источнику как пропущенный.
+    @Test
+    public void unprocessedFrameIsDropped() {
+        bus = new FrameBus(2);
+        bus.subscribe("rare", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+            }
+        }, FrameBus.DIRECT, 1000);
+        bus.start();
+        bus.publish(new byte[CONFIG.frameSize], CONFIG, recycler, 0);
+        bus.publish(new byte[CONFIG.frameSize], CONFIG, recycler, 1);
+        assertEquals(1, recycler.recycled.size());
+        assertEquals(1, recycler.dropped.size());
+        assertEquals(2, bus.getFreeFrames());
+    }
+
+    @Test(timeout = 10000)
+    public void blockedSubscriberDoesNotStallDirect() throws InterruptedException {
+        bus = new FrameBus(FrameBus.AUTO_FRAME_COUNT);
+        final AtomicInteger direct = new AtomicInteger();
+        bus.subscribe("direct", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+                direct.incrementAndGet();
+            }
+        }, FrameBus.DIRECT, 0);
+        BlockingSubscriber blocked = new BlockingSubscriber();
+        FrameBus.Subscription subscription = bus.subscribe("blocked", blocked, FrameStage.LATEST_FRAME, 0);
+        bus.start();
+
+        assertTrue(bus.publish(new byte[CONFIG.frameSize], CONFIG, recycler, 0));
+        assertTrue(blocked.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 50; i++)
+            assertTrue(bus.publish(new byte[CONFIG.frameSize], CONFIG, recycler, i));
+        assertEquals(50, direct.get());
+        assertEquals(0, bus.getDroppedFrames());
+        // Все кадры, кроме обрабатываемого и ждущего в ячейке, уже вернулись источнику.
+        assertEquals(48, subscription.getDroppedFrames());
+        assertEquals(48, recycler.returned());
+
+        blocked.proceed.countDown();
+        waitForFreeFrames();
+        assertEquals(50, recycler.recycled.size());
+        assertEquals(2, blocked.frames.get());
+    }
+
+    @Test
+    public void autoFrameCountCoversHeldFrames() {
+        bus = new FrameBus(FrameBus.AUTO_FRAME_COUNT);
+        bus.subscribe("direct", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+            }
+        }, FrameBus.DIRECT, 0).setHeldFrames(3);
+        FrameBus.Subscription latest = bus.subscribe("latest", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+            }
+        }, FrameStage.LATEST_FRAME, 0);
+        bus.subscribe("queue", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+            }
+        }, 2, 0);
+        assertEquals(2, latest.getMaxRetainedFrames());
+        assertEquals(0, bus.getFrameCount());
+        // Раздаваемый кадр, 3 удержанных, ячейка и обработка, очередь из двух и обработка.
+        assertEquals(1 + 3 + 2 + 3, bus.getRetainedFrames());
+        bus.start();
+        assertEquals(9, bus.getFrameCount());
+        assertEquals(9, bus.getFreeFrames());
+        assertEquals(4, new FrameBus(4).getFrameCount());
+    }
+
+    // Подписчики держат столько кадров, сколько заявили, и шине всё равно хватает кадров.
+    @Test(timeout = 10000)
+    public void declaredRetentionNeverExhaustsBus() throws InterruptedException {
+        bus = new FrameBus(FrameBus.AUTO_FRAME_COUNT);
+        final List<SharedFrame> held = new ArrayList<SharedFrame>();
+        bus.subscribe("holder", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+                frame.retain();
+                held.add(frame);
+                if (held.size() > 2)
+                    held.remove(0).release();
+            }
+        }, FrameBus.DIRECT, 0).setHeldFrames(2);
+        BlockingSubscriber blocked = new BlockingSubscriber();
+        bus.subscribe("blocked", blocked, 2, 0);
+        bus.start();
+        for (int i = 0; i < 100; i++)
+            assertTrue("кадр " + i, bus.publish(new byte[CONFIG.frameSize], CONFIG, recycler, i));
+        assertEquals(0, bus.getDroppedFrames());
+
+        // Удержано больше заявленного: шина пропускает кадр и отдаёт буфер обратно.
+        bus.subscribe("greedy", new FrameBus.Subscriber() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+                frame.retain();
+            }
+        }, FrameBus.DIRECT, 0);
+        int published = 0;
+        while (bus.publish(new byte[CONFIG.frameSize], CONFIG, recycler, 100 + published))
+            published++;
+        assertEquals(1, bus.getDroppedFrames());
+        assertEquals(0, bus.getFreeFrames());
+        assertTrue(published > 0);
+        blocked.proceed.countDown();
+    }
+
+    @Test(timeout = 10000)
+    public void stopReleasesQueuedFrames() throws InterruptedException {
+        bus = new FrameBus(FrameBus.AUTO_FRAME_COUNT);
+        final BlockingSubscriber blocked = new BlockingSubscriber();
+        bus.subscribe("blocked", blocked, 2, 0);
+        bus.start();
+        for (int i = 0; i < 3; i++)
+            assertTrue(bus.publish(new byte[CONFIG.frameSize], CONFIG, recycler, i));
+        assertTrue(blocked.entered.await(5, TimeUnit.SECONDS));
+        Thread release = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                blocked.proceed.countDown();
+            }
+        });
+        release.start();
+        bus.stop();
+        release.join();
+        assertEquals(bus.getFrameCount(), bus.getFreeFrames());
+        assertEquals(3, recycler.returned());
+        assertFalse(bus.publish(new byte[CONFIG.frameSize], CONFIG, recycler, 3));
+        assertEquals(4, recycler.returned());
+    }
+
+    // stop() во время раздачи: ни один кадр не остаётся в остановленной очереди.
+    @Test(timeout = 60000)
+    public void noFramesLeakWhenStoppedDuringPublish() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            final FrameBus racing = new FrameBus(FrameBus.AUTO_FRAME_COUNT);
+            final RecordingRecycler sources = new RecordingRecycler();
+            for (int i = 0; i < 3; i++) {
+                racing.subscribe("subscriber" + i, new FrameBus.Subscriber() {
+                    @Override
+                    public void onFrame(SharedFrame frame) {
+                    }
+                }, i == 0 ? FrameStage.LATEST_FRAME : i, 0);
+            }
+            racing.start();
+            final AtomicBoolean publishing = new AtomicBoolean(true);
+            final AtomicInteger attempts = new AtomicInteger();
+            Thread publisher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (long i = 0; publishing.get(); i++) {
+                        racing.publish(new byte[CONFIG.frameSize], CONFIG, sources, i);
+                        attempts.incrementAndGet();
+                    }
+                }
+            });
+            publisher.start();
+            Thread.yield();
+            racing.stop();
+            publishing.set(false);
+            publisher.join();
+            assertEquals("круг " + round, racing.getFrameCount(), racing.getFreeFrames());
+            assertEquals("круг " + round, attempts.get(), sources.returned());
+        }
+    }
+
+    private void waitForFreeFrames() throws InterruptedException {
+        while (bus.getFreeFrames() < bus.getFrameCount())
+            Thread.sleep(1);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.camerastream.frame;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Писатель и читатель в разных потоках: каждый кадр либо прочитан целиком, с теми данными,
+// что записал писатель под этим номером, либо один раз возвращён владельцу как пропущенный.
+public class FrameRingTest {
+    private static final int FRAMES = 200000;
+
+    // Владелец буферов: считает пропущенные кадры.
+    private static class CountingRecycler implements BufferRecycler {
+        final AtomicLong recycled = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+
+        @Override
+        public void recycle(byte[] buffer) {
+            recycled.incrementAndGet();
+        }
+
+        @Override
+        public void drop(byte[] buffer) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void blockingRingLosesNothing() throws InterruptedException {
+        CountingRecycler recycler = new CountingRecycler();
+        FrameRing ring = new FrameRing(4, FrameRing.BLOCK);
+        Reader reader = run(ring, recycler, 0);
+        assertEquals(FRAMES, reader.received);
+        assertEquals(0, reader.gaps);
+        assertEquals(0, ring.getDroppedFrames());
+        assertEquals(0, recycler.dropped.get());
+    }
+
+    @Test(timeout = 30000)
+    public void overwritingRingDropsOldestOnly() throws InterruptedException {
+        CountingRecycler recycler = new CountingRecycler();
+        FrameRing ring = new FrameRing(4, FrameRing.OVERWRITE_OLDEST);
+        // Читатель медленнее писателя, чтобы кольцо всё время вытесняло кадры.
+        Reader reader = run(ring, recycler, 200);
+        assertEquals(ring.getDroppedFrames(), recycler.dropped.get());
+        assertEquals(FRAMES, reader.received + recycler.dropped.get());
+        assertEquals(recycler.dropped.get(), reader.gaps);
+    }
+
+    @Test
+    public void overwriteKeepsNewestFrames() {
+        CountingRecycler recycler = new CountingRecycler();
+        FrameRing ring = new FrameRing(4, FrameRing.OVERWRITE_OLDEST);
+        for (int i = 0; i < 10; i++)
+            assertEquals("кадр " + i, i < 4, ring.offer(new byte[1], recycler, null, i));
+        assertEquals(6, recycler.dropped.get());
+        Frame frame = new Frame();
+        for (int i = 6; i < 10; i++) {
+            assertTrue(ring.poll(frame));
+            assertEquals(i, frame.sequence);
+        }
+        assertFalse(ring.poll(frame));
+    }
+
+    @Test
+    public void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(4, new FrameRing(3, FrameRing.BLOCK).getCapacity());
+        assertEquals(1, new FrameRing(1, FrameRing.OVERWRITE_OLDEST).getCapacity());
+    }
+
+    @Test
+    public void closedRingRejectsFrames() {
+        CountingRecycler recycler = new CountingRecycler();
+        FrameRing ring = new FrameRing(2, FrameRing.OVERWRITE_OLDEST);
+        ring.close();
+        assertFalse(ring.offer(new byte[1], recycler, null, 0));
+        assertEquals(1, recycler.dropped.get());
+        assertFalse(ring.take(new Frame()));
+    }
+
+    @Test
+    public void clearReturnsUnreadBuffers() {
+        CountingRecycler recycler = new CountingRecycler();
+        FrameRing ring = new FrameRing(4, FrameRing.BLOCK);
+        for (int i = 0; i < 3; i++)
+            ring.offer(new byte[1], recycler, null, i);
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertEquals(3, recycler.dropped.get());
+    }
+
+    // Что увидел читатель: сколько кадров и сколько номеров пропущено между ними.
+    private static class Reader implements Runnable {
+        final FrameRing ring;
+        final int spinPerFrame;
+        long received;
+        long gaps;
+        long checksum;
+        AssertionError error;
+
+        Reader(FrameRing ring, int spinPerFrame) {
+            this.ring = ring;
+            this.spinPerFrame = spinPerFrame;
+        }
+
+        @Override
+        public void run() {
+            Frame frame = new Frame();
+            long expected = 0;
+            try {
+                while (ring.take(frame)) {
+                    assertTrue("номер " + frame.sequence + " после " + (expected - 1), frame.sequence >= expected);
+                    long written = ByteBuffer.wrap(frame.data).getLong();
+                    assertEquals("данные кадра", frame.sequence, written);
+                    assertEquals("время кадра", frame.sequence, frame.timestampNanos);
+                    gaps += frame.sequence - expected;
+                    expected = frame.sequence + 1;
+                    received++;
+                    for (int i = 0; i < spinPerFrame; i++)
+                        checksum += frame.data[i & 7] * i;
+                    frame.recycleData(false);
+                }
+                gaps += FRAMES - expected;
+            } catch (AssertionError e) {
+                error = e;
+            }
+        }
+    }
+
+    private static Reader run(FrameRing ring, CountingRecycler recycler, int spinPerFrame) throws InterruptedException {
+        Reader reader = new Reader(ring, spinPerFrame);
+        Thread thread = new Thread(reader, "FrameRingTest-reader");
+        thread.start();
+        for (long i = 0; i < FRAMES; i++) {
+            byte[] data = new byte[8];
+            ByteBuffer.wrap(data).putLong(i);
+            ring.offer(data, recycler, null, i);
+        }
+        ring.close();
+        thread.join();
+        if (reader.error != null)
+            throw reader.error;
+        assertEquals(reader.received, recycler.recycled.get());
+        return reader;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.camerastream.frame;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Статистика яркости на искусственных кадрах NV21 и YUY2: гистограмма, средняя, доли
+// обрезанных точек и резкость сверяются с подсчётом вручную по тем же точкам выборки.
+public class FrameStatisticsTest {
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 12;
+    private static final float DELTA = 1e-4f;
+
+    @Test
+    public void flatFrameHasNoSharpness() {
+        FrameStatistics statistics = new FrameStatistics(1);
+        statistics.compute(nv21(WIDTH, HEIGHT, 100), YuvConverter.NV21, WIDTH, HEIGHT);
+        // Последние строка и столбец в выборку не входят.
+        int samples = (WIDTH - 1) * (HEIGHT - 1);
+        assertEquals(samples, statistics.getSampleCount());
+        assertEquals(samples, statistics.getHistogram()[100]);
+        assertEquals(samples, histogramSum(statistics));
+        assertEquals(100f, statistics.getMean(), DELTA);
+        assertEquals(0f, statistics.getDarkRatio(), DELTA);
+        assertEquals(0f, statistics.getBrightRatio(), DELTA);
+        assertEquals(0f, statistics.getSharpness(), DELTA);
+        assertFalse(statistics.isUnderexposed());
+        assertFalse(statistics.isOverexposed());
+    }
+
+    @Test
+    public void histogramMatchesSampledPixels() {
+        int width = 37;
+        int height = 23;
+        int step = 3;
+        byte[] data = nv21(width, height, 0);
+        Random random = new Random(1);
+        for (int i = 0; i < width * height; i++)
+            data[i] = (byte) random.nextInt(256);
+        FrameStatistics statistics = new FrameStatistics(step);
+        statistics.compute(data, YuvConverter.NV21, width, height);
+
+        int[] expected = new int[256];
+        long sum = 0;
+        int count = 0;
+        for (int y = 0; y < height - 1; y += step) {
+            for (int x = 0; x < width - 1; x += step) {
+                int value = data[y * width + x] & 0xff;
+                expected[value]++;
+                sum += value;
+                count++;
+            }
+        }
+        assertEquals(count, statistics.getSampleCount());
+        assertEquals(count, histogramSum(statistics));
+        for (int i = 0; i < 256; i++)
+            assertEquals("уровень " + i, expected[i], statistics.getHistogram()[i]);
+        assertEquals((float) sum / count, statistics.getMean(), DELTA);
+    }
+
+    @Test
+    public void clippedRatiosAndEdgeSharpness() {
+        // Левая половина чёрная, правая засвечена: край проходит между столбцами 7 и 8.
+        byte[] data = nv21(WIDTH, HEIGHT, 0);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = WIDTH / 2; x < WIDTH; x++)
+                data[y * WIDTH + x] = (byte) 255;
+        }
+        FrameStatistics statistics = new FrameStatistics(1);
+        statistics.compute(data, YuvConverter.NV21, WIDTH, HEIGHT);
+        int columns = WIDTH - 1;
+        assertEquals(8f / columns, statistics.getDarkRatio(), DELTA);
+        assertEquals(7f / columns, statistics.getBrightRatio(), DELTA);
+        assertEquals(7f * 255 / columns, statistics.getMean(), DELTA);
+        // В каждой строке один перепад на 255 по горизонтали, по вертикали перепадов нет.
+        assertEquals(255f * 255 / columns, statistics.getSharpness(), DELTA);
+        assertTrue(statistics.isUnderexposed());
+    }
+
+    @Test
+    public void yuy2UsesLumaOnly() {
+        byte[] nv21 = nv21(WIDTH, HEIGHT, 0);
+        // У YUY2 байты цветности между яркостями заполнены 255: в статистику они попасть не должны.
+        // Край — справа от столбца 4, который входит в выборку с шагом 2.
+        byte[] yuy2 = new byte[WIDTH * HEIGHT * 2];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int value = x <= 4 ? 30 : 200;
+                nv21[y * WIDTH + x] = (byte) value;
+                yuy2[(y * WIDTH + x) * 2] = (byte) value;
+                yuy2[(y * WIDTH + x) * 2 + 1] = (byte) 255;
+            }
+        }
+        FrameStatistics expected = new FrameStatistics(2);
+        expected.compute(nv21, YuvConverter.NV21, WIDTH, HEIGHT);
+        FrameStatistics actual = new FrameStatistics(2);
+        actual.compute(yuy2, YuvConverter.YUY2, WIDTH, HEIGHT);
+        assertEquals(expected.getSampleCount(), actual.getSampleCount());
+        assertEquals(0, actual.getHistogram()[255]);
+        assertEquals(expected.getMean(), actual.getMean(), DELTA);
+        assertEquals(0f, actual.getBrightRatio(), DELTA);
+        assertEquals(expected.getSharpness(), actual.getSharpness(), DELTA);
+        assertTrue(actual.getSharpness() > 0);
+    }
+
+    @Test
+    public void singleRowOrColumnHasNoSamples() {
+        FrameStatistics statistics = new FrameStatistics(1);
+        statistics.compute(nv21(WIDTH, HEIGHT, 100), YuvConverter.NV21, WIDTH, HEIGHT);
+        // Прошлая статистика не должна остаться после кадра без точек выборки.
+        statistics.compute(nv21(WIDTH, 2, 100), YuvConverter.NV21, WIDTH, 1);
+        assertEmpty(statistics);
+        statistics.compute(nv21(WIDTH, HEIGHT, 100), YuvConverter.NV21, WIDTH, HEIGHT);
+        statistics.compute(nv21(2, HEIGHT, 100), YuvConverter.NV21, 1, HEIGHT);
+        assertEmpty(statistics);
+        statistics.compute(new byte[WIDTH * 2], YuvConverter.YUY2, WIDTH, 1);
+        assertEmpty(statistics);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedFormat() {
+        new FrameStatistics(1).compute(new byte[WIDTH * HEIGHT * 2], 0x20203859, WIDTH, HEIGHT);
+    }
+
+    private static void assertEmpty(FrameStatistics statistics) {
+        assertEquals(0, statistics.getSampleCount());
+        assertEquals(0, histogramSum(statistics));
+        assertEquals(0f, statistics.getMean(), DELTA);
+        assertEquals(0f, statistics.getSharpness(), DELTA);
+        assertFalse(statistics.isUnderexposed());
+        assertFalse(statistics.isOverexposed());
+    }
+
+    private static int histogramSum(FrameStatistics statistics) {
+        int sum = 0;
+        for (int count : statistics.getHistogram())
+            sum += count;
+        return sum;
+    }
+
+    // Кадр NV21 с постоянной яркостью и нейтральной цветностью; для нечётных размеров плоскость
+    // цветности округляется вверх.
+    private static byte[] nv21(int width, int height, int luma) {
+        int chroma = ((width + 1) / 2) * ((height + 1) / 2) * 2;
+        byte[] data = new byte[width * height + chroma];
+        for (int i = 0; i < width * height; i++)
+            data[i] = (byte) luma;
+        for (int i = width * height; i < data.length; i++)
+            data[i] = (byte) 128;
+        return data;
+    }
+}
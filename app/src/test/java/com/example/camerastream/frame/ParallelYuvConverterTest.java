@@ -0,0 +1,69 @@
+package com.example.camerastream.frame;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+// Многопоточный перевод должен совпадать с однопоточным до бита.
+public class ParallelYuvConverterTest {
+    private static final int[] FORMATS = {YuvConverter.NV21, YuvConverter.NV16, YuvConverter.YUY2};
+
+    @Test
+    public void matchesSequentialConversion() {
+        // Высоты, которые не делятся на число полос поровну, и полосы короче потоков.
+        int[][] sizes = {{64, 48}, {30, 22}, {16, 2}, {6, 10}};
+        for (int threads = 2; threads <= 5; threads++) {
+            ParallelYuvConverter converter = new ParallelYuvConverter(threads, 0);
+            try {
+                for (int[] size : sizes)
+                    for (int format : FORMATS)
+                        for (int rotation = 0; rotation < 360; rotation += 90)
+                            check(converter, format, size[0], size[1], rotation, rotation == 90);
+            } finally {
+                converter.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void smallFramesStayOnCaller() {
+        ParallelYuvConverter converter = new ParallelYuvConverter(4, ParallelYuvConverter.DEFAULT_SEQUENTIAL_THRESHOLD);
+        try {
+            check(converter, YuvConverter.NV21, 64, 48, 0, false);
+        } finally {
+            converter.shutdown();
+        }
+    }
+
+    // После остановки потоков кадры переводятся в вызывающем потоке, а остановка посреди
+    // перевода не оставляет кадр недоделанным.
+    @Test(timeout = 20000)
+    public void shutdownDuringConversion() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            final ParallelYuvConverter converter = new ParallelYuvConverter(3, 0);
+            Thread stopper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Thread.yield();
+                    converter.shutdown();
+                }
+            });
+            stopper.start();
+            for (int i = 0; i < 5; i++)
+                check(converter, YuvConverter.NV21, 64, 48, 0, false);
+            stopper.join();
+            check(converter, YuvConverter.YUY2, 32, 16, 270, true);
+        }
+    }
+
+    private static void check(ParallelYuvConverter converter, int format, int width, int height,
+                              int rotation, boolean mirror) {
+        byte[] data = YuvConverterTest.randomFrame(format, width, height, width * 31 + height);
+        int[] expected = new int[width * height];
+        YuvConverter.convert(data, format, width, height, rotation, mirror, expected);
+        int[] actual = new int[width * height];
+        converter.convert(data, format, width, height, rotation, mirror, actual);
+        assertArrayEquals("формат " + format + ", " + width + "x" + height + ", поворот " + rotation
+                + ", потоков " + converter.getThreadCount(), expected, actual);
+    }
+}
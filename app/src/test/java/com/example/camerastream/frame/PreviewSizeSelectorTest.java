@@ -0,0 +1,106 @@
+package com.example.camerastream.frame;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PreviewSizeSelectorTest {
+    private static final List<PreviewSize> SIZES = sizes(
+            1920, 1080, 1280, 720, 960, 720, 640, 480, 640, 360, 320, 240, 176, 144);
+
+    @Test
+    public void ranksByAspectThenCoverageThenCost() {
+        PreviewSizeSelector selector = new PreviewSizeSelector(12);
+        // 16:9 покрывающие поверхность от дешёвого к дорогому, затем 16:9 меньше поверхности,
+        // затем 4:3 от крупного к мелкому и самый далёкий по пропорциям.
+        assertEquals(sizes(1280, 720, 1920, 1080, 640, 360, 960, 720, 640, 480, 320, 240, 176, 144),
+                selector.rank(SIZES, 1280, 720, 0));
+    }
+
+    @Test
+    public void closerAspectGoesFirst() {
+        PreviewSizeSelector selector = new PreviewSizeSelector(12);
+        // У 176x144 пропорции чуть вне допуска для 4:3, но ближе, чем у 16:9.
+        assertEquals(sizes(640, 480, 960, 720, 320, 240, 176, 144, 1280, 720, 1920, 1080, 640, 360),
+                selector.rank(SIZES, 640, 480, 0));
+    }
+
+    @Test
+    public void rotatedSurfaceIsCompared() {
+        PreviewSizeSelector selector = new PreviewSizeSelector(12);
+        selector.setSupportedSizes(0, SIZES);
+        assertEquals(new PreviewSize(1280, 720), selector.select(0, 720, 1280, 90));
+        assertEquals(new PreviewSize(1280, 720), selector.select(0, 720, 1280, 270));
+        assertEquals(new PreviewSize(640, 480), selector.select(0, 480, 640, 90));
+    }
+
+    @Test
+    public void largestWhenNothingCoversSurface() {
+        PreviewSizeSelector selector = new PreviewSizeSelector(12);
+        selector.setSupportedSizes(0, SIZES);
+        assertEquals(new PreviewSize(1920, 1080), selector.select(0, 3840, 2160, 0));
+    }
+
+    @Test
+    public void limitsExcludeLargeSizes() {
+        PreviewSizeSelector selector = new PreviewSizeSelector(12);
+        selector.setSupportedSizes(0, SIZES);
+        selector.setMaxPixels(640 * 480);
+        assertEquals(new PreviewSize(640, 360), selector.select(0, 1280, 720, 0));
+
+        selector.setMaxPixels(0);
+        selector.setFrameBudget(30, 1280L * 720 * 30);
+        assertEquals(new PreviewSize(1280, 720), selector.select(0, 1920, 1080, 0));
+        selector.setFrameBudget(60, 1280L * 720 * 30);
+        assertEquals(new PreviewSize(640, 360), selector.select(0, 1920, 1080, 0));
+    }
+
+    @Test
+    public void cheapestWhenNothingFitsLimits() {
+        PreviewSizeSelector selector = new PreviewSizeSelector(12);
+        selector.setMaxPixels(100);
+        assertEquals(sizes(176, 144), selector.rank(SIZES, 1280, 720, 0));
+    }
+
+    @Test
+    public void choiceIsCached() {
+        PreviewSizeSelector selector = new PreviewSizeSelector(12);
+        selector.setSupportedSizes(0, SIZES);
+        selector.select(0, 1280, 720, 0);
+        selector.select(0, 1280, 720, 0);
+        assertEquals(1, selector.getCacheMisses());
+        assertEquals(1, selector.getCacheHits());
+
+        // Тот же список размеров выбор не сбрасывает, другой — сбрасывает.
+        selector.setSupportedSizes(0, sizes(1920, 1080, 1280, 720, 960, 720, 640, 480, 640, 360, 320, 240, 176, 144));
+        selector.select(0, 1280, 720, 0);
+        assertEquals(2, selector.getCacheHits());
+        selector.setSupportedSizes(0, sizes(1920, 1080, 640, 480));
+        assertEquals(new PreviewSize(1920, 1080), selector.select(0, 1280, 720, 0));
+        assertEquals(2, selector.getCacheMisses());
+    }
+
+    @Test
+    public void unknownCameraHasNoSize() {
+        PreviewSizeSelector selector = new PreviewSizeSelector(12);
+        assertNull(selector.select(1, 1280, 720, 0));
+        assertEquals(0, selector.rank(null, 1280, 720, 0).size());
+    }
+
+    @Test
+    public void frameCostCountsSourceAndArgb() {
+        assertEquals(640 * 480 * 3 / 2 + 640 * 480 * 4, new PreviewSizeSelector(12).frameCost(new PreviewSize(640, 480)));
+    }
+
+    // Пары ширина, высота.
+    private static List<PreviewSize> sizes(int... dimensions) {
+        PreviewSize[] sizes = new PreviewSize[dimensions.length / 2];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = new PreviewSize(dimensions[2 * i], dimensions[2 * i + 1]);
+        return Arrays.asList(sizes);
+    }
+}
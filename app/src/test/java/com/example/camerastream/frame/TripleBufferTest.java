@@ -0,0 +1,124 @@
+package com.example.camerastream.frame;
+
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+// Писатель и читатель в разных потоках с буферами-массивами, которые писатель целиком заполняет
+// номером кадра: передний буфер не меняется, пока читатель его держит, кадры идут по возрастанию,
+// а каждое пробуждение из publish() соответствует ровно одному новому кадру для читателя.
+public class TripleBufferTest {
+    private static final int FRAMES = 200000;
+    private static final int BUFFER_LENGTH = 64;
+
+    @Test
+    public void readerTakesOnlyLatestPending() {
+        TripleBuffer buffer = new TripleBuffer();
+        int[] frames = new int[TripleBuffer.BUFFER_COUNT];
+        assertFalse(buffer.swap());
+        for (int i = 1; i <= 3; i++) {
+            frames[buffer.getBackIndex()] = i;
+            // Будить читателя нужно только для первого кадра: остальные он заберёт вместе с ним.
+            assertEquals("кадр " + i, i == 1, buffer.publish());
+        }
+        assertTrue(buffer.swap());
+        assertEquals(3, frames[buffer.getFrontIndex()]);
+        assertFalse(buffer.swap());
+        assertEquals(3, frames[buffer.getFrontIndex()]);
+
+        frames[buffer.getBackIndex()] = 4;
+        assertTrue(buffer.publish());
+        assertTrue(buffer.swap());
+        assertEquals(4, frames[buffer.getFrontIndex()]);
+    }
+
+    // Все чередования publish() и swap() по двоичной записи числа: задний и передний буферы
+    // всегда разные и лежат в 0..2.
+    @Test
+    public void backNeverEqualsFront() {
+        for (int pattern = 0; pattern < 1 << 12; pattern++) {
+            TripleBuffer buffer = new TripleBuffer();
+            for (int step = 0; step < 12; step++) {
+                if ((pattern >> step & 1) != 0)
+                    buffer.publish();
+                else
+                    buffer.swap();
+                assertTrue(buffer.getBackIndex() >= 0 && buffer.getBackIndex() < TripleBuffer.BUFFER_COUNT);
+                assertTrue(buffer.getFrontIndex() >= 0 && buffer.getFrontIndex() < TripleBuffer.BUFFER_COUNT);
+                assertNotEquals("чередование " + Integer.toBinaryString(pattern) + ", шаг " + step,
+                        buffer.getBackIndex(), buffer.getFrontIndex());
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void writerAndReaderStress() throws InterruptedException {
+        TripleBuffer buffer = new TripleBuffer();
+        int[][] buffers = new int[TripleBuffer.BUFFER_COUNT][BUFFER_LENGTH];
+        Semaphore wakeUps = new Semaphore(0);
+        Reader reader = new Reader(buffer, buffers, wakeUps);
+        Thread thread = new Thread(reader, "TripleBufferTest-reader");
+        thread.start();
+        long published = 0;
+        for (int i = 1; i <= FRAMES; i++) {
+            int[] back = buffers[buffer.getBackIndex()];
+            for (int j = 0; j < BUFFER_LENGTH; j++)
+                back[j] = i;
+            if (buffer.publish()) {
+                published++;
+                wakeUps.release();
+            }
+        }
+        thread.join();
+        if (reader.error != null)
+            throw reader.error;
+        assertEquals(FRAMES, reader.last);
+        // Пробуждений ровно столько, сколько кадров забрал читатель: ни лишних, ни потерянных.
+        assertEquals(published, reader.swaps);
+        assertFalse(buffer.swap());
+    }
+
+    // Просыпается только по сигналу писателя и проверяет, что передний буфер целый и не меняется,
+    // пока читатель его держит.
+    private static class Reader implements Runnable {
+        final TripleBuffer buffer;
+        final int[][] buffers;
+        final Semaphore wakeUps;
+        int last;
+        long swaps;
+        AssertionError error;
+
+        Reader(TripleBuffer buffer, int[][] buffers, Semaphore wakeUps) {
+            this.buffer = buffer;
+            this.buffers = buffers;
+            this.wakeUps = wakeUps;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (last < FRAMES) {
+                    wakeUps.acquireUninterruptibly();
+                    assertTrue("пробуждение без нового кадра после " + last, buffer.swap());
+                    swaps++;
+                    int[] front = buffers[buffer.getFrontIndex()];
+                    int frame = front[0];
+                    assertTrue("кадр " + frame + " после " + last, frame > last);
+                    // Несколько проходов, чтобы писатель успел бы испортить буфер, если бы писал в него.
+                    for (int pass = 0; pass < 4; pass++) {
+                        for (int j = 0; j < BUFFER_LENGTH; j++)
+                            assertEquals("кадр " + frame + ", элемент " + j, frame, front[j]);
+                    }
+                    last = frame;
+                }
+            } catch (AssertionError e) {
+                error = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.camerastream.frame;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Сравнение табличного перевода YuvConverter с прямым расчётом BT.601 в плавающей точке.
+public class YuvConverterTest {
+    // Округление таблиц и сдвиг вместо округления дают не больше единицы на канал.
+    private static final int TOLERANCE = 1;
+
+    private static final int[] FORMATS = {YuvConverter.NV21, YuvConverter.NV16, YuvConverter.YUY2};
+
+    @Test
+    public void matchesFloatReference() {
+        for (int format : FORMATS) {
+            byte[] data = randomFrame(format, 16, 10, 1);
+            int[] out = new int[16 * 10];
+            YuvConverter.convert(data, format, 16, 10, out);
+            assertClose("формат " + format, reference(data, format, 16, 10), out);
+        }
+    }
+
+    // Все сочетания поворота и отражения: пиксель попадает туда же, куда его переносит
+    // отражение исходного кадра по горизонтали и затем поворот по часовой стрелке.
+    @Test
+    public void rotatesAndMirrors() {
+        for (int format : FORMATS) {
+            byte[] data = randomFrame(format, 8, 6, format);
+            int[] plain = reference(data, format, 8, 6);
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                for (boolean mirror : new boolean[]{false, true}) {
+                    int[] out = new int[8 * 6];
+                    YuvConverter.convert(data, format, 8, 6, rotation, mirror, out);
+                    assertClose("формат " + format + ", поворот " + rotation + ", отражение " + mirror,
+                            orient(plain, 8, 6, rotation, mirror), out);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rotatedSize() {
+        assertEquals(6, YuvConverter.outputWidth(8, 6, 90));
+        assertEquals(8, YuvConverter.outputHeight(8, 6, 270));
+        assertEquals(8, YuvConverter.outputWidth(8, 6, 180));
+        assertEquals(6, YuvConverter.outputHeight(8, 6, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedRotation() {
+        YuvConverter.convert(new byte[frameSize(YuvConverter.NV21, 4, 4)], YuvConverter.NV21, 4, 4, 45, false, new int[16]);
+    }
+
+    @Test
+    public void clampsExtremeValues() {
+        for (int format : FORMATS) {
+            int size = frameSize(format, 4, 2);
+            for (int value : new int[]{0, 255}) {
+                byte[] data = new byte[size];
+                Arrays.fill(data, (byte) value);
+                int[] out = new int[4 * 2];
+                YuvConverter.convert(data, format, 4, 2, out);
+                assertClose("формат " + format + ", байты " + value, reference(data, format, 4, 2), out);
+            }
+        }
+    }
+
+    @Test
+    public void grayStaysGray() {
+        byte[] data = new byte[frameSize(YuvConverter.NV21, 2, 2)];
+        Arrays.fill(data, 0, 4, (byte) 126);
+        Arrays.fill(data, 4, data.length, (byte) 128);
+        int[] out = new int[4];
+        YuvConverter.convert(data, YuvConverter.NV21, 2, 2, out);
+        for (int pixel : out) {
+            assertEquals(0xff, pixel >>> 24);
+            assertEquals((pixel >> 16) & 0xff, pixel & 0xff);
+            assertEquals((pixel >> 8) & 0xff, pixel & 0xff);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSmallOutput() {
+        YuvConverter.convert(new byte[frameSize(YuvConverter.NV21, 4, 4)], YuvConverter.NV21, 4, 4, new int[15]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownFormat() {
+        YuvConverter.convert(new byte[64], 0x23, 4, 4, new int[16]);
+    }
+
+    static int frameSize(int format, int width, int height) {
+        switch (format) {
+            case YuvConverter.NV21:
+                return width * height * 3 / 2;
+            default:
+                return width * height * 2;
+        }
+    }
+
+    static byte[] randomFrame(int format, int width, int height, long seed) {
+        byte[] data = new byte[frameSize(format, width, height)];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // Кадр без поворота, пиксель за пикселем по формулам BT.601.
+    static int[] reference(byte[] data, int format, int width, int height) {
+        int[] out = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma;
+                int u;
+                int v;
+                int pair = x & ~1;
+                if (format == YuvConverter.YUY2) {
+                    int index = (y * width + pair) * 2;
+                    luma = data[index + (x & 1) * 2] & 0xff;
+                    u = data[index + 1] & 0xff;
+                    v = data[index + 3] & 0xff;
+                } else {
+                    luma = data[y * width + x] & 0xff;
+                    int row = format == YuvConverter.NV21 ? y / 2 : y;
+                    int index = width * height + row * width + pair;
+                    if (format == YuvConverter.NV21) {
+                        v = data[index] & 0xff;
+                        u = data[index + 1] & 0xff;
+                    } else {
+                        u = data[index] & 0xff;
+                        v = data[index + 1] & 0xff;
+                    }
+                }
+                double c = 1.164 * (luma - 16);
+                int r = clamp(c + 1.596 * (v - 128));
+                int g = clamp(c - 0.391 * (u - 128) - 0.813 * (v - 128));
+                int b = clamp(c + 2.018 * (u - 128));
+                out[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return out;
+    }
+
+    // Отражает и поворачивает готовый кадр по координатам, независимо от шагов YuvConverter.
+    static int[] orient(int[] pixels, int width, int height, int rotation, boolean mirror) {
+        int outWidth = YuvConverter.outputWidth(width, height, rotation);
+        int[] out = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sourceX = mirror ? width - 1 - x : x;
+                int outX;
+                int outY;
+                switch (rotation) {
+                    case 90:
+                        outX = height - 1 - y;
+                        outY = sourceX;
+                        break;
+                    case 180:
+                        outX = width - 1 - sourceX;
+                        outY = height - 1 - y;
+                        break;
+                    case 270:
+                        outX = y;
+                        outY = width - 1 - sourceX;
+                        break;
+                    default:
+                        outX = sourceX;
+                        outY = y;
+                }
+                out[outY * outWidth + outX] = pixels[y * width + x];
+            }
+        }
+        return out;
+    }
+
+    private static int clamp(double value) {
+        long rounded = Math.round(value);
+        return rounded < 0 ? 0 : (rounded > 255 ? 255 : (int) rounded);
+    }
+
+    static void assertClose(String message, int[] expected, int[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(message + ", альфа в " + i, 0xff, actual[i] >>> 24);
+            for (int shift = 0; shift < 24; shift += 8) {
+                int difference = Math.abs(((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff));
+                assertTrue(message + ", пиксель " + i + ": " + Integer.toHexString(expected[i])
+                        + " != " + Integer.toHexString(actual[i]), difference <= TOLERANCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.camerastream.frame;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Сравнение YuvScaler с прямым расчётом по каждой точке: среднее по блоку для целых
+// коэффициентов и билинейная интерполяция в плавающей точке для остальных. Яркость и оба канала
+// цветности NV21 и NV16 считаются как отдельные плоскости в координатах своих отсчётов.
+public class YuvScalerTest {
+    // Фиксированная точка билинейной интерполяции ошибается не больше чем на единицу.
+    private static final int BILINEAR_TOLERANCE = 1;
+
+    private static final int[] FORMATS = {YuvConverter.NV21, YuvConverter.NV16};
+
+    @Test
+    public void boxMatchesBlockAverage() {
+        for (int format : FORMATS) {
+            for (int factor = 3; factor <= 4; factor++) {
+                byte[] data = randomFrame(format, 48, 24, factor);
+                byte[] out = scale(data, format, 48, 24, 0, 0, 48, 24, 48 / factor, 24 / factor);
+                assertClose("формат " + format + ", коэффициент " + factor,
+                        reference(data, format, 48, 24, 0, 0, 48, 24, 48 / factor, 24 / factor), out, 0);
+            }
+        }
+    }
+
+    @Test
+    public void halfMatchesBlockAverage() {
+        for (int format : FORMATS) {
+            byte[] data = randomFrame(format, 32, 20, 2);
+            byte[] out = scale(data, format, 32, 20, 0, 0, 32, 20, 16, 10);
+            assertClose("формат " + format, reference(data, format, 32, 20, 0, 0, 32, 20, 16, 10), out, 0);
+        }
+    }
+
+    @Test
+    public void bilinearMatchesFloatReference() {
+        // Уменьшение в 2,5 раза, разные коэффициенты по осям и увеличение.
+        int[][] sizes = {{40, 30, 16, 12}, {40, 30, 14, 20}, {12, 8, 20, 14}};
+        for (int format : FORMATS) {
+            for (int[] size : sizes) {
+                byte[] data = randomFrame(format, size[0], size[1], size[2]);
+                byte[] out = scale(data, format, size[0], size[1], 0, 0, size[0], size[1], size[2], size[3]);
+                assertClose("формат " + format + ", " + size[2] + "x" + size[3],
+                        reference(data, format, size[0], size[1], 0, 0, size[0], size[1], size[2], size[3]),
+                        out, BILINEAR_TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void cropAtEvenOffset() {
+        for (int format : FORMATS) {
+            byte[] data = randomFrame(format, 40, 32, 3);
+            assertClose("формат " + format + ", блок",
+                    reference(data, format, 40, 32, 6, 4, 24, 16, 12, 8),
+                    scale(data, format, 40, 32, 6, 4, 24, 16, 12, 8), 0);
+            assertClose("формат " + format + ", билинейно",
+                    reference(data, format, 40, 32, 10, 6, 20, 20, 8, 8),
+                    scale(data, format, 40, 32, 10, 6, 20, 20, 8, 8), BILINEAR_TOLERANCE);
+        }
+    }
+
+    // Без уменьшения область копируется как есть: отсчёт цветности (i, j) результата — это
+    // отсчёт (cropX / 2 + i, cropY / 2 + j) у NV21 и (cropX / 2 + i, cropY + j) у NV16.
+    @Test
+    public void chromaStaysWithItsLumaBlock() {
+        int width = 20;
+        int height = 16;
+        int cropX = 4;
+        int cropY = 6;
+        for (int format : FORMATS) {
+            int shift = format == YuvConverter.NV21 ? 1 : 0;
+            byte[] data = randomFrame(format, width, height, 7);
+            byte[] out = scale(data, format, width, height, cropX, cropY, 10, 8, 10, 8);
+            for (int y = 0; y < 8; y++) {
+                for (int x = 0; x < 10; x++)
+                    assertEquals(data[(cropY + y) * width + cropX + x], out[y * 10 + x]);
+            }
+            for (int y = 0; y < 8 >> shift; y++) {
+                for (int x = 0; x < 5; x++) {
+                    for (int channel = 0; channel < 2; channel++) {
+                        int src = width * height + ((cropY >> shift) + y) * width + (cropX / 2 + x) * 2 + channel;
+                        int dst = 10 * 8 + y * 10 + x * 2 + channel;
+                        assertEquals("формат " + format + ", отсчёт " + x + "," + y + ", канал " + channel,
+                                data[src], out[dst]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Размер не делится на divisor: края обрезаются поровну с чётного смещения,
+    // а результат — чётного размера.
+    @Test
+    public void divisorCropsOddRemainder() {
+        int width = 46;
+        int height = 38;
+        for (int format : FORMATS) {
+            byte[] data = randomFrame(format, width, height, 4);
+            YuvScaler scaler = new YuvScaler();
+            byte[] out = scaler.scale(data, format, width, height, 4);
+            // 46 / 4 = 11 -> 10, обрезка 40 со смещением (46 - 40) / 2 = 3 -> 2;
+            // 38 / 4 = 9 -> 8, обрезка 32 со смещением (38 - 32) / 2 = 3 -> 2.
+            assertEquals(10, scaler.getOutputWidth());
+            assertEquals(8, scaler.getOutputHeight());
+            assertClose("формат " + format, reference(data, format, width, height, 2, 2, 40, 32, 10, 8), out, 0);
+
+            out = scaler.scale(data, format, width, height, 3);
+            // 46 / 3 = 15 -> 14, обрезка 42 со смещением 2; 38 / 3 = 12, обрезка 36 со смещением 1 -> 0.
+            assertEquals(14, scaler.getOutputWidth());
+            assertEquals(12, scaler.getOutputHeight());
+            assertClose("формат " + format + ", divisor 3",
+                    reference(data, format, width, height, 2, 0, 42, 36, 14, 12), out, 0);
+        }
+    }
+
+    @Test
+    public void divisorOneReturnsInput() {
+        byte[] data = randomFrame(YuvConverter.NV21, 8, 6, 1);
+        YuvScaler scaler = new YuvScaler();
+        assertSame(data, scaler.scale(data, YuvConverter.NV21, 8, 6, 1));
+        assertEquals(8, scaler.getOutputWidth());
+        assertEquals(6, scaler.getOutputHeight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddCrop() {
+        byte[] data = randomFrame(YuvConverter.NV21, 16, 12, 1);
+        YuvScaler.scale(data, YuvConverter.NV21, 16, 12, 1, 0, 8, 8, new byte[64 * 3 / 2], 8, 8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCropOutsideFrame() {
+        byte[] data = randomFrame(YuvConverter.NV16, 16, 12, 1);
+        YuvScaler.scale(data, YuvConverter.NV16, 16, 12, 10, 0, 8, 8, new byte[64 * 2], 8, 8);
+    }
+
+    private static byte[] scale(byte[] data, int format, int width, int height,
+                                int cropX, int cropY, int cropWidth, int cropHeight, int outWidth, int outHeight) {
+        byte[] out = new byte[YuvScaler.frameSize(format, outWidth, outHeight)];
+        YuvScaler.scale(data, format, width, height, cropX, cropY, cropWidth, cropHeight, out, outWidth, outHeight);
+        return out;
+    }
+
+    private static byte[] reference(byte[] data, int format, int width, int height,
+                                    int cropX, int cropY, int cropWidth, int cropHeight, int outWidth, int outHeight) {
+        int shift = format == YuvConverter.NV21 ? 1 : 0;
+        byte[] out = new byte[YuvScaler.frameSize(format, outWidth, outHeight)];
+        referencePlane(data, 0, width, 1, cropX, cropY, cropWidth, cropHeight, out, 0, outWidth, outWidth, outHeight);
+        for (int channel = 0; channel < 2; channel++)
+            referencePlane(data, width * height + channel, width, 2, cropX / 2, cropY >> shift,
+                    cropWidth / 2, cropHeight >> shift,
+                    out, outWidth * outHeight + channel, outWidth, outWidth / 2, outHeight >> shift);
+        return out;
+    }
+
+    private static void referencePlane(byte[] src, int srcOffset, int srcStride, int step,
+                                       int x0, int y0, int srcWidth, int srcHeight,
+                                       byte[] dst, int dstOffset, int dstStride, int dstWidth, int dstHeight) {
+        boolean box = srcWidth % dstWidth == 0 && srcHeight % dstHeight == 0
+                && srcWidth / dstWidth == srcHeight / dstHeight;
+        for (int row = 0; row < dstHeight; row++) {
+            for (int col = 0; col < dstWidth; col++) {
+                int value;
+                if (box) {
+                    int factor = srcWidth / dstWidth;
+                    int sum = 0;
+                    for (int dy = 0; dy < factor; dy++) {
+                        for (int dx = 0; dx < factor; dx++)
+                            sum += sample(src, srcOffset, srcStride, step, x0 + col * factor + dx, y0 + row * factor + dy);
+                    }
+                    value = (sum + factor * factor / 2) / (factor * factor);
+                } else {
+                    double x = Math.max(0, (col + 0.5) * srcWidth / dstWidth - 0.5);
+                    double y = Math.max(0, (row + 0.5) * srcHeight / dstHeight - 0.5);
+                    int left = Math.min((int) x, srcWidth - 1);
+                    int top = Math.min((int) y, srcHeight - 1);
+                    int right = Math.min(left + 1, srcWidth - 1);
+                    int bottom = Math.min(top + 1, srcHeight - 1);
+                    double fx = x - (int) x;
+                    double fy = y - (int) y;
+                    double upper = sample(src, srcOffset, srcStride, step, x0 + left, y0 + top) * (1 - fx)
+                            + sample(src, srcOffset, srcStride, step, x0 + right, y0 + top) * fx;
+                    double lower = sample(src, srcOffset, srcStride, step, x0 + left, y0 + bottom) * (1 - fx)
+                            + sample(src, srcOffset, srcStride, step, x0 + right, y0 + bottom) * fx;
+                    value = (int) Math.round(upper * (1 - fy) + lower * fy);
+                }
+                dst[dstOffset + row * dstStride + col * step] = (byte) value;
+            }
+        }
+    }
+
+    private static int sample(byte[] src, int offset, int stride, int step, int x, int y) {
+        return src[offset + y * stride + x * step] & 0xff;
+    }
+
+    private static void assertClose(String message, byte[] expected, byte[] actual, int tolerance) {
+        assertEquals(message, expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            int difference = Math.abs((expected[i] & 0xff) - (actual[i] & 0xff));
+            assertTrue(message + ", байт " + i + ": " + (expected[i] & 0xff) + " и " + (actual[i] & 0xff),
+                    difference <= tolerance);
+        }
+    }
+
+    private static byte[] randomFrame(int format, int width, int height, long seed) {
+        byte[] data = new byte[YuvScaler.frameSize(format, width, height)];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.camerastream.record;
+
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Буфер событий с приёмником, который запоминает переданные кадры: вытеснение по памяти,
+// числу кадров и времени, порядок истории и живых кадров и поведение при медленном приёмнике.
+// Кадр номер i помечен временем i и содержимым, по которому его можно узнать.
+public class PreEventBufferTest {
+    private static final StreamConfig CONFIG = new StreamConfig(YuvConverter.NV21, 8, 4, 12, 0, false);
+    private static final long HOUR_NANOS = 3600000000000L;
+
+    private PreEventBuffer buffer;
+
+    // Запоминает время и копию каждого кадра. Если закрыт, ждёт open() внутри write().
+    private static class RecordingSink implements PreEventBuffer.Sink {
+        final List<Long> timestamps = new ArrayList<Long>();
+        final List<byte[]> frames = new ArrayList<byte[]>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch gate;
+
+        RecordingSink(boolean open) {
+            gate = new CountDownLatch(open ? 0 : 1);
+        }
+
+        void open() {
+            gate.countDown();
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length, StreamConfig config, long timestampNanos)
+                throws InterruptedException {
+            entered.countDown();
+            gate.await();
+            synchronized (this) {
+                timestamps.add(timestampNanos);
+                frames.add(Arrays.copyOfRange(data, offset, offset + length));
+            }
+        }
+
+        synchronized List<Long> getTimestamps() {
+            return new ArrayList<Long>(timestamps);
+        }
+    }
+
+    @After
+    public void stopBuffer() {
+        if (buffer != null)
+            buffer.stop();
+    }
+
+    @Test(timeout = 10000)
+    public void evictsOldestWhenMemoryRunsOut() throws Exception {
+        RecordingSink sink = new RecordingSink(true);
+        buffer = new PreEventBuffer(100, 100, HOUR_NANOS, sink);
+        buffer.start();
+        // В 100 байт помещаются три кадра по 30: каждый новый вытесняет самый старый.
+        for (int i = 0; i < 5; i++)
+            assertTrue(buffer.add(frame(i, 30), 30, CONFIG, i));
+        assertEquals(3, buffer.getFrameCount());
+        assertEquals(0, buffer.getDroppedFrames());
+
+        buffer.trigger();
+        awaitWritten(3);
+        assertEquals(Arrays.asList(2L, 3L, 4L), sink.getTimestamps());
+        assertFrames(sink, 2, 30);
+    }
+
+    @Test(timeout = 10000)
+    public void evictsFramesOlderThanHistory() throws Exception {
+        RecordingSink sink = new RecordingSink(true);
+        buffer = new PreEventBuffer(1000, 100, 100, sink);
+        buffer.start();
+        for (int i = 0; i <= 4; i++)
+            assertTrue(buffer.add(frame(i, 10), 10, CONFIG, i * 50L));
+        // Хранятся кадры не старше 100 нс от последнего: 100, 150 и 200.
+        assertEquals(3, buffer.getFrameCount());
+        assertEquals(100, buffer.getBufferedNanos());
+
+        buffer.trigger();
+        awaitWritten(3);
+        assertEquals(Arrays.asList(100L, 150L, 200L), sink.getTimestamps());
+    }
+
+    @Test(timeout = 10000)
+    public void evictsBeyondMaxFrames() throws Exception {
+        buffer = new PreEventBuffer(1000, 4, HOUR_NANOS, new RecordingSink(true));
+        for (int i = 0; i < 10; i++)
+            assertTrue(buffer.add(frame(i, 10), 10, CONFIG, i));
+        assertEquals(4, buffer.getFrameCount());
+        assertEquals(3, buffer.getBufferedNanos());
+    }
+
+    @Test(timeout = 10000)
+    public void arenaWrapKeepsFramesIntact() throws Exception {
+        RecordingSink sink = new RecordingSink(true);
+        buffer = new PreEventBuffer(100, 64, HOUR_NANOS, sink);
+        buffer.start();
+        Random random = new Random(1);
+        int count = 300;
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            lengths[i] = 1 + random.nextInt(40);
+            // Незащищённый кадр всегда можно вытеснить, поэтому кадр не больше массива помещается.
+            assertTrue("кадр " + i, buffer.add(frame(i, lengths[i]), lengths[i], CONFIG, i));
+        }
+        int kept = buffer.getFrameCount();
+        int bytes = 0;
+        for (int i = count - kept; i < count; i++)
+            bytes += lengths[i];
+        assertTrue(bytes <= 100);
+        assertTrue(kept >= 2);
+
+        buffer.trigger();
+        awaitWritten(kept);
+        List<Long> timestamps = sink.getTimestamps();
+        assertEquals(kept, timestamps.size());
+        for (int i = 0; i < kept; i++) {
+            int index = count - kept + i;
+            assertEquals(Long.valueOf(index), timestamps.get(i));
+            assertArrayEquals("кадр " + index, frame(index, lengths[index]), sink.frames.get(i));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void triggerSendsHistoryThenLiveFrames() throws Exception {
+        RecordingSink sink = new RecordingSink(true);
+        buffer = new PreEventBuffer(1000, 100, HOUR_NANOS, sink);
+        buffer.start();
+        for (int i = 0; i < 5; i++)
+            buffer.add(frame(i, 10), 10, CONFIG, i);
+        buffer.trigger();
+        assertTrue(buffer.isLive());
+        for (int i = 5; i < 10; i++)
+            buffer.add(frame(i, 10), 10, CONFIG, i);
+        awaitWritten(10);
+        buffer.stop();
+        assertEquals(sequence(0, 10), sink.getTimestamps());
+        assertFrames(sink, 0, 10);
+    }
+
+    @Test(timeout = 10000)
+    public void stopLiveSendsFramesAddedBefore() throws Exception {
+        RecordingSink sink = new RecordingSink(false);
+        buffer = new PreEventBuffer(1000, 100, HOUR_NANOS, sink);
+        buffer.start();
+        buffer.trigger();
+        for (int i = 0; i < 4; i++)
+            buffer.add(frame(i, 10), 10, CONFIG, i);
+        sink.entered.await();
+        // Приёмник ещё пишет первый кадр, остальные ждут в буфере.
+        buffer.stopLive();
+        assertFalse(buffer.isLive());
+        buffer.add(frame(4, 10), 10, CONFIG, 4);
+        buffer.add(frame(5, 10), 10, CONFIG, 5);
+        sink.open();
+        awaitWritten(4);
+        buffer.stop();
+        assertEquals(sequence(0, 4), sink.getTimestamps());
+        // Кадры после stopLive() остаются историей для следующего события.
+        assertEquals(6, buffer.getFrameCount());
+    }
+
+    @Test(timeout = 10000)
+    public void secondTriggerDoesNotResend() throws Exception {
+        RecordingSink sink = new RecordingSink(true);
+        buffer = new PreEventBuffer(1000, 100, HOUR_NANOS, sink);
+        buffer.start();
+        for (int i = 0; i < 3; i++)
+            buffer.add(frame(i, 10), 10, CONFIG, i);
+        buffer.trigger();
+        awaitWritten(3);
+        buffer.trigger();
+        buffer.add(frame(3, 10), 10, CONFIG, 3);
+        awaitWritten(4);
+        buffer.stop();
+        assertEquals(sequence(0, 4), sink.getTimestamps());
+    }
+
+    @Test(timeout = 10000)
+    public void slowSinkDropsInsteadOfBlocking() throws Exception {
+        RecordingSink sink = new RecordingSink(false);
+        buffer = new PreEventBuffer(100, 100, HOUR_NANOS, sink);
+        buffer.start();
+        buffer.trigger();
+        assertTrue(buffer.add(frame(0, 30), 30, CONFIG, 0));
+        sink.entered.await();
+        assertTrue(buffer.add(frame(1, 30), 30, CONFIG, 1));
+        assertTrue(buffer.add(frame(2, 30), 30, CONFIG, 2));
+        // Все кадры ждут приёмника и не вытесняются: новые пропускаются сразу, без ожидания.
+        for (int i = 3; i < 20; i++)
+            assertFalse(buffer.add(frame(i, 30), 30, CONFIG, i));
+        assertEquals(17, buffer.getDroppedFrames());
+
+        sink.open();
+        awaitWritten(3);
+        // Переданные кадры снова можно вытеснять, и живые кадры идут дальше.
+        assertTrue(buffer.add(frame(20, 30), 30, CONFIG, 20));
+        awaitWritten(4);
+        buffer.stop();
+        assertEquals(Arrays.asList(0L, 1L, 2L, 20L), sink.getTimestamps());
+    }
+
+    private void awaitWritten(long count) throws InterruptedException {
+        while (buffer.getWrittenFrames() < count)
+            Thread.sleep(1);
+    }
+
+    // Проверяет содержимое кадров, переданных подряд начиная с номера first.
+    private static void assertFrames(RecordingSink sink, int first, int length) {
+        List<byte[]> frames;
+        synchronized (sink) {
+            frames = new ArrayList<byte[]>(sink.frames);
+        }
+        for (int i = 0; i < frames.size(); i++)
+            assertArrayEquals("кадр " + (first + i), frame(first + i, length), frames.get(i));
+    }
+
+    private static List<Long> sequence(int from, int to) {
+        List<Long> result = new ArrayList<Long>();
+        for (long i = from; i < to; i++)
+            result.add(i);
+        return result;
+    }
+
+    private static byte[] frame(int index, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) (index * 31 + i);
+        return data;
+    }
+}
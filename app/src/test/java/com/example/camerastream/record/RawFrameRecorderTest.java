@@ -0,0 +1,157 @@
+package com.example.camerastream.record;
+
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Запись RawFrameRecorder читается RawFrameReader кадр в кадр.
+public class RawFrameRecorderTest {
+    private static final StreamConfig SMALL = new StreamConfig(YuvConverter.NV21, 8, 4, 12, 90, false);
+    private static final StreamConfig LARGE = new StreamConfig(YuvConverter.YUY2, 8, 6, 16, 0, true);
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("RawFrameRecorderTest", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void roundTripAcrossSegments() throws Exception {
+        byte[][] frames = frames(40, 0, 1);
+        // В сегмент помещается всего несколько кадров, поэтому запись делится на много сегментов.
+        record(frames, 0, 4 * LARGE.frameSize, 0);
+
+        RawFrameReader reader = new RawFrameReader(directory);
+        try {
+            assertTrue("сегментов " + reader.getSegmentCount(), reader.getSegmentCount() > 1);
+            check(reader, frames);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void segmentsSplitByTime() throws Exception {
+        byte[][] frames = frames(10, 0, 2);
+        // По сегменту на каждые три кадра: время кадров идёт с шагом 1000 нс.
+        record(frames, 0, 64 * LARGE.frameSize, 3000);
+
+        RawFrameReader reader = new RawFrameReader(directory);
+        assertEquals(4, reader.getSegmentCount());
+        check(reader, frames);
+    }
+
+    @Test
+    public void secondRecordingContinuesNumbering() throws Exception {
+        byte[][] first = frames(5, 0, 3);
+        byte[][] second = frames(7, first.length, 4);
+        record(first, 0, 64 * LARGE.frameSize, 0);
+        record(second, first.length, 64 * LARGE.frameSize, 0);
+
+        RawFrameReader reader = new RawFrameReader(directory);
+        assertEquals(2, reader.getSegmentCount());
+        byte[][] all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        check(reader, all);
+    }
+
+    @Test
+    public void truncatedIndexEntryIsSkipped() throws Exception {
+        byte[][] frames = frames(6, 0, 5);
+        record(frames, 0, 64 * LARGE.frameSize, 0);
+        // Запись оборвалась посреди записи индекса.
+        FileOutputStream out = new FileOutputStream(new File(directory,
+                SegmentIndex.segmentName(1, SegmentIndex.INDEX_SUFFIX)), true);
+        try {
+            out.write(new byte[SegmentIndex.ENTRY_SIZE / 2]);
+        } finally {
+            out.close();
+        }
+
+        RawFrameReader reader = new RawFrameReader(directory);
+        check(reader, frames);
+    }
+
+    @Test
+    public void oversizedFrameIsDropped() throws Exception {
+        RawFrameRecorder recorder = new RawFrameRecorder(directory, 4 * SMALL.frameSize, 0, SMALL.frameSize, 2);
+        recorder.start();
+        try {
+            assertFalse(recorder.record(new byte[LARGE.frameSize], LARGE.frameSize, LARGE, 0));
+            assertEquals(1, recorder.getDroppedFrames());
+        } finally {
+            recorder.stop();
+        }
+    }
+
+    // Кадры двух размеров и форматов вперемешку; first — номер первого кадра в записи.
+    private static byte[][] frames(int count, int first, long seed) {
+        Random random = new Random(seed);
+        byte[][] frames = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            frames[i] = new byte[config(first + i).frameSize];
+            random.nextBytes(frames[i]);
+        }
+        return frames;
+    }
+
+    private static StreamConfig config(int frame) {
+        return frame % 3 == 0 ? LARGE : SMALL;
+    }
+
+    // Время кадра — его номер в записи, умноженный на 1000 нс.
+    private void record(byte[][] frames, int first, long segmentBytes, long segmentNanos) throws Exception {
+        RawFrameRecorder recorder = new RawFrameRecorder(directory, segmentBytes, segmentNanos, LARGE.frameSize, 2);
+        recorder.start();
+        try {
+            for (int i = 0; i < frames.length; i++) {
+                assertTrue(recorder.recordWaiting(frames[i], 0, frames[i].length,
+                        config(first + i), (first + i) * 1000L));
+            }
+        } finally {
+            recorder.stop();
+        }
+        assertNull(recorder.getFailure());
+        assertEquals(frames.length, recorder.getRecordedFrames());
+    }
+
+    private static void check(RawFrameReader reader, byte[][] frames) throws IOException {
+        assertEquals(frames.length, reader.getFrameCount());
+        byte[] buffer = new byte[LARGE.frameSize];
+        for (int frame = 0; frame < frames.length; frame++) {
+            assertEquals("время кадра " + frame, frame * 1000L, reader.getTimestampNanos(frame));
+            assertEquals("параметры кадра " + frame, config(frame), reader.getConfig(frame));
+            int length = reader.readFrame(frame, buffer);
+            assertEquals("длина кадра " + frame, frames[frame].length, length);
+            assertArrayEquals("кадр " + frame, frames[frame], Arrays.copyOf(buffer, length));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.camerastream.stream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Трансляция 30 кадров в секунду: контроллер смотрит на байты, ушедшие клиентам,
+// и на кадры, выброшенные из их очередей, а не на размер сжатых кадров.
+public class AdaptiveQualityControllerTest {
+    private static final long FRAME_NANOS = 1000000000L / 30;
+    private static final long TARGET_ENCODE_NANOS = 40000000L;
+    private static final long MAX_BYTES_PER_SECOND = 1000000;
+
+    private final AdaptiveQualityController controller =
+            new AdaptiveQualityController(40, 90, 4, 3, TARGET_ENCODE_NANOS, MAX_BYTES_PER_SECOND);
+    private long now = 1;
+    private long sentBytes;
+    private long droppedFrames;
+
+    @Test
+    public void unsentFramesDoNotLowerQuality() {
+        // Кадры сжимаются быстро, а клиентов нет: отправлять нечего, поток не растёт.
+        run(90, 0, 0);
+        assertEquals(90, controller.getQuality());
+        assertEquals(0, controller.getBytesPerSecond());
+    }
+
+    @Test
+    public void sentBytesOverLimitLowerQuality() {
+        run(60, 2 * MAX_BYTES_PER_SECOND / 30, 0);
+        assertTrue("поток " + controller.getBytesPerSecond(), controller.getBytesPerSecond() > MAX_BYTES_PER_SECOND);
+        assertTrue("качество " + controller.getQuality(), controller.getQuality() < 90);
+    }
+
+    @Test
+    public void clientDropsDegradeUntilTheyStop() {
+        // Каждый третий кадр выбрасывается из очереди медленного клиента.
+        for (int i = 0; i < 300; i++)
+            frame(MAX_BYTES_PER_SECOND / 60, i % 3 == 0 ? 1 : 0);
+        assertTrue("потери " + controller.getDropRatio(), controller.getDropRatio() > 0.3);
+        assertEquals(40, controller.getQuality());
+        assertTrue(controller.getScale() > 1 || controller.getFrameSkip() > 0);
+
+        // Клиент догнал: потерь нет, параметры восстанавливаются.
+        run(600, MAX_BYTES_PER_SECOND / 60, 0);
+        assertEquals(0, controller.getDropRatio(), 0);
+        assertEquals(1, controller.getScale());
+        assertEquals(0, controller.getFrameSkip());
+        assertEquals(90, controller.getQuality());
+    }
+
+    @Test
+    public void restartedServerStartsNewWindow() {
+        run(60, MAX_BYTES_PER_SECOND / 60, 0);
+        // Новый сервер считает байты с нуля.
+        sentBytes = 0;
+        run(60, MAX_BYTES_PER_SECOND / 60, 0);
+        long rate = controller.getBytesPerSecond();
+        assertTrue("поток " + rate, rate > MAX_BYTES_PER_SECOND / 4 && rate < MAX_BYTES_PER_SECOND);
+        assertEquals(90, controller.getQuality());
+    }
+
+    private void run(int frames, long bytesPerFrame, long dropsPerFrame) {
+        for (int i = 0; i < frames; i++)
+            frame(bytesPerFrame, dropsPerFrame);
+    }
+
+    private void frame(long bytes, long drops) {
+        sentBytes += bytes;
+        droppedFrames += drops;
+        controller.onFrameEncoded(TARGET_ENCODE_NANOS / 4, sentBytes, droppedFrames, now);
+        now += FRAME_NANOS;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.camerastream.stream;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+// JPEG кодировщика читается обычным декодером (ImageIO), близок к исходному кадру и не зависит
+// от числа потоков: полосы с маркерами перезапуска декодируются в те же точки, что и один скан.
+public class JpegEncoderTest {
+    // Размеры, кратные и не кратные MCU 16x16.
+    private static final int[][] SIZES = {{320, 240}, {200, 120}, {64, 18}};
+
+    @Test
+    public void decodesCloseToSource() throws IOException {
+        JpegEncoder encoder = new JpegEncoder(1, 0);
+        for (int[] size : SIZES) {
+            byte[] frame = frame(size[0], size[1]);
+            BufferedImage image = decode(encode(encoder, frame, size[0], size[1], 90));
+            assertEquals(size[0], image.getWidth());
+            assertEquals(size[1], image.getHeight());
+            double psnr = psnr(fullRange(frame, size[0], size[1]), pixels(image));
+            assertTrue(size[0] + "x" + size[1] + ": " + psnr + " дБ", psnr > 40);
+        }
+    }
+
+    @Test
+    public void lowerQualityIsSmaller() {
+        JpegEncoder encoder = new JpegEncoder(1, 0);
+        byte[] frame = frame(320, 240);
+        int high = encoder.encode(frame, 320, 240, 90);
+        int low = encoder.encode(frame, 320, 240, 30);
+        assertTrue(low + " >= " + high, low < high);
+    }
+
+    @Test
+    public void threadsDecodeToSamePixels() throws IOException {
+        JpegEncoder single = new JpegEncoder(1, 0);
+        for (int threads = 2; threads <= 4; threads++) {
+            JpegEncoder parallel = new JpegEncoder(threads, 0);
+            try {
+                for (int[] size : SIZES) {
+                    byte[] frame = frame(size[0], size[1]);
+                    byte[] expected = encode(single, frame, size[0], size[1], 75);
+                    byte[] actual = encode(parallel, frame, size[0], size[1], 75);
+                    assertArrayEquals(threads + " потоков, " + size[0] + "x" + size[1],
+                            pixels(decode(expected)), pixels(decode(actual)));
+                    // Повторное кодирование того же кадра даёт те же байты.
+                    assertArrayEquals(actual, encode(parallel, frame, size[0], size[1], 75));
+                }
+            } finally {
+                parallel.shutdown();
+            }
+        }
+    }
+
+    // Кадр меньше порога и кадр после остановки потоков кодируются одной полосой, как в один поток.
+    @Test
+    public void singleStripeMatchesSingleThreadBytes() {
+        byte[] frame = frame(320, 240);
+        byte[] expected = encode(new JpegEncoder(1, 0), frame, 320, 240, 80);
+        JpegEncoder parallel = new JpegEncoder(4, 320 * 240 + 1);
+        assertArrayEquals(expected, encode(parallel, frame, 320, 240, 80));
+        JpegEncoder stopped = new JpegEncoder(4, 0);
+        stopped.shutdown();
+        assertArrayEquals(expected, encode(stopped, frame, 320, 240, 80));
+        parallel.shutdown();
+    }
+
+    @Test(timeout = 20000)
+    public void shutdownDuringEncoding() throws IOException {
+        byte[] frame = frame(200, 120);
+        int[] expected = pixels(decode(encode(new JpegEncoder(1, 0), frame, 200, 120, 75)));
+        for (int round = 0; round < 50; round++) {
+            final JpegEncoder encoder = new JpegEncoder(3, 0);
+            Thread stopper = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Thread.yield();
+                    encoder.shutdown();
+                }
+            });
+            stopper.start();
+            for (int i = 0; i < 3; i++)
+                assertArrayEquals(expected, pixels(decode(encode(encoder, frame, 200, 120, 75))));
+        }
+    }
+
+    @Test
+    public void byteBufferMatchesArray() {
+        JpegEncoder encoder = new JpegEncoder(2, 0);
+        try {
+            byte[] frame = frame(200, 120);
+            byte[] expected = encode(encoder, frame, 200, 120, 60);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length + 3);
+            buffer.position(3);
+            assertEquals(expected.length, encoder.writeTo(buffer));
+            byte[] actual = new byte[expected.length];
+            buffer.position(3);
+            buffer.get(actual);
+            assertArrayEquals(expected, actual);
+        } finally {
+            encoder.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOddSize() {
+        new JpegEncoder(1, 0).encode(new byte[64 * 64 * 2], 63, 64, 80);
+    }
+
+    // Плавные градиенты яркости и цветности и несколько резких границ.
+    static byte[] frame(int width, int height) {
+        byte[] data = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = 16 + (x * 200 / width + y * 20 / height);
+                if (((x / 24) + (y / 24)) % 5 == 0)
+                    luma = 220;
+                data[y * width + x] = (byte) luma;
+            }
+        }
+        for (int y = 0; y < height / 2; y++) {
+            for (int x = 0; x < width / 2; x++) {
+                int index = width * height + y * width + 2 * x;
+                data[index] = (byte) (128 + 60 * x / width);
+                data[index + 1] = (byte) (100 + 100 * y / height);
+            }
+        }
+        return data;
+    }
+
+    // Байты кадра уходят в JPEG как есть, а декодер читает их как YCbCr полного диапазона (JFIF),
+    // поэтому и ожидаемые цвета считаются по формулам JFIF, а не BT.601 YuvConverter.
+    static int[] fullRange(byte[] data, int width, int height) {
+        int[] out = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = data[y * width + x] & 0xff;
+                int index = width * height + (y / 2) * width + (x & ~1);
+                int v = (data[index] & 0xff) - 128;
+                int u = (data[index + 1] & 0xff) - 128;
+                int r = clamp(luma + 1.402 * v);
+                int g = clamp(luma - 0.344136 * u - 0.714136 * v);
+                int b = clamp(luma + 1.772 * u);
+                out[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return out;
+    }
+
+    private static int clamp(double value) {
+        long rounded = Math.round(value);
+        return rounded < 0 ? 0 : (rounded > 255 ? 255 : (int) rounded);
+    }
+
+    private static byte[] encode(JpegEncoder encoder, byte[] frame, int width, int height, int quality) {
+        byte[] out = new byte[encoder.encode(frame, width, height, quality)];
+        assertEquals(out.length, encoder.writeTo(out, 0));
+        return out;
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull("ImageIO не прочитал JPEG", image);
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    static double psnr(int[] expected, int[] actual) {
+        assertEquals(expected.length, actual.length);
+        double sum = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                int difference = ((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff);
+                sum += difference * difference;
+            }
+        }
+        double mse = sum / (expected.length * 3);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+}
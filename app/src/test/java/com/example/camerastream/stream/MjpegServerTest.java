@@ -0,0 +1,195 @@
+package com.example.camerastream.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Клиент на localhost получает от MjpegServer опубликованные кадры частями multipart.
+public class MjpegServerTest {
+    private static final int TIMEOUT_MILLIS = 5000;
+
+    private MjpegServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new MjpegServer(0, 2, 2);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test(timeout = 20000)
+    public void clientReceivesPublishedFrames() throws Exception {
+        Socket socket = connect();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            String status = readLine(in);
+            assertTrue(status, status.startsWith("HTTP/1.0 200"));
+            boolean multipart = false;
+            String line;
+            while ((line = readLine(in)).length() > 0) {
+                if (line.equals("Content-Type: multipart/x-mixed-replace; boundary=" + MjpegServer.BOUNDARY))
+                    multipart = true;
+            }
+            assertTrue(multipart);
+
+            long sentBefore = server.getSentBytes();
+            int partBytes = 0;
+            for (int i = 0; i < 2; i++) {
+                byte[] jpeg = jpeg(i, 1000 + i);
+                partBytes += server.publish(jpeg, jpeg.length - 1, i).getPartLength();
+                assertArrayEquals(Arrays.copyOf(jpeg, jpeg.length - 1), readPart(in));
+            }
+            waitFor(server, sentBefore + partBytes);
+            assertEquals(2, server.getPublishedFrames());
+            assertEquals(0, server.getDroppedFrames());
+        } finally {
+            socket.close();
+        }
+    }
+
+    // Клиент, который не читает, теряет кадры, но не задерживает остальных.
+    @Test(timeout = 30000)
+    public void slowClientDoesNotStallOthers() throws Exception {
+        Socket slow = connect();
+        Socket fast = connect();
+        try {
+            DataInputStream slowIn = new DataInputStream(slow.getInputStream());
+            while (readLine(slowIn).length() > 0) {
+                // Заголовки ответа.
+            }
+            DataInputStream fastIn = new DataInputStream(new BufferedInputStream(fast.getInputStream()));
+            while (readLine(fastIn).length() > 0) {
+                // Заголовки ответа.
+            }
+
+            int frames = 100;
+            for (int i = 0; i < frames; i++) {
+                byte[] jpeg = jpeg(i, 256 * 1024);
+                server.publish(jpeg, jpeg.length, i);
+                // Быстрый клиент забирает кадры по мере публикации: последний кадр он получит,
+                // даже если успевает не за всеми.
+                if (i % 10 == 9 || i == frames - 1) {
+                    int last = -1;
+                    while (last != i)
+                        last = readPart(fastIn)[0];
+                }
+            }
+            assertTrue("кадры не выбрасывались", server.getDroppedFrames() > 0);
+        } finally {
+            slow.close();
+            fast.close();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void extraClientsAreClosed() throws Exception {
+        Socket first = connect();
+        Socket second = connect();
+        Socket third = connect();
+        try {
+            // Сервер закрывает соединение, не прочитав запрос, поэтому клиент может получить и сброс.
+            try {
+                assertEquals(-1, third.getInputStream().read());
+            } catch (SocketException e) {
+                // Connection reset.
+            }
+            assertEquals(2, server.getClientCount());
+        } finally {
+            first.close();
+            second.close();
+            third.close();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void stopClosesClients() throws Exception {
+        Socket socket = connect();
+        try {
+            InputStream in = socket.getInputStream();
+            while (readLine(in).length() > 0) {
+                // Заголовки ответа.
+            }
+            server.stop();
+            assertEquals(-1, in.read());
+            assertFalse(server.hasClients());
+        } finally {
+            socket.close();
+        }
+    }
+
+    // Подключается к серверу через loopback и отправляет запрос.
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getByAddress(new byte[] {127, 0, 0, 1}), server.getLocalPort());
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        OutputStream out = socket.getOutputStream();
+        out.write("GET / HTTP/1.0\r\nHost: localhost\r\n\r\n".getBytes("ISO-8859-1"));
+        out.flush();
+        return socket;
+    }
+
+    // Кадр с номером в первом байте; остальное содержимое серверу безразлично.
+    private static byte[] jpeg(int index, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+            data[i] = (byte) (index + i * 7);
+        data[0] = (byte) index;
+        return data;
+    }
+
+    private static byte[] readPart(DataInputStream in) throws IOException {
+        assertEquals("--" + MjpegServer.BOUNDARY, readLine(in));
+        int length = -1;
+        String line;
+        while ((line = readLine(in)).length() > 0) {
+            if (line.startsWith("Content-Length: "))
+                length = Integer.parseInt(line.substring("Content-Length: ".length()));
+            else
+                assertEquals("Content-Type: image/jpeg", line);
+        }
+        assertTrue("нет Content-Length", length >= 0);
+        byte[] data = new byte[length];
+        in.readFully(data);
+        assertEquals("", readLine(in));
+        return data;
+    }
+
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0)
+                throw new IOException("Соединение закрыто посреди строки");
+            if (c != '\r')
+                line.write(c);
+        }
+        return line.toString("ISO-8859-1");
+    }
+
+    // sentBytes растёт после отправки части, уже после того, как клиент мог её прочитать.
+    private static void waitFor(MjpegServer server, long sentBytes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (server.getSentBytes() < sentBytes && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(sentBytes, server.getSentBytes());
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.camerastream.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+// Клиент на localhost собирает картинку из сообщений TileStreamServer так же, как эталонный
+// клиент бенчмарка: ключевой кадр целиком, затем изменившиеся области поверх него.
+public class TileStreamServerTest {
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 64;
+
+    private TileStreamServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new TileStreamServer(0, 4, 2);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test(timeout = 20000)
+    public void clientRebuildsFrames() throws Exception {
+        Socket socket = connect();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            readResponseHeaders(in);
+            // Новый клиент просит ключевой кадр.
+            assertTrue(server.takeKeyframeRequest());
+            assertFalse(server.takeKeyframeRequest());
+
+            TileDeltaEncoder encoder = new TileDeltaEncoder(new JpegEncoder(1, 0), 32, 8, 4, Long.MAX_VALUE);
+            int[] canvas = new int[WIDTH * HEIGHT];
+            int deltas = 0;
+            for (int i = 0; i < 5; i++) {
+                byte[] frame = frame(i * 16);
+                byte[] message = encoder.encode(frame, WIDTH, HEIGHT, 90, i, i == 0);
+                assertNotNull(message);
+                server.publish(message);
+                int type = readMessage(in, canvas, i);
+                assertEquals(i == 0 ? TileDeltaEncoder.KEYFRAME : TileDeltaEncoder.DELTA, type);
+                if (type == TileDeltaEncoder.DELTA)
+                    deltas++;
+                double psnr = JpegEncoderTest.psnr(JpegEncoderTest.fullRange(frame, WIDTH, HEIGHT), canvas);
+                assertTrue("кадр " + i + ": " + psnr + " дБ", psnr > 35);
+            }
+            assertEquals(4, deltas);
+            assertEquals(0, server.getDroppedMessages());
+        } finally {
+            socket.close();
+        }
+    }
+
+    // Пока клиент не получил ключевой кадр, изменения ему не отправляются.
+    @Test(timeout = 20000)
+    public void deltasWaitForKeyframe() throws Exception {
+        Socket socket = connect();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            readResponseHeaders(in);
+            server.publish(message(TileDeltaEncoder.DELTA, 1, 100));
+            server.publish(message(TileDeltaEncoder.KEYFRAME, 2, 100));
+            server.publish(message(TileDeltaEncoder.DELTA, 3, 100));
+            for (int expected = 2; expected <= 3; expected++) {
+                byte[] message = new byte[100];
+                in.readFully(message);
+                assertEquals(expected, message[5]);
+            }
+            assertEquals(3, server.getPublishedMessages());
+        } finally {
+            socket.close();
+        }
+    }
+
+    // Клиент, который не читает, теряет очередь и снова ждёт ключевого кадра, а сервер его просит.
+    @Test(timeout = 30000)
+    public void slowClientWaitsForKeyframe() throws Exception {
+        Socket socket = connect();
+        try {
+            readResponseHeaders(new DataInputStream(socket.getInputStream()));
+            server.takeKeyframeRequest();
+            server.publish(message(TileDeltaEncoder.KEYFRAME, 0, 256 * 1024));
+            for (int i = 1; i < 100 && !server.takeKeyframeRequest(); i++)
+                server.publish(message(TileDeltaEncoder.DELTA, i, 256 * 1024));
+            assertTrue("очередь не переполнилась", server.getDroppedMessages() > 0);
+        } finally {
+            socket.close();
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getByAddress(new byte[] {127, 0, 0, 1}), server.getLocalPort());
+        socket.setSoTimeout(TIMEOUT_MILLIS);
+        OutputStream out = socket.getOutputStream();
+        out.write("GET / HTTP/1.0\r\nHost: localhost\r\n\r\n".getBytes("ISO-8859-1"));
+        out.flush();
+        return socket;
+    }
+
+    private static void readResponseHeaders(DataInputStream in) throws IOException {
+        String status = MjpegServerTest.readLine(in);
+        assertTrue(status, status.startsWith("HTTP/1.0 200"));
+        boolean tiles = false;
+        String line;
+        while ((line = MjpegServerTest.readLine(in)).length() > 0) {
+            if (line.equals("Content-Type: " + TileStreamServer.CONTENT_TYPE))
+                tiles = true;
+        }
+        assertTrue(tiles);
+    }
+
+    // Кадр с квадратом 16x16 на позиции x; остальная картинка от кадра к кадру не меняется.
+    private static byte[] frame(int x) {
+        byte[] data = JpegEncoderTest.frame(WIDTH, HEIGHT);
+        for (int row = 24; row < 40; row++)
+            for (int column = x; column < x + 16; column++)
+                data[row * WIDTH + column] = (byte) 235;
+        return data;
+    }
+
+    // Сообщение, которое сервер не разбирает: тип и номер в байтах 4 и 5.
+    private static byte[] message(int type, int number, int length) {
+        byte[] message = new byte[length];
+        message[4] = (byte) type;
+        message[5] = (byte) number;
+        return message;
+    }
+
+    // Читает сообщение, рисует его области в canvas и возвращает тип.
+    private static int readMessage(DataInputStream in, int[] canvas, long timestampNanos) throws IOException {
+        assertEquals(TileDeltaEncoder.MAGIC, in.readInt());
+        int type = in.readUnsignedByte();
+        assertEquals(WIDTH, in.readUnsignedShort());
+        assertEquals(HEIGHT, in.readUnsignedShort());
+        assertEquals(timestampNanos, in.readLong());
+        int regions = in.readUnsignedShort();
+        for (int i = 0; i < regions; i++) {
+            int x = in.readUnsignedShort();
+            int y = in.readUnsignedShort();
+            int width = in.readUnsignedShort();
+            int height = in.readUnsignedShort();
+            byte[] jpeg = new byte[in.readInt()];
+            in.readFully(jpeg);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+            assertNotNull(image);
+            assertEquals(width, image.getWidth());
+            assertEquals(height, image.getHeight());
+            image.getRGB(0, 0, width, height, canvas, y * WIDTH + x, WIDTH);
+        }
+        return type;
+    }
+}
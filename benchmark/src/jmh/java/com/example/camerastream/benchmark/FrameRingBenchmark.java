@@ -0,0 +1,95 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.Frame;
+import com.example.camerastream.frame.FrameRing;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность передачи кадров от одного писателя одному читателю: кольцо
+// FrameRing против ArrayBlockingQueue с вытеснением самого старого кадра, как было в
+// FrameStage. Писатель и читатель работают одновременно, JMH показывает операции каждого.
+// Режим BLOCK здесь не меряется: ждущий писатель не даёт JMH завершить итерацию.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameRingBenchmark {
+    @Param({"1", "4", "16"})
+    public int capacity;
+
+    private final byte[] data = new byte[16];
+    private final StreamConfig config = new StreamConfig(YuvConverter.NV21, 640, 480, 12, 0, false);
+    private FrameRing ring;
+    private ArrayBlockingQueue<Frame> queue;
+    private Frame[] frames;
+
+    @Setup
+    public void setUp() {
+        ring = new FrameRing(capacity, FrameRing.OVERWRITE_OLDEST);
+        queue = new ArrayBlockingQueue<Frame>(capacity);
+        // Объектов кадров больше, чем мест в очереди и у читателя, чтобы их не переиспользовать раньше времени.
+        frames = new Frame[capacity + 64];
+        for (int i = 0; i < frames.length; i++)
+            frames[i] = new Frame();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        long sequence;
+    }
+
+    @State(Scope.Thread)
+    public static class Consumer {
+        final Frame frame = new Frame();
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public boolean ringOffer(Producer producer) {
+        return ring.offer(data, null, config, producer.sequence++);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public boolean ringPoll(Consumer consumer) {
+        return ring.poll(consumer.frame);
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public boolean queueOffer(Producer producer) {
+        Frame frame = frames[(int) (producer.sequence++ % frames.length)];
+        frame.data = data;
+        frame.config = config;
+        frame.timestampNanos = producer.sequence;
+        boolean accepted = true;
+        while (!queue.offer(frame)) {
+            if (queue.poll() != null)
+                accepted = false;
+        }
+        return accepted;
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public Frame queuePoll() {
+        return queue.poll();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.FrameStatistics;
+import com.example.camerastream.frame.YuvConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Цена статистики кадра, которую анализ считает для каждого взятого им кадра.
+// Шаг 4 (как в приложении) должен укладываться в доли миллисекунды на кадр 1080p.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrameStatisticsBenchmark {
+    @Param({SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String size;
+
+    @Param({"1", "2", "4"})
+    public int step;
+
+    private byte[] data;
+    private int width;
+    private int height;
+    private FrameStatistics statistics;
+
+    @Setup
+    public void setUp() {
+        width = SyntheticFrames.parseWidth(size);
+        height = SyntheticFrames.parseHeight(size);
+        data = SyntheticFrames.nv21(width, height, 1);
+        statistics = new FrameStatistics(step);
+    }
+
+    @Benchmark
+    public float compute() {
+        statistics.compute(data, YuvConverter.NV21, width, height);
+        return statistics.getSharpness();
+    }
+}
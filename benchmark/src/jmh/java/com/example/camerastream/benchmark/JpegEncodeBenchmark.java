@@ -0,0 +1,101 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.YuvConverter;
+import com.example.camerastream.stream.JpegEncoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+// Сжатие кадра в JPEG. YuvImage.compressToJpeg на JVM недоступен, поэтому измеряется
+// ближайший аналог: перевод NV21 -> ARGB и кодирование стандартным кодеком ImageIO.
+// Для сравнения — JpegEncoder прямо из NV21 в переиспользуемый буфер, в одном потоке
+// и полосами на всех ядрах.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JpegEncodeBenchmark {
+    @Param({SyntheticFrames.QVGA, SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String size;
+
+    @Param({"100", "75"})
+    public int quality;
+
+    private byte[] data;
+    private int[] pixels;
+    private int width;
+    private int height;
+    private BufferedImage image;
+    private ImageWriter writer;
+    private ImageWriteParam writeParam;
+    private ByteArrayOutputStream output;
+    private JpegEncoder sequentialEncoder;
+    private JpegEncoder parallelEncoder;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        width = SyntheticFrames.parseWidth(size);
+        height = SyntheticFrames.parseHeight(size);
+        data = SyntheticFrames.nv21(width, height, 1);
+        pixels = new int[width * height];
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        writeParam = writer.getDefaultWriteParam();
+        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        writeParam.setCompressionQuality(quality / 100f);
+        output = new ByteArrayOutputStream(width * height);
+        sequentialEncoder = new JpegEncoder(1, 0);
+        parallelEncoder = new JpegEncoder(Runtime.getRuntime().availableProcessors(), 0);
+        encoded = new byte[width * height * 2];
+    }
+
+    @TearDown
+    public void tearDown() {
+        writer.dispose();
+        sequentialEncoder.shutdown();
+        parallelEncoder.shutdown();
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        YuvConverter.convert(data, YuvConverter.NV21, width, height, pixels);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        output.reset();
+        ImageOutputStream stream = ImageIO.createImageOutputStream(output);
+        try {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            stream.close();
+        }
+        return output.size();
+    }
+
+    @Benchmark
+    public int encodeNv21() {
+        return sequentialEncoder.encode(data, width, height, quality, encoded, 0);
+    }
+
+    @Benchmark
+    public int encodeNv21Striped() {
+        return parallelEncoder.encode(data, width, height, quality, encoded, 0);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.analysis.MotionDetector;
+import com.example.camerastream.frame.YuvConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Цена обнаружения движения на кадр. Два разных кадра чередуются, чтобы каждый раз
+// менялись ячейки и размечались области. Время почти не зависит от размера кадра:
+// из каждой ячейки берётся не больше 8 x 8 точек.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MotionDetectorBenchmark {
+    @Param({SyntheticFrames.VGA, SyntheticFrames.FULL_HD})
+    public String size;
+
+    @Param({"16", "32"})
+    public int columns;
+
+    private byte[][] frames;
+    private int width;
+    private int height;
+    private MotionDetector detector;
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        width = SyntheticFrames.parseWidth(size);
+        height = SyntheticFrames.parseHeight(size);
+        frames = new byte[][]{SyntheticFrames.nv21(width, height, 1), SyntheticFrames.nv21(width, height, 2)};
+        detector = new MotionDetector(columns, columns * 3 / 4, 4, 1000000000L);
+    }
+
+    @Benchmark
+    public boolean process() {
+        timestamp += 33000000L;
+        return detector.process(frames[(int) (timestamp / 33000000L) & 1], YuvConverter.NV21, width, height,
+                timestamp);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.ParallelYuvConverter;
+import com.example.camerastream.frame.YuvConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+// Масштабирование многопоточного перевода по числу потоков. Порог однопоточного режима
+// отключён, чтобы и маленькие кадры шли через потоки: так видна цена их пробуждения.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelYuvConverterBenchmark {
+    @Param({SyntheticFrames.QVGA, SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String size;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    private byte[] data;
+    private int[] pixels;
+    private int width;
+    private int height;
+    private ParallelYuvConverter converter;
+
+    @Setup
+    public void setUp() {
+        width = SyntheticFrames.parseWidth(size);
+        height = SyntheticFrames.parseHeight(size);
+        data = SyntheticFrames.nv21(width, height, 1);
+        pixels = new int[width * height];
+        converter = new ParallelYuvConverter(threads, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        converter.shutdown();
+    }
+
+    @Benchmark
+    public int[] convert() {
+        converter.convert(data, YuvConverter.NV21, width, height, rotation, false, pixels);
+        return pixels;
+    }
+}
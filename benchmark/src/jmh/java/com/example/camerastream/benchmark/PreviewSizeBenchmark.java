@@ -0,0 +1,55 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.PreviewSize;
+import com.example.camerastream.frame.PreviewSizeSelector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Выбор размера предпросмотра по списку, типичному для камер телефонов.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PreviewSizeBenchmark {
+    private static final int[][] DEVICE_SIZES = {
+            {1920, 1080}, {1440, 1080}, {1280, 960}, {1280, 720}, {1056, 864}, {960, 720},
+            {960, 540}, {864, 480}, {800, 600}, {800, 480}, {768, 432}, {720, 480}, {640, 480},
+            {640, 360}, {576, 432}, {480, 320}, {384, 288}, {352, 288}, {320, 240}, {240, 160},
+            {176, 144}
+    };
+
+    private final List<PreviewSize> sizes = new ArrayList<PreviewSize>();
+    private final PreviewSizeSelector selector = new PreviewSizeSelector(12);
+
+    public PreviewSizeBenchmark() {
+        for (int[] size : DEVICE_SIZES)
+            sizes.add(new PreviewSize(size[0], size[1]));
+        selector.setFrameBudget(30, 1280L * 720 * 30);
+        selector.setSupportedSizes(0, sizes);
+    }
+
+    // Полное ранжирование, как при первой настройке камеры.
+    @Benchmark
+    public List<PreviewSize> rankPortrait() {
+        return selector.rank(sizes, 1080, 1776, 90);
+    }
+
+    @Benchmark
+    public List<PreviewSize> rankLandscape() {
+        return selector.rank(sizes, 1776, 1080, 0);
+    }
+
+    // Повторная настройка с тем же размером поверхности берёт выбор из кэша.
+    @Benchmark
+    public PreviewSize cachedPortrait() {
+        return selector.select(0, 1080, 1776, 90);
+    }
+}
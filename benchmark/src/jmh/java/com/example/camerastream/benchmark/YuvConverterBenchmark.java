@@ -0,0 +1,51 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.YuvConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Перевод NV21 -> ARGB с поворотом и без, как в ступени перевода конвейера.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvConverterBenchmark {
+    @Param({SyntheticFrames.QVGA, SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String size;
+
+    @Param({"0", "90", "270"})
+    public int rotation;
+
+    private byte[] data;
+    private int[] pixels;
+    private int width;
+    private int height;
+
+    @Setup
+    public void setUp() {
+        width = SyntheticFrames.parseWidth(size);
+        height = SyntheticFrames.parseHeight(size);
+        data = SyntheticFrames.nv21(width, height, 1);
+        pixels = new int[width * height];
+    }
+
+    @Benchmark
+    public int[] convert() {
+        YuvConverter.convert(data, YuvConverter.NV21, width, height, rotation, false, pixels);
+        return pixels;
+    }
+
+    @Benchmark
+    public int[] convertMirrored() {
+        YuvConverter.convert(data, YuvConverter.NV21, width, height, rotation, true, pixels);
+        return pixels;
+    }
+}
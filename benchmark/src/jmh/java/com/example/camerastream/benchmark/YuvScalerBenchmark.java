@@ -0,0 +1,63 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.YuvConverter;
+import com.example.camerastream.frame.YuvScaler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Уменьшение кадра NV21 до перевода в RGB и сам перевод уменьшенного кадра:
+// сумма обоих должна быть заметно меньше перевода полного кадра из YuvConverterBenchmark.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YuvScalerBenchmark {
+    @Param({SyntheticFrames.VGA, SyntheticFrames.HD, SyntheticFrames.FULL_HD})
+    public String size;
+
+    @Param({"2", "4"})
+    public int divisor;
+
+    private byte[] data;
+    private int width;
+    private int height;
+    private YuvScaler scaler;
+    private int[] pixels;
+
+    @Setup
+    public void setUp() {
+        width = SyntheticFrames.parseWidth(size);
+        height = SyntheticFrames.parseHeight(size);
+        data = SyntheticFrames.nv21(width, height, 1);
+        scaler = new YuvScaler();
+        pixels = new int[width * height];
+    }
+
+    @Benchmark
+    public byte[] box() {
+        return scaler.scale(data, YuvConverter.NV21, width, height, divisor);
+    }
+
+    // Произвольный коэффициент: 3/4 от делителя по каждой стороне.
+    @Benchmark
+    public byte[] bilinear() {
+        int outWidth = (width * 3 / (4 * divisor)) & ~1;
+        int outHeight = (height * 3 / (4 * divisor)) & ~1;
+        return scaler.scale(data, YuvConverter.NV21, width, height, 0, 0, width, height, outWidth, outHeight);
+    }
+
+    @Benchmark
+    public int[] boxThenConvert() {
+        byte[] scaled = scaler.scale(data, YuvConverter.NV21, width, height, divisor);
+        YuvConverter.convert(scaled, YuvConverter.NV21, scaler.getOutputWidth(), scaler.getOutputHeight(), pixels);
+        return pixels;
+    }
+}
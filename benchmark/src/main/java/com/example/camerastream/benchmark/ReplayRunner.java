@@ -0,0 +1,457 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.analysis.DuplicateFilter;
+import com.example.camerastream.frame.BufferRecycler;
+import com.example.camerastream.frame.Frame;
+import com.example.camerastream.frame.FrameBudgetScheduler;
+import com.example.camerastream.frame.FrameBus;
+import com.example.camerastream.frame.FrameMetrics;
+import com.example.camerastream.frame.FramePipeline;
+import com.example.camerastream.frame.FrameSource;
+import com.example.camerastream.frame.LatencyHistogram;
+import com.example.camerastream.frame.ReplayFrameSource;
+import com.example.camerastream.frame.SharedFrame;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+import com.example.camerastream.processing.AnalysisSubscriber;
+import com.example.camerastream.processing.FrameProcessor;
+import com.example.camerastream.processing.TileSubscriber;
+import com.example.camerastream.record.RawFrameReader;
+import com.example.camerastream.stream.AdaptiveQualityController;
+import com.example.camerastream.stream.MjpegServer;
+import com.example.camerastream.stream.TileDeltaEncoder;
+import com.example.camerastream.stream.TileStreamServer;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузочный прогон обработки кадров без телефона: кадры из записи RawFrameRecorder или
+// синтетические идут через тот же FrameProcessor, что и в MediaRecorderActivity (показ через
+// FramePipeline, трансляция с подстройкой качества, запись в буфер событий, анализ движения),
+// кроме Android-частей: Bitmap и YuvImage. Трансляция MJPEG идёт на localhost клиенту,
+// который только читает поток. В конце печатается устойчивая частота кадров, задержка
+// до «показа» и скорость выделения памяти. С tiles=on кадры ещё и транслируются изменениями
+// через TileStreamServer эталонному TileStreamClient: печатается, сколько трафика сэкономлено
+// и насколько собранная клиентом картинка близка к кадру.
+//
+// gradlew :benchmark:replay -Pargs="format=nv21 size=1280x720 mode=paced fps=30 frames=900"
+// Параметры (все необязательные):
+//   source=synthetic | <каталог записи>   format=nv21|nv16|yuy2   size=1280x720
+//   mode=paced|fast   fps=30 (0 — промежутки из записи)   frames=900
+//   buffers=<буферов источника, по умолчанию кадров шины + 2>
+//   threads=<число потоков перевода и сжатия>   stream=on|off   tiles=off|on
+//   budget=on|off (FrameBudgetScheduler с бюджетом по fps и threads ядрам)
+public final class ReplayRunner {
+    private static final int SYNTHETIC_FRAMES = 60;
+    private static final long DRAIN_TIMEOUT_NANOS = 5000000000L;
+    private static final int SPARE_BUFFERS = 2;
+    private static final int STREAM_QUEUE_CAPACITY = 2;
+    private static final int TILE_QUEUE_CAPACITY = 4;
+
+    private final FrameMetrics metrics = new FrameMetrics();
+    private final FrameProcessor processor;
+    private final AtomicLong displayedFrames = new AtomicLong();
+    private MjpegServer mjpegServer;
+    private Socket mjpegClient;
+    private TileStreamServer tileServer;
+    // Последний отправленный плитками кадр: с ним сравнивается картинка клиента.
+    private byte[] tileFrame;
+    private StreamConfig tileConfig;
+    private volatile long tileTimestampNanos;
+    private volatile long lastDisplayedNanos;
+
+    // budgetFps — частота для FrameBudgetScheduler, 0 — без планировщика.
+    private ReplayRunner(int threads, boolean stream, boolean tiles, int budgetFps) throws IOException {
+        FrameProcessor.Settings settings = new FrameProcessor.Settings();
+        settings.threads = threads;
+        settings.budgetFps = budgetFps;
+        settings.tileStreaming = tiles;
+        // Записанные кадры никуда не пишутся: важна цена копирования в буфер событий.
+        settings.recordPreEvent = true;
+        processor = new FrameProcessor(settings, metrics, new FramePipeline.Stage() {
+            @Override
+            public void process(Frame frame) {
+                long now = System.nanoTime();
+                metrics.record(FrameMetrics.TOTAL, now - frame.timestampNanos);
+                displayedFrames.incrementAndGet();
+                lastDisplayedNanos = now;
+            }
+        });
+        FrameBudgetScheduler scheduler = processor.getScheduler();
+        if (scheduler != null) {
+            // Изменения уровней печатаются сразу.
+            scheduler.setListener(new FrameBudgetScheduler.Listener() {
+                @Override
+                public void onStageChanged(FrameBudgetScheduler.Stage stage, int previousLevel, int loadPercent) {
+                    int decimation = stage.getDecimation();
+                    System.out.println("Ступень " + stage.getName() + ": уровень " + previousLevel + " -> "
+                            + stage.getLevel() + (decimation == 0 ? ", выключена" : ", каждый " + decimation
+                            + "-й кадр") + ", нагрузка " + loadPercent + "%, цена "
+                            + stage.getCostNanos() / 1000 + " мкс");
+                }
+            });
+        }
+        if (stream) {
+            mjpegServer = new MjpegServer(0, STREAM_QUEUE_CAPACITY, 1);
+            mjpegServer.start();
+            processor.getStream().setServer(mjpegServer);
+        }
+        TileSubscriber tileSubscriber = processor.getTiles();
+        if (tileSubscriber != null) {
+            tileServer = new TileStreamServer(0, TILE_QUEUE_CAPACITY, 1);
+            tileServer.start();
+            tileSubscriber.setServer(tileServer);
+            tileSubscriber.setListener(new TileSubscriber.Listener() {
+                @Override
+                public void onEncoded(SharedFrame frame, byte[] message) {
+                    StreamConfig config = frame.config;
+                    if (tileFrame == null || tileFrame.length < config.frameSize)
+                        tileFrame = new byte[config.frameSize];
+                    System.arraycopy(frame.data, 0, tileFrame, 0, config.frameSize);
+                    tileConfig = config;
+                    tileTimestampNanos = frame.timestampNanos;
+                }
+            });
+        }
+    }
+
+    private void start() {
+        processor.start();
+        processor.getRecording().start(null);
+    }
+
+    private void stop() {
+        processor.stop();
+        processor.getRecording().stop();
+        if (mjpegServer != null)
+            mjpegServer.stop();
+        if (tileServer != null)
+            tileServer.stop();
+    }
+
+    // Ждёт, пока подписчики отпустят все кадры шины.
+    private void drain() throws InterruptedException {
+        FrameBus bus = processor.getBus();
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (bus.getFreeFrames() < bus.getFrameCount() && System.nanoTime() < deadline)
+            Thread.sleep(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0)
+                throw new IllegalArgumentException("Параметр должен иметь вид имя=значение: " + arg);
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        String source = option(options, "source", "synthetic");
+        String formatName = option(options, "format", "nv21");
+        String size = option(options, "size", SyntheticFrames.HD);
+        boolean paced = !"fast".equals(option(options, "mode", "paced"));
+        int fps = Integer.parseInt(option(options, "fps", "30"));
+        long frames = Long.parseLong(option(options, "frames", "900"));
+        int bufferCount = Integer.parseInt(option(options, "buffers", "0"));
+        int threads = Integer.parseInt(option(options, "threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        boolean stream = !"off".equals(option(options, "stream", "on"));
+        boolean tiles = "on".equals(option(options, "tiles", "off"));
+        boolean budget = !"off".equals(option(options, "budget", "on"));
+
+        ReplayFrameSource.Sequence sequence;
+        RawFrameReader reader = null;
+        String description;
+        if ("synthetic".equals(source)) {
+            int format = parseFormat(formatName);
+            int width = SyntheticFrames.parseWidth(size);
+            int height = SyntheticFrames.parseHeight(size);
+            int bitsPerPixel = format == YuvConverter.NV21 ? 12 : 16;
+            sequence = new SyntheticSequence(new StreamConfig(format, width, height, bitsPerPixel, 0, false),
+                    SYNTHETIC_FRAMES);
+            description = "синтетические кадры " + formatName.toUpperCase() + " " + size;
+        } else {
+            reader = new RawFrameReader(new File(source));
+            if (reader.getFrameCount() == 0)
+                throw new IllegalArgumentException("В каталоге " + source + " нет записанных кадров");
+            sequence = reader;
+            description = "запись " + source + " (" + reader.getFrameCount() + " кадров, "
+                    + reader.getConfig(0) + ")";
+        }
+
+        final ReplayRunner runner = new ReplayRunner(threads, stream, tiles,
+                budget ? (paced && fps > 0 ? fps : 30) : 0);
+        final FrameProcessor processor = runner.processor;
+        FrameBus bus = processor.getBus();
+        if (bufferCount <= 0)
+            bufferCount = bus.getRetainedFrames() + SPARE_BUFFERS;
+        ReplayFrameSource replay = new ReplayFrameSource(sequence,
+                paced ? ReplayFrameSource.PACED : ReplayFrameSource.AS_FAST_AS_POSSIBLE, fps, bufferCount, frames);
+        replay.setListener(new FrameSource.Listener() {
+            @Override
+            public void onFrame(byte[] data, StreamConfig config, BufferRecycler bufferPool, long timestampNanos) {
+                processor.onFrame(data, config, bufferPool, timestampNanos);
+            }
+        });
+        runner.start();
+        if (stream)
+            runner.connectStreamClient();
+        final TileStreamClient client = tiles ? runner.connectTileClient() : null;
+
+        Map<Long, Long> allocatedBefore = allocatedBytes();
+        long startNanos = System.nanoTime();
+        replay.start();
+        replay.awaitCompletion(0);
+        runner.drain();
+        if (client != null)
+            runner.awaitTileClient(client);
+        long endNanos = runner.lastDisplayedNanos != 0 ? runner.lastDisplayedNanos : System.nanoTime();
+        long elapsedNanos = Math.max(1, endNanos - startNanos);
+        long allocated = allocatedSince(allocatedBefore);
+        if (client != null)
+            client.close();
+        runner.closeStreamClient();
+        runner.stop();
+        replay.stop();
+        if (reader != null)
+            reader.close();
+        if (replay.getFailure() != null)
+            throw replay.getFailure();
+
+        StringBuilder out = new StringBuilder();
+        out.append("Источник: ").append(description).append(", ")
+                .append(paced ? (fps > 0 ? "в темпе " + fps + " к/с" : "в темпе записи") : "без пауз")
+                .append(", буферов ").append(bufferCount).append(", потоков перевода и сжатия ").append(threads).append('\n');
+        out.append("Выдано кадров ").append(replay.getEmittedFrames())
+                .append(", пропущено источником ").append(replay.getSkippedFrames())
+                .append(", шиной ").append(bus.getDroppedFrames())
+                .append(", конвейером ").append(processor.getPipeline().getDroppedFrames()).append('\n');
+        long displayed = runner.displayedFrames.get();
+        out.append("Показано ").append(displayed).append(" кадров за ");
+        appendDecimal(out, elapsedNanos / 1e9);
+        out.append(" с: ");
+        appendDecimal(out, displayed * 1e9 / elapsedNanos);
+        out.append(" к/с\n");
+        appendLatency(out, "Перевод", runner.metrics.getHistogram(FrameMetrics.CONVERT));
+        appendLatency(out, "Сжатие", runner.metrics.getHistogram(FrameMetrics.STREAM_ENCODE));
+        appendLatency(out, "До показа", runner.metrics.getHistogram(FrameMetrics.TOTAL));
+        if (stream)
+            runner.appendStream(out);
+        DuplicateFilter displayDuplicates = processor.getDisplay().getDuplicates();
+        DuplicateFilter streamDuplicates = processor.getStream().getDuplicates();
+        if (displayDuplicates != null && streamDuplicates != null) {
+            out.append("Повторы: ");
+            displayDuplicates.appendSummary(out);
+            out.append(", ");
+            streamDuplicates.appendSummary(out);
+            out.append('\n');
+        }
+        FrameBudgetScheduler scheduler = processor.getScheduler();
+        if (scheduler != null) {
+            out.append("Бюджет кадра: ");
+            scheduler.appendSummary(out);
+            out.append('\n');
+        }
+        AnalysisSubscriber analysis = processor.getAnalysis();
+        if (analysis != null) {
+            out.append("Последний проанализированный кадр: ");
+            analysis.appendStatistics(out);
+            out.append('\n');
+        }
+        if (client != null)
+            runner.appendTiles(out, client);
+        if (allocated < 0) {
+            out.append("Выделение памяти: JVM не сообщает\n");
+        } else {
+            out.append("Выделено памяти: ");
+            appendDecimal(out, allocated / 1048576.0 * 1e9 / elapsedNanos);
+            out.append(" МБ/с, ").append(allocated / Math.max(1, replay.getEmittedFrames())).append(" байт на кадр\n");
+        }
+        System.out.print(out);
+    }
+
+    // Подключает клиента MJPEG, который только читает поток, и ждёт, пока сервер его примет:
+    // трансляция сжимает кадры, только когда есть клиенты.
+    private void connectStreamClient() throws IOException, InterruptedException {
+        final Socket socket = new Socket("localhost", mjpegServer.getLocalPort());
+        OutputStream request = socket.getOutputStream();
+        request.write("GET / HTTP/1.0\r\n\r\n".getBytes("ISO-8859-1"));
+        request.flush();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] buffer = new byte[64 * 1024];
+                try {
+                    InputStream in = socket.getInputStream();
+                    while (in.read(buffer) >= 0) {
+                        // Поток только вычитывается.
+                    }
+                } catch (IOException e) {
+                    // Сокет закрыт в closeStreamClient().
+                }
+            }
+        }, "MjpegClient");
+        reader.setDaemon(true);
+        reader.start();
+        mjpegClient = socket;
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (!mjpegServer.hasClients() && System.nanoTime() < deadline)
+            Thread.sleep(1);
+    }
+
+    private void closeStreamClient() throws IOException {
+        if (mjpegClient != null)
+            mjpegClient.close();
+    }
+
+    private void appendStream(StringBuilder out) {
+        AdaptiveQualityController quality = processor.getStream().getQuality();
+        out.append("Трансляция: кадров ").append(mjpegServer.getPublishedFrames())
+                .append(", отправлено ").append(mjpegServer.getSentBytes() / 1024)
+                .append(" КБ, выброшено сервером ").append(mjpegServer.getDroppedFrames())
+                .append(", качество ").append(quality.getQuality())
+                .append(", уменьшение ").append(quality.getScale())
+                .append(", пропуск ").append(quality.getFrameSkip()).append('\n');
+    }
+
+    // Подключает эталонного клиента и ждёт, пока сервер его примет: иначе первые кадры
+    // уйдут без клиента и не будут сжаты.
+    private TileStreamClient connectTileClient() throws IOException, InterruptedException {
+        final TileStreamClient client = new TileStreamClient("localhost", tileServer.getLocalPort());
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.readAll();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "TileStreamClient");
+        reader.setDaemon(true);
+        reader.start();
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (!tileServer.hasClients() && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        return client;
+    }
+
+    // Ждёт, пока клиент получит последнее отправленное сообщение.
+    private void awaitTileClient(TileStreamClient client) throws InterruptedException {
+        long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (client.getLastTimestampNanos() != tileTimestampNanos && System.nanoTime() < deadline)
+            Thread.sleep(1);
+    }
+
+    private void appendTiles(StringBuilder out, TileStreamClient client) {
+        TileDeltaEncoder tileEncoder = processor.getTiles().getEncoder();
+        out.append("Трансляция изменениями, ");
+        tileEncoder.appendSummary(out);
+        out.append(", отправлено ").append(tileEncoder.getSentBytes() / 1024)
+                .append(" КБ вместо ").append(tileEncoder.getFullFrameBytes() / 1024).append(" КБ\n");
+        out.append("Клиент: сообщений ").append(client.getMessages())
+                .append(" (ключевых ").append(client.getKeyframes()).append("), областей ").append(client.getRegions())
+                .append(", выброшено сервером ").append(tileServer.getDroppedMessages());
+        BufferedImage image = client.getImage();
+        if (image != null && tileConfig != null && image.getWidth() == tileConfig.width
+                && image.getHeight() == tileConfig.height) {
+            out.append(", PSNR яркости к последнему кадру ");
+            appendDecimal(out, psnr(image, tileFrame, tileConfig));
+            out.append(" дБ");
+        }
+        out.append('\n');
+    }
+
+    // PSNR яркости картинки клиента относительно кадра NV21. JPEG хранит яркость в полном
+    // диапазоне JFIF, поэтому она восстанавливается из RGB по формуле JFIF, а не через YuvConverter.
+    private static double psnr(BufferedImage image, byte[] data, StreamConfig config) {
+        int pixels = config.width * config.height;
+        int[] actual = image.getRGB(0, 0, config.width, config.height, null, 0, config.width);
+        double sum = 0;
+        for (int i = 0; i < pixels; i++) {
+            int rgb = actual[i];
+            double luma = 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff) + 0.114 * (rgb & 0xff);
+            double difference = (data[i] & 0xff) - luma;
+            sum += difference * difference;
+        }
+        double mse = sum / pixels;
+        return mse == 0 ? 99 : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int parseFormat(String name) {
+        if ("nv21".equalsIgnoreCase(name))
+            return YuvConverter.NV21;
+        if ("nv16".equalsIgnoreCase(name))
+            return YuvConverter.NV16;
+        if ("yuy2".equalsIgnoreCase(name))
+            return YuvConverter.YUY2;
+        throw new IllegalArgumentException("Неизвестный формат: " + name);
+    }
+
+    // Выделенные каждым потоком байты; null, если JVM их не считает.
+    private static Map<Long, Long> allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported())
+            return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<Long, Long>();
+        for (int i = 0; i < ids.length; i++) {
+            if (bytes[i] >= 0)
+                result.put(ids[i], bytes[i]);
+        }
+        return result;
+    }
+
+    // Сколько выделили живые потоки с момента before. Потоки, завершившиеся раньше, не учитываются,
+    // поэтому замер делается до остановки обработки.
+    private static long allocatedSince(Map<Long, Long> before) {
+        if (before == null)
+            return -1;
+        Map<Long, Long> after = allocatedBytes();
+        long total = 0;
+        for (Map.Entry<Long, Long> entry : after.entrySet()) {
+            Long previous = before.get(entry.getKey());
+            total += entry.getValue() - (previous != null ? previous : 0);
+        }
+        return total;
+    }
+
+    private static void appendLatency(StringBuilder out, String name, LatencyHistogram histogram) {
+        out.append(name).append(", мс p50/p95/p99/max: ");
+        appendMillis(out, histogram.getPercentileMicros(50));
+        out.append('/');
+        appendMillis(out, histogram.getPercentileMicros(95));
+        out.append('/');
+        appendMillis(out, histogram.getPercentileMicros(99));
+        out.append('/');
+        appendMillis(out, histogram.getMaxMicros());
+        out.append('\n');
+    }
+
+    private static void appendMillis(StringBuilder out, int micros) {
+        appendDecimal(out, micros / 1000.0);
+    }
+
+    private static void appendDecimal(StringBuilder out, double value) {
+        long tenths = Math.round(value * 10);
+        out.append(tenths / 10).append('.').append(tenths % 10);
+    }
+}
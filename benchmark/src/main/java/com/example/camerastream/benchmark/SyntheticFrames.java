@@ -0,0 +1,87 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.YuvConverter;
+
+import java.util.Random;
+
+// Кадры предпросмотра для бенчмарков и воспроизведения: плавный градиент с шумом, чтобы данные
+// не были ни постоянными, ни полностью случайными.
+public final class SyntheticFrames {
+    // Типичные размеры предпросмотра от QVGA до 1080p.
+    public static final String QVGA = "320x240";
+    public static final String VGA = "640x480";
+    public static final String HD = "1280x720";
+    public static final String FULL_HD = "1920x1080";
+
+    private SyntheticFrames() {
+    }
+
+    public static int parseWidth(String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    public static int parseHeight(String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    public static byte[] nv21(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[width * height * 3 / 2];
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++)
+                data[row * width + col] = (byte) (16 + (col + row) * 219 / (width + height) + random.nextInt(8));
+        int frameSize = width * height;
+        for (int row = 0; row < height / 2; row++)
+            for (int col = 0; col < width; col += 2) {
+                int index = frameSize + row * width + col;
+                data[index] = (byte) (128 + (row * 2 - height / 2) * 64 / height + random.nextInt(4));
+                data[index + 1] = (byte) (128 + (col - width / 2) * 64 / width + random.nextInt(4));
+            }
+        return data;
+    }
+
+    public static byte[] nv16(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[width * height * 2];
+        int frameSize = width * height;
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col++) {
+                data[row * width + col] = (byte) (16 + (col + row) * 219 / (width + height) + random.nextInt(8));
+                // Цветность NV16 на каждую строку: V и U через байт, как в NV21.
+                if ((col & 1) == 0) {
+                    int index = frameSize + row * width + col;
+                    data[index] = (byte) (128 + (row - height / 2) * 64 / height + random.nextInt(4));
+                    data[index + 1] = (byte) (128 + (col - width / 2) * 64 / width + random.nextInt(4));
+                }
+            }
+        return data;
+    }
+
+    // YUY2: Y0 U Y1 V на каждые две точки строки.
+    public static byte[] yuy2(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[width * height * 2];
+        for (int row = 0; row < height; row++)
+            for (int col = 0; col < width; col += 2) {
+                int index = (row * width + col) * 2;
+                data[index] = (byte) (16 + (col + row) * 219 / (width + height) + random.nextInt(8));
+                data[index + 1] = (byte) (128 + (col - width / 2) * 64 / width + random.nextInt(4));
+                data[index + 2] = (byte) (16 + (col + 1 + row) * 219 / (width + height) + random.nextInt(8));
+                data[index + 3] = (byte) (128 + (row - height / 2) * 64 / height + random.nextInt(4));
+            }
+        return data;
+    }
+
+    public static byte[] frame(int format, int width, int height, long seed) {
+        switch (format) {
+            case YuvConverter.NV21:
+                return nv21(width, height, seed);
+            case YuvConverter.NV16:
+                return nv16(width, height, seed);
+            case YuvConverter.YUY2:
+                return yuy2(width, height, seed);
+            default:
+                throw new IllegalArgumentException("Неподдерживаемый формат кадра: " + format);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.frame.ReplayFrameSource;
+import com.example.camerastream.frame.StreamConfig;
+import com.example.camerastream.frame.YuvConverter;
+
+// Синтетическая последовательность для ReplayFrameSource: градиент с шумом, по которому
+// слева направо движется светлый квадрат, так что анализ движения и отсев повторов
+// работают как на живой сцене. Кадры готовятся заранее и при воспроизведении только копируются.
+public class SyntheticSequence implements ReplayFrameSource.Sequence {
+    private static final long INTERVAL_NANOS = 33333333L;
+
+    private final StreamConfig config;
+    private final byte[][] frames;
+
+    public SyntheticSequence(StreamConfig config, int frameCount) {
+        this.config = config;
+        frames = new byte[frameCount][];
+        int width = config.width;
+        int height = config.height;
+        int side = Math.max(2, Math.min(width, height) / 8) & ~1;
+        int top = (height - side) / 2;
+        // У YUY2 яркость — каждый второй байт строки.
+        int step = config.format == YuvConverter.YUY2 ? 2 : 1;
+        for (int i = 0; i < frameCount; i++) {
+            byte[] data = SyntheticFrames.frame(config.format, width, height, i);
+            int left = (int) ((long) (width - side) * i / Math.max(1, frameCount - 1)) & ~1;
+            for (int row = top; row < top + side; row++)
+                for (int col = left; col < left + side; col++)
+                    data[(row * width + col) * step] = (byte) 235;
+            frames[i] = data;
+        }
+    }
+
+    @Override
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    @Override
+    public StreamConfig getConfig(int frame) {
+        return config;
+    }
+
+    @Override
+    public long getTimestampNanos(int frame) {
+        return frame * INTERVAL_NANOS;
+    }
+
+    @Override
+    public int readFrame(int frame, byte[] buffer) {
+        byte[] data = frames[frame];
+        System.arraycopy(data, 0, buffer, 0, data.length);
+        return data.length;
+    }
+}
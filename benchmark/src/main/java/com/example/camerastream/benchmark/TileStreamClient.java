@@ -0,0 +1,198 @@
+package com.example.camerastream.benchmark;
+
+import com.example.camerastream.stream.TileDeltaEncoder;
+import com.example.camerastream.stream.TileStreamServer;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+
+import javax.imageio.ImageIO;
+
+// Эталонный клиент трансляции изменений (TileStreamServer): читает сообщения
+// TileDeltaEncoder и собирает из областей картинку. Используется ReplayRunner (tiles=on)
+// и годится для проверки трансляции с телефона:
+//
+// gradlew :benchmark:tileClient -Pargs="<адрес> <порт> [секунд] [картинка.png]"
+public final class TileStreamClient {
+    private final Socket socket;
+    private final DataInputStream in;
+    private BufferedImage image;
+    private byte[] region = new byte[64 * 1024];
+
+    private volatile long messages;
+    private volatile long keyframes;
+    private volatile long regions;
+    private volatile long receivedBytes;
+    private volatile long lastTimestampNanos;
+
+    public TileStreamClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET / HTTP/1.0\r\nHost: " + host + "\r\n\r\n").getBytes("ISO-8859-1"));
+        out.flush();
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        readResponseHeaders();
+    }
+
+    private void readResponseHeaders() throws IOException {
+        String status = readLine();
+        if (status == null || !status.contains(" 200 "))
+            throw new IOException("Сервер ответил: " + status);
+        boolean tiles = false;
+        String line;
+        while ((line = readLine()) != null && line.length() > 0) {
+            if (line.toLowerCase().startsWith("content-type:") && line.contains(TileStreamServer.CONTENT_TYPE))
+                tiles = true;
+        }
+        if (!tiles)
+            throw new IOException("Сервер отдаёт не трансляцию изменений");
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1 && c != '\n') {
+            if (c != '\r')
+                line.append((char) c);
+        }
+        return c == -1 && line.length() == 0 ? null : line.toString();
+    }
+
+    // Читает одно сообщение и рисует его области. Возвращает false, когда сервер закрыл соединение.
+    public boolean readMessage() throws IOException {
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        if (magic != TileDeltaEncoder.MAGIC)
+            throw new IOException("Неверное начало сообщения: " + Integer.toHexString(magic));
+        int type = in.readUnsignedByte();
+        int width = in.readUnsignedShort();
+        int height = in.readUnsignedShort();
+        long timestampNanos = in.readLong();
+        int count = in.readUnsignedShort();
+        long bytes = TileDeltaEncoder.HEADER_LENGTH;
+        BufferedImage target;
+        synchronized (this) {
+            if (type == TileDeltaEncoder.KEYFRAME && (image == null || image.getWidth() != width
+                    || image.getHeight() != height))
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            else if (type != TileDeltaEncoder.KEYFRAME && type != TileDeltaEncoder.DELTA)
+                throw new IOException("Неизвестный тип сообщения: " + type);
+            target = image;
+        }
+        for (int i = 0; i < count; i++) {
+            int x = in.readUnsignedShort();
+            int y = in.readUnsignedShort();
+            int regionWidth = in.readUnsignedShort();
+            int regionHeight = in.readUnsignedShort();
+            int length = in.readInt();
+            if (region.length < length)
+                region = new byte[length];
+            in.readFully(region, 0, length);
+            bytes += TileDeltaEncoder.REGION_HEADER_LENGTH + length;
+            // Изменения до первого ключевого кадра рисовать не на чем.
+            if (target == null)
+                continue;
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(region, 0, length));
+            if (decoded == null || decoded.getWidth() != regionWidth || decoded.getHeight() != regionHeight)
+                throw new IOException("Область " + x + "," + y + " не декодируется");
+            synchronized (this) {
+                target.getGraphics().drawImage(decoded, x, y, null);
+            }
+        }
+        messages++;
+        if (type == TileDeltaEncoder.KEYFRAME)
+            keyframes++;
+        regions += count;
+        receivedBytes += bytes;
+        lastTimestampNanos = timestampNanos;
+        return true;
+    }
+
+    // Читает сообщения, пока соединение не закроется.
+    public void readAll() throws IOException {
+        try {
+            while (readMessage()) {
+                // Картинка обновляется в readMessage.
+            }
+        } catch (SocketException e) {
+            // Соединение закрыто через close().
+        }
+    }
+
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Копия собранной картинки или null, если ключевого кадра ещё не было.
+    public synchronized BufferedImage getImage() {
+        if (image == null)
+            return null;
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        copy.getGraphics().drawImage(image, 0, 0, null);
+        return copy;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getKeyframes() {
+        return keyframes;
+    }
+
+    public long getRegions() {
+        return regions;
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public long getLastTimestampNanos() {
+        return lastTimestampNanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("TileStreamClient <адрес> <порт> [секунд] [картинка.png]");
+            System.exit(1);
+        }
+        final TileStreamClient client = new TileStreamClient(args[0], Integer.parseInt(args[1]));
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.readAll();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "TileStreamClient");
+        reader.start();
+        reader.join(seconds * 1000);
+        client.close();
+        reader.join();
+        System.out.println("Сообщений " + client.getMessages() + " (ключевых " + client.getKeyframes()
+                + "), областей " + client.getRegions() + ", получено " + client.getReceivedBytes() + " байт");
+        if (args.length > 3 && client.getImage() != null)
+            ImageIO.write(client.getImage(), "png", new File(args[3]));
+    }
+}